@@ -0,0 +1,60 @@
+package io.dev.util.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * 基准测试入口，按每个线程数运行一次基准测试，并始终启用 GC/内存分配分析器.<br>
+ * 接受 JMH 的命令行参数；未指定 {@code -t} 时按系统属性 {@code slotstring.threads} 中的每个线程数各运行一次
+ * （默认 {@value #DEFAULT_THREADS}，最后一个与 {@code SlotStringTest.PARALLEL_THREAD_NUMBER} 相同）.
+ */
+public final class BenchmarkMain {
+
+  /**
+   * 默认的线程数列表.
+   */
+  private static final String DEFAULT_THREADS = "1,4,32";
+
+  private BenchmarkMain() {
+  }
+
+  /**
+   * 运行基准测试.
+   * @param args JMH 命令行参数.
+   * @throws Exception 解析命令行参数或运行基准测试失败.
+   */
+  public static void main(String[] args) throws Exception {
+    CommandLineOptions cli = new CommandLineOptions(args);
+    if (cli.shouldHelp() || cli.shouldList() || cli.shouldListProfilers() || cli.shouldListResultFormats()) {
+      // 由 JMH 自带的入口输出帮助和列表
+      org.openjdk.jmh.Main.main(args);
+      return;
+    }
+    if (cli.getThreads().hasValue()) {
+      new Runner(withGcProfiler(cli).build()).run();
+      return;
+    }
+    for (String threads : System.getProperty("slotstring.threads", DEFAULT_THREADS).split(",")) {
+      new Runner(withGcProfiler(cli).threads(Integer.parseInt(threads.trim())).build()).run();
+    }
+  }
+
+  /**
+   * 以命令行参数为基础创建运行参数，命令行未指定 GC 分析器时添加.
+   * @param cli 命令行参数.
+   * @return 运行参数.
+   */
+  private static OptionsBuilder withGcProfiler(Options cli) {
+    OptionsBuilder builder = new OptionsBuilder();
+    builder.parent(cli);
+    boolean requested = cli.getProfilers().stream()
+        .anyMatch(p -> "gc".equals(p.getKlass()) || GCProfiler.class.getName().equals(p.getKlass()));
+    if (!requested) {
+      builder.addProfiler(GCProfiler.class);
+    }
+    return builder;
+  }
+}
@@ -0,0 +1,157 @@
+package io.dev.util.benchmark;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.dev.util.SlotString;
+import io.dev.util.SlotStringArena;
+
+/**
+ * 多租户模板字符串的编译基准测试，各租户的模板字符串只有开头的注释不同.<br>
+ * {@code plainCompile} 和 {@code arenaCompile} 测量编译 {@value #TEMPLATES} 个模板字符串的耗时；
+ * {@code plainRetained} 和 {@code arenaRetained} 在编译前后各执行一次 GC，以辅助计数器 {@code retainedBytesPerTemplate}
+ * 输出每个编译结果占用的堆内存，这两个方法的耗时包括 GC，不作参考；辅助计数器按轮累加，因此固定只测量一轮.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(2)
+@State(Scope.Benchmark)
+public class SlotStringArenaBenchmark {
+
+  /**
+   * 每次操作编译的模板字符串数量.
+   */
+  private static final int TEMPLATES = 20000;
+  /**
+   * 租户数量.
+   */
+  private static final int TENANTS = 100;
+
+  /**
+   * 各模板字符串.
+   */
+  private String[] patterns;
+
+  /**
+   * 生成各租户的模板字符串并检查两种编译结果的输出.
+   */
+  @Setup
+  public void setup() {
+    String pattern = Templates.pattern(TemplateSize.MEDIUM);
+    patterns = new String[TEMPLATES];
+    for (int i = 0; i < TEMPLATES; ++i) {
+      patterns[i] = "/* tenant " + i % TENANTS + " */\n" + pattern;
+    }
+    Map<String, Object> dest = Templates.dest();
+    String expected = "/* tenant 0 */\n" + Templates.expected(TemplateSize.MEDIUM);
+    Templates.check(expected, new SlotString(patterns[0]).format(dest));
+    Templates.check(expected, new SlotString(patterns[0], new SlotStringArena()).format(dest));
+  }
+
+  /**
+   * 编译结果占用的堆内存.
+   */
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  public static class Footprint {
+    /**
+     * 每个编译结果占用的堆内存（字节）.
+     */
+    public long retainedBytesPerTemplate;
+
+    /**
+     * 每轮开始前清零.
+     */
+    @Setup(Level.Iteration)
+    public void reset() {
+      retainedBytesPerTemplate = 0;
+    }
+  }
+
+  /**
+   * @return 普通编译结果.
+   */
+  @Benchmark
+  public SlotString[] plainCompile() {
+    SlotString[] res = new SlotString[TEMPLATES];
+    for (int i = 0; i < TEMPLATES; ++i) {
+      res[i] = new SlotString(patterns[i]);
+    }
+    return res;
+  }
+
+  /**
+   * @return 文本片段存放在共用文本区中的编译结果.
+   */
+  @Benchmark
+  public SlotString[] arenaCompile() {
+    SlotStringArena arena = new SlotStringArena();
+    SlotString[] res = new SlotString[TEMPLATES];
+    for (int i = 0; i < TEMPLATES; ++i) {
+      res[i] = new SlotString(patterns[i], arena);
+    }
+    return res;
+  }
+
+  /**
+   * @param footprint 编译结果占用的堆内存.
+   * @return 普通编译结果.
+   */
+  @Benchmark
+  @Warmup(iterations = 1)
+  @Measurement(iterations = 1)
+  @Fork(1)
+  public SlotString[] plainRetained(Footprint footprint) {
+    long base = usedHeap();
+    SlotString[] res = plainCompile();
+    footprint.retainedBytesPerTemplate = (usedHeap() - base) / TEMPLATES;
+    return res;
+  }
+
+  /**
+   * @param footprint 编译结果占用的堆内存.
+   * @return 文本片段存放在共用文本区中的编译结果.
+   */
+  @Benchmark
+  @Warmup(iterations = 1)
+  @Measurement(iterations = 1)
+  @Fork(1)
+  public SlotString[] arenaRetained(Footprint footprint) {
+    long base = usedHeap();
+    SlotString[] res = arenaCompile();
+    footprint.retainedBytesPerTemplate = (usedHeap() - base) / TEMPLATES;
+    return res;
+  }
+
+  /**
+   * 执行 GC 后获取已使用的堆内存.
+   * @return 已使用的堆内存（字节）.
+   */
+  private static long usedHeap() {
+    Runtime runtime = Runtime.getRuntime();
+    for (int i = 0; i < 4; ++i) {
+      System.gc();
+      try {
+        Thread.sleep(20);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+}
@@ -0,0 +1,140 @@
+package io.dev.util.benchmark;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.dev.util.SlotString;
+import io.dev.util.SlotStringBufferPool;
+
+/**
+ * 相同模板字符串的格式化基准测试，每次调用都用同一个替换表格式化同一个模板字符串.<br>
+ * 覆盖 {@code SlotStringTest.testPerformance} 测量的各种格式化方式，不包括其中的断言、随机模板字符串拼接和挂钟计时.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class SlotStringBenchmark {
+
+  /**
+   * 模板字符串大小.
+   */
+  @Param({ "SMALL", "MEDIUM", "LARGE" })
+  public TemplateSize size;
+
+  /**
+   * 模板字符串.
+   */
+  private String pattern;
+  /**
+   * 占位符替换表.
+   */
+  private Map<String, Object> dest;
+  /**
+   * 每次调用分配缓冲区的多线程格式化器.
+   */
+  private SlotString discrete;
+  /**
+   * 使用缓冲区池的多线程格式化器.
+   */
+  private SlotString pooled;
+  /**
+   * 预先编译的格式化器.
+   */
+  private SlotString compiled;
+  /**
+   * 预先编译并生成专用格式化代码的格式化器.
+   */
+  private SlotString generated;
+
+  /**
+   * 创建格式化器并检查各方式的输出.
+   */
+  @Setup
+  public void setup() {
+    pattern = Templates.pattern(size);
+    dest = Templates.dest();
+    discrete = new SlotString(true);
+    pooled = new SlotString(new SlotStringBufferPool());
+    compiled = new SlotString(pattern);
+    generated = new SlotString(pattern, true);
+    String expected = Templates.expected(size);
+    Templates.check(expected, discrete.qformat(pattern, dest));
+    Templates.check(expected, compiled.format(dest));
+    Templates.check(expected, generated.format(dest));
+  }
+
+  /**
+   * 共用缓冲区的格式化器不是线程安全的，每个基准测试线程各持有一个.
+   */
+  @State(Scope.Thread)
+  public static class SharedBuffer {
+    /**
+     * 共用缓冲区的格式化器.
+     */
+    final SlotString target = new SlotString(false);
+  }
+
+  /**
+   * @param shared 当前线程的格式化器.
+   * @return 输出字符串.
+   */
+  @Benchmark
+  public String sharedBufferQformat(SharedBuffer shared) {
+    return shared.target.qformat(pattern, dest);
+  }
+
+  /**
+   * @return 输出字符串.
+   */
+  @Benchmark
+  public String discreteBufferQformat() {
+    return discrete.qformat(pattern, dest);
+  }
+
+  /**
+   * @return 输出字符串.
+   */
+  @Benchmark
+  public String pooledBufferQformat() {
+    return pooled.qformat(pattern, dest);
+  }
+
+  /**
+   * @return 输出字符串.
+   */
+  @Benchmark
+  public String compileFormat() {
+    return compiled.format(dest);
+  }
+
+  /**
+   * @return 输出字符串.
+   */
+  @Benchmark
+  public String generatedFormat() {
+    return generated.format(dest);
+  }
+
+  /**
+   * @return 编译后的格式化器.
+   */
+  @Benchmark
+  public SlotString compileOnly() {
+    return new SlotString(pattern);
+  }
+}
@@ -0,0 +1,153 @@
+package io.dev.util.benchmark;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.dev.util.SlotString;
+import io.dev.util.SlotStringCache;
+
+/**
+ * 混合模板字符串的格式化基准测试，模板字符串序列由可放入缓存的热点模板字符串和放不下的冷门模板字符串组成.<br>
+ * {@code hitRate} 为序列中热点模板字符串的比例，0.0 相当于 {@code SlotStringTest.testPerformance} 中的
+ * {@code diffPattern}，1.0 为少量反复出现的模板字符串.<br>
+ * 序列在每轮测试开始时生成一次，测量的循环中不拼接字符串.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class SlotStringCacheBenchmark {
+
+  /**
+   * 热点模板字符串数量.
+   */
+  private static final int HOT_PATTERNS = 16;
+  /**
+   * 冷门模板字符串数量.
+   */
+  private static final int COLD_PATTERNS = 4096;
+  /**
+   * 编译结果缓存容量.
+   */
+  private static final int CACHE_SIZE = 256;
+  /**
+   * 模板字符串序列长度，为 2 的幂.
+   */
+  private static final int STREAM_LENGTH = 4096;
+
+  /**
+   * 序列中热点模板字符串的比例.
+   */
+  @Param({ "1.0", "0.9", "0.5", "0.0" })
+  public double hitRate;
+
+  /**
+   * 模板字符串大小.
+   */
+  @Param({ "SMALL", "MEDIUM" })
+  public TemplateSize size;
+
+  /**
+   * 模板字符串序列.
+   */
+  private String[] stream;
+  /**
+   * 占位符替换表.
+   */
+  private Map<String, Object> dest;
+  /**
+   * 每次调用分配缓冲区的多线程格式化器.
+   */
+  private SlotString discrete;
+  /**
+   * 使用编译结果缓存的多线程格式化器.
+   */
+  private SlotString cached;
+
+  /**
+   * 生成模板字符串序列，创建格式化器并检查输出.
+   */
+  @Setup
+  public void setup() {
+    String pattern = Templates.pattern(size);
+    String[] hot = new String[HOT_PATTERNS];
+    for (int i = 0; i < hot.length; ++i) {
+      hot[i] = "/* HOT " + i + " */" + pattern;
+    }
+    Random random = new Random(0);
+    stream = new String[STREAM_LENGTH];
+    for (int i = 0, cold = 0; i < stream.length; ++i) {
+      if (random.nextDouble() < hitRate) {
+        stream[i] = hot[random.nextInt(hot.length)];
+      } else {
+        stream[i] = "/* COLD " + (cold++ % COLD_PATTERNS) + " */" + pattern;
+      }
+    }
+    dest = Templates.dest();
+    discrete = new SlotString(true);
+    cached = new SlotString(true, new SlotStringCache(CACHE_SIZE));
+    Templates.check(discrete.qformat(stream[0], dest), cached.qformat(stream[0], dest));
+  }
+
+  /**
+   * 每个基准测试线程从各自的位置开始遍历序列.
+   */
+  @State(Scope.Thread)
+  public static class Cursor {
+    /**
+     * 下一个模板字符串的位置.
+     */
+    private int index = new Random().nextInt(STREAM_LENGTH);
+
+    /**
+     * 获取序列中的下一个模板字符串，到达末尾后从头开始.
+     * @param stream 模板字符串序列.
+     * @return 模板字符串.
+     */
+    String next(String[] stream) {
+      return stream[index++ & (STREAM_LENGTH - 1)];
+    }
+  }
+
+  /**
+   * @param cursor 当前线程的遍历位置.
+   * @return 输出字符串.
+   */
+  @Benchmark
+  public String discreteBufferQformat(Cursor cursor) {
+    return discrete.qformat(cursor.next(stream), dest);
+  }
+
+  /**
+   * @param cursor 当前线程的遍历位置.
+   * @return 输出字符串.
+   */
+  @Benchmark
+  public String cachedQformat(Cursor cursor) {
+    return cached.qformat(cursor.next(stream), dest);
+  }
+
+  /**
+   * @param cursor 当前线程的遍历位置.
+   * @return 输出字符串.
+   */
+  @Benchmark
+  public String compileFormat(Cursor cursor) {
+    return new SlotString(cursor.next(stream)).format(dest);
+  }
+}
@@ -0,0 +1,89 @@
+package io.dev.util.benchmark;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.dev.util.SlotEscape;
+import io.dev.util.SlotString;
+
+/**
+ * 转义的基准测试，比较格式化前先对每个值调用 {@code String.replace} 与格式化时由 {@link SlotEscape#SQL} 转义.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class SlotStringEscapeBenchmark {
+
+  /**
+   * 机构.
+   */
+  private static final String ORG = "Headquarters of the group";
+  /**
+   * 包含单引号的名称.
+   */
+  private static final String NAME = "O'Brien";
+  /**
+   * 备注.
+   */
+  private static final String MEMO = "imported from the legacy ledger, checked by the finance department";
+
+  /**
+   * 不转义的格式化器.
+   */
+  private SlotString target;
+  /**
+   * 按 SQL 字符串转义的格式化器.
+   */
+  private SlotString escaped;
+
+  /**
+   * 创建格式化器并检查两种方式的输出.
+   */
+  @Setup
+  public void setup() {
+    target = new SlotString("INSERT INTO VOUCHER (ORG, NAME, MEMO) VALUES ('{ORG}', '{NAME}', '{MEMO}')");
+    escaped = target.withEscape(SlotEscape.SQL);
+    String expected = "INSERT INTO VOUCHER (ORG, NAME, MEMO) VALUES ('" + ORG + "', 'O''Brien', '" + MEMO + "')";
+    Templates.check(expected, escapeBeforeFormat());
+    Templates.check(expected, escapingFormat());
+  }
+
+  /**
+   * @return 输出字符串.
+   */
+  @Benchmark
+  public String escapeBeforeFormat() {
+    Map<String, Object> dest = new HashMap<>();
+    dest.put("ORG", ORG.replace("'", "''"));
+    dest.put("NAME", NAME.replace("'", "''"));
+    dest.put("MEMO", MEMO.replace("'", "''"));
+    return target.format(dest);
+  }
+
+  /**
+   * @return 输出字符串.
+   */
+  @Benchmark
+  public String escapingFormat() {
+    Map<String, Object> dest = new HashMap<>();
+    dest.put("ORG", ORG);
+    dest.put("NAME", NAME);
+    dest.put("MEMO", MEMO);
+    return escaped.format(dest);
+  }
+}
@@ -0,0 +1,139 @@
+package io.dev.util.benchmark;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.dev.util.SlotResolver;
+import io.dev.util.SlotResolvers;
+import io.dev.util.SlotString;
+import io.dev.util.SlotStringExporter;
+
+/**
+ * 批量导出的基准测试，每次操作把 {@value #ROWS} 行写入同一个临时文件，
+ * 比较逐行格式化、编码再写入与 {@code SlotStringExporter} 直接写入通道.<br>
+ * 每个基准测试线程各写一个文件.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class SlotStringExporterBenchmark {
+
+  /**
+   * 每次操作导出的行数.
+   */
+  private static final int ROWS = 10000;
+
+  /**
+   * 每行的格式化器.
+   */
+  private SlotString target;
+  /**
+   * 批量导出器.
+   */
+  private SlotStringExporter exporter;
+  /**
+   * 各行的值来源.
+   */
+  private List<SlotResolver> rows;
+  /**
+   * 导出的临时文件.
+   */
+  private Path file;
+
+  /**
+   * 生成各行的值并检查两种方式写入的字节数相同.
+   * @throws IOException 创建或写入临时文件失败.
+   */
+  @Setup
+  public void setup() throws IOException {
+    target = new SlotString("INSERT INTO VOUCHER{YEAR} (ID, ORG, AMOUNT, MEMO) VALUES ({ID}, '{ORG}', {AMOUNT},"
+        + " 'imported from legacy ledger {YEAR}');\n");
+    exporter = new SlotStringExporter(target, StandardCharsets.UTF_8);
+    rows = new ArrayList<>();
+    for (int i = 0; i < ROWS; ++i) {
+      Map<String, Object> dest = new HashMap<>();
+      dest.put("YEAR", 2023);
+      dest.put("ID", i);
+      dest.put("ORG", "ORG" + (i & 255));
+      dest.put("AMOUNT", new BigDecimal(i).movePointLeft(2));
+      rows.add(SlotResolvers.map(dest));
+    }
+    file = Files.createTempFile("slotstring-export", ".sql");
+    long perRow = formatPerRow();
+    long batch = batchExport();
+    Templates.check(String.valueOf(perRow), String.valueOf(batch));
+  }
+
+  /**
+   * 删除临时文件.
+   * @throws IOException 删除失败.
+   */
+  @TearDown
+  public void tearDown() throws IOException {
+    Files.deleteIfExists(file);
+  }
+
+  /**
+   * @return 写入的字节数.
+   * @throws IOException 写入临时文件失败.
+   */
+  @Benchmark
+  public long formatPerRow() throws IOException {
+    long size = 0;
+    try (FileChannel channel = open()) {
+      for (SlotResolver row : rows) {
+        ByteBuffer bytes = ByteBuffer.wrap(target.format(row).getBytes(StandardCharsets.UTF_8));
+        while (bytes.hasRemaining()) {
+          size += channel.write(bytes);
+        }
+      }
+    }
+    return size;
+  }
+
+  /**
+   * @return 写入的字节数.
+   * @throws IOException 写入临时文件失败.
+   */
+  @Benchmark
+  public long batchExport() throws IOException {
+    try (FileChannel channel = open()) {
+      return exporter.export(rows.iterator(), channel);
+    }
+  }
+
+  /**
+   * 清空并打开临时文件.
+   * @return 文件通道.
+   * @throws IOException 打开临时文件失败.
+   */
+  private FileChannel open() throws IOException {
+    return FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+  }
+}
@@ -0,0 +1,73 @@
+package io.dev.util.benchmark;
+
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.dev.util.SlotString;
+
+/**
+ * 大模板字符串的并行格式化基准测试，比较在调用线程中格式化与使用公共的 {@code ForkJoinPool} 并行格式化.<br>
+ * 并行格式化的收益取决于 {@link ForkJoinPool#getCommonPoolParallelism()}，单核环境中只有拆分和拼接的开销.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+@State(Scope.Benchmark)
+public class SlotStringParallelBenchmark {
+
+  /**
+   * 模板字符串中的语句数量.
+   */
+  @Param({ "5000", "50000" })
+  public int statements;
+
+  /**
+   * 预先编译的格式化器.
+   */
+  private SlotString target;
+  /**
+   * 占位符替换表.
+   */
+  private Map<String, Object> dest;
+
+  /**
+   * 创建格式化器并检查两种方式的输出.
+   */
+  @Setup
+  public void setup() {
+    target = new SlotString(Templates.script(statements));
+    dest = Templates.scriptDest();
+    Templates.check(target.format(dest), target.formatParallel(dest));
+  }
+
+  /**
+   * @return 输出字符串.
+   */
+  @Benchmark
+  public String singleThreadFormat() {
+    return target.format(dest);
+  }
+
+  /**
+   * @return 输出字符串.
+   */
+  @Benchmark
+  public String parallelFormat() {
+    return target.formatParallel(dest);
+  }
+}
@@ -0,0 +1,126 @@
+package io.dev.util.benchmark;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.dev.util.SlotString;
+import io.dev.util.SlotStringRegistry;
+
+/**
+ * 启动时加载模板目录的冷启动基准测试.<br>
+ * 每个测量进程只执行一次操作，不预热，测量的是刚启动的 JVM 中逐个读取并编译、并行编译、读取快照文件
+ * 和检查模板文件是否修改后读取快照文件的耗时.<br>
+ * 模板目录和快照文件生成在临时目录中，由丢弃结果的预热进程生成，测量进程直接复用，因此测量进程中不会预先执行编译代码.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(value = 10, warmups = 1)
+@State(Scope.Benchmark)
+public class SlotStringRegistryBenchmark {
+
+  /**
+   * 模板文件数量.
+   */
+  private static final int TEMPLATES = 1000;
+  /**
+   * 模板文件的后缀.
+   */
+  private static final String SUFFIX = ".sql";
+
+  /**
+   * 模板文件目录.
+   */
+  private Path dir;
+  /**
+   * 快照文件.
+   */
+  private Path snapshot;
+
+  /**
+   * 模板目录和快照文件不存在或快照文件无法读取时生成.
+   * @throws IOException 生成失败.
+   */
+  @Setup
+  public void setup() throws IOException {
+    Path root = Paths.get(System.getProperty("java.io.tmpdir"), "slotstring-registry-benchmark");
+    dir = root.resolve("templates");
+    snapshot = root.resolve("templates.snapshot");
+    String name = "T" + (TEMPLATES - 1) + SUFFIX;
+    if (Files.isRegularFile(dir.resolve(name)) && Files.isRegularFile(snapshot)) {
+      try {
+        if (SlotStringRegistry.load(snapshot).size() == TEMPLATES) {
+          return;
+        }
+      } catch (IOException e) {
+        // 快照文件格式已变化，重新生成
+      }
+    }
+    Files.createDirectories(dir);
+    String pattern = Templates.pattern(TemplateSize.MEDIUM);
+    for (int i = 0; i < TEMPLATES; ++i) {
+      Files.write(dir.resolve("T" + i + SUFFIX), ("-- " + i + "\n" + pattern).getBytes(StandardCharsets.UTF_8));
+    }
+    Files.deleteIfExists(snapshot);
+    SlotStringRegistry registry = SlotStringRegistry.loadOrCompile(snapshot, dir, SUFFIX);
+    Templates.check("-- " + (TEMPLATES - 1) + "\n" + Templates.expected(TemplateSize.MEDIUM),
+        registry.get(name).format(Templates.dest()));
+  }
+
+  /**
+   * @return 逐个读取并编译的格式化器.
+   * @throws IOException 读取模板文件失败.
+   */
+  @Benchmark
+  public SlotString[] serialCompile() throws IOException {
+    SlotString[] res = new SlotString[TEMPLATES];
+    for (int i = 0; i < TEMPLATES; ++i) {
+      byte[] bytes = Files.readAllBytes(dir.resolve("T" + i + SUFFIX));
+      res[i] = new SlotString(new String(bytes, StandardCharsets.UTF_8));
+    }
+    return res;
+  }
+
+  /**
+   * @return 并行编译的模板.
+   * @throws IOException 读取模板文件失败.
+   */
+  @Benchmark
+  public SlotStringRegistry registryCompile() throws IOException {
+    return SlotStringRegistry.compile(dir, SUFFIX);
+  }
+
+  /**
+   * @return 从快照文件读取的模板.
+   * @throws IOException 读取快照文件失败.
+   */
+  @Benchmark
+  public SlotStringRegistry snapshotLoad() throws IOException {
+    return SlotStringRegistry.load(snapshot);
+  }
+
+  /**
+   * @return 检查模板文件的名称、大小和修改时间后从快照文件读取的模板.
+   * @throws IOException 读取模板文件属性或快照文件失败.
+   */
+  @Benchmark
+  public SlotStringRegistry checkedSnapshotLoad() throws IOException {
+    return SlotStringRegistry.loadOrCompile(snapshot, dir, SUFFIX);
+  }
+}
@@ -0,0 +1,118 @@
+package io.dev.util.benchmark;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.dev.util.SlotResolvers;
+import io.dev.util.SlotString;
+
+/**
+ * 按 Java Bean 格式化的基准测试，比较先把属性复制到替换表再格式化与直接从 Java Bean 读取属性.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class SlotStringResolverBenchmark {
+
+  /**
+   * 预先编译的格式化器.
+   */
+  private SlotString target;
+  /**
+   * Java Bean 对象.
+   */
+  private Voucher voucher;
+
+  /**
+   * 创建格式化器并检查两种方式的输出.
+   */
+  @Setup
+  public void setup() {
+    target = new SlotString("SELECT * FROM VOUCHER{year} WHERE CODE = '{code}' AND NAME = '{name}'"
+        + " AND ACTIVE = {active} AND URL = '{URL}'");
+    voucher = new Voucher();
+    String expected = "SELECT * FROM VOUCHER2023 WHERE CODE = 'V01' AND NAME = 'voucher'"
+        + " AND ACTIVE = true AND URL = 'http://a'";
+    Templates.check(expected, copyToMapFormat());
+    Templates.check(expected, beanResolverFormat());
+  }
+
+  /**
+   * @return 输出字符串.
+   */
+  @Benchmark
+  public String copyToMapFormat() {
+    Map<String, Object> dest = new HashMap<>();
+    dest.put("year", voucher.getYear());
+    dest.put("code", voucher.code);
+    dest.put("name", voucher.name());
+    dest.put("active", voucher.isActive());
+    dest.put("URL", voucher.getURL());
+    return target.format(dest);
+  }
+
+  /**
+   * @return 输出字符串.
+   */
+  @Benchmark
+  public String beanResolverFormat() {
+    return target.format(SlotResolvers.bean(voucher));
+  }
+
+  /**
+   * 包含读取方法、record 风格的访问方法和公共字段的 Java Bean.
+   */
+  public static class Voucher {
+    /**
+     * 编号.
+     */
+    public final String code = "V01";
+    /**
+     * 名称.
+     */
+    private final String name = "voucher";
+
+    /**
+     * @return 年度.
+     */
+    public int getYear() {
+      return 2023;
+    }
+
+    /**
+     * @return 是否启用.
+     */
+    public boolean isActive() {
+      return true;
+    }
+
+    /**
+     * @return 名称.
+     */
+    public String name() {
+      return name;
+    }
+
+    /**
+     * @return 链接.
+     */
+    public String getURL() {
+      return "http://a";
+    }
+  }
+}
@@ -0,0 +1,95 @@
+package io.dev.util.benchmark;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.dev.util.SlotString;
+import io.dev.util.SlotStringSession;
+
+/**
+ * 增量格式化的基准测试，每次调用只改变 25 个键名中的一个，比较完整格式化与会话的增量格式化.<br>
+ * 会话不是线程安全的，每个基准测试线程各持有一份状态.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class SlotStringSessionBenchmark {
+
+  /**
+   * 每条语句的键名不同的语句数量.
+   */
+  private static final int STATEMENTS = 12;
+
+  /**
+   * 预先编译的格式化器.
+   */
+  private SlotString target;
+  /**
+   * 增量格式化会话.
+   */
+  private SlotStringSession session;
+  /**
+   * 占位符替换表，每次调用改变 {@code YEAR} 的值.
+   */
+  private Map<String, Object> dest;
+  /**
+   * 调用次数.
+   */
+  private int count;
+
+  /**
+   * 创建格式化器和会话并检查两种方式的输出.
+   */
+  @Setup
+  public void setup() {
+    StringBuilder pattern = new StringBuilder();
+    dest = new HashMap<>();
+    for (int k = 0; k < STATEMENTS; ++k) {
+      pattern.append("SELECT * FROM VOUCHER{YEAR} WHERE ORG = '{ORG").append(k)
+          .append("}' AND AMOUNT > {AMOUNT").append(k).append("} AND MADE_AT < '{DATE}';\n");
+      dest.put("ORG" + k, "ORG" + k);
+      dest.put("AMOUNT" + k, new BigDecimal("12345.67").add(BigDecimal.valueOf(k)));
+    }
+    dest.put("DATE", LocalDateTime.of(2023, 1, 1, 0, 0));
+    target = new SlotString(pattern.toString());
+    session = target.session();
+    for (int i = 0; i < 32; ++i) {
+      Templates.check(fullFormat(), session.render(dest));
+    }
+  }
+
+  /**
+   * @return 输出字符串.
+   */
+  @Benchmark
+  public String fullFormat() {
+    dest.put("YEAR", 2000 + (count++ & 15));
+    return target.format(dest);
+  }
+
+  /**
+   * @return 输出字符串.
+   */
+  @Benchmark
+  public String sessionRender() {
+    dest.put("YEAR", 2000 + (count++ & 15));
+    return session.render(dest);
+  }
+}
@@ -0,0 +1,102 @@
+package io.dev.util.benchmark;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.dev.util.SlotResolvers;
+import io.dev.util.SlotString;
+
+/**
+ * 从文件读取模板字符串的基准测试，比较把整个文件读成字符串后格式化与从文件通道流式格式化.<br>
+ * 模板文件包含 {@value #STATEMENTS} 条语句，输出写入内存.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+@State(Scope.Benchmark)
+public class SlotStringStreamBenchmark {
+
+  /**
+   * 模板文件中的语句数量.
+   */
+  private static final int STATEMENTS = 50000;
+
+  /**
+   * 不缓存模板字符串的格式化器.
+   */
+  private SlotString slot;
+  /**
+   * 占位符替换表.
+   */
+  private Map<String, Object> dest;
+  /**
+   * 模板文件.
+   */
+  private Path file;
+
+  /**
+   * 写入模板文件并检查两种方式的输出.
+   * @throws IOException 写入或读取模板文件失败.
+   */
+  @Setup
+  public void setup() throws IOException {
+    slot = new SlotString();
+    dest = Templates.scriptDest();
+    file = Files.createTempFile("slotstring-stream", ".sql");
+    Files.write(file, Templates.script(STATEMENTS).getBytes(StandardCharsets.UTF_8));
+    Templates.check(readWholeFile().toString(), channelStream().toString());
+  }
+
+  /**
+   * 删除模板文件.
+   * @throws IOException 删除失败.
+   */
+  @TearDown
+  public void tearDown() throws IOException {
+    Files.deleteIfExists(file);
+  }
+
+  /**
+   * @return 输出字符串.
+   * @throws IOException 读取模板文件失败.
+   */
+  @Benchmark
+  public StringBuilder readWholeFile() throws IOException {
+    StringBuilder out = new StringBuilder();
+    slot.qformatTo(out, new String(Files.readAllBytes(file), StandardCharsets.UTF_8), dest);
+    return out;
+  }
+
+  /**
+   * @return 输出字符串.
+   * @throws IOException 读取模板文件失败.
+   */
+  @Benchmark
+  public StringBuilder channelStream() throws IOException {
+    StringBuilder out = new StringBuilder();
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      slot.qformatTo(out, channel, StandardCharsets.UTF_8, SlotResolvers.map(dest));
+    }
+    return out;
+  }
+}
@@ -0,0 +1,433 @@
+package io.dev.util.benchmark;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import io.dev.util.SlotString;
+import io.dev.util.SlotStringBufferPool;
+import io.dev.util.SlotStringCache;
+
+/**
+ * 持续负载测试入口.<br>
+ * <br>
+ * 在平台线程和虚拟线程上对每种格式化方式持续施压数分钟，可按固定请求速率施压，输出尾部延迟、每个 CPU 核的吞吐量和每次操作的内存分配.<br>
+ * 与 JMH 基准测试不同，每次调用都单独计时，因此 p99/p999 包括 GC 停顿、安全点和共用格式化器上的争用；
+ * 按固定速率施压时从每次调用的计划开始时间计时，线程停顿期间未能按时开始的调用也计入延迟.<br>
+ * 通过系统属性配置：
+ * <ul>
+ * <li>{@code slotstring.soak.modes}：逗号分隔的 {@link Mode} 名称，默认全部.</li>
+ * <li>{@code slotstring.soak.threads}：平台线程数列表，默认 {@value #DEFAULT_THREADS}.</li>
+ * <li>{@code slotstring.soak.virtualThreads}：虚拟线程数列表，仅 Java 21 及以上，默认不运行.</li>
+ * <li>{@code slotstring.soak.seconds}：每次运行的测量秒数，默认 {@value #DEFAULT_SECONDS}.</li>
+ * <li>{@code slotstring.soak.warmupSeconds}：每次运行前不测量的预热秒数，默认 {@value #DEFAULT_WARMUP_SECONDS}.</li>
+ * <li>{@code slotstring.soak.rate}：全部线程合计每秒的操作数，为 0（默认）时每个线程不限速.</li>
+ * <li>{@code slotstring.soak.size}：{@link TemplateSize}，默认 {@code MEDIUM}.</li>
+ * </ul>
+ * 内存分配按线程从 {@code com.sun.management.ThreadMXBean} 读取，JVM 不统计虚拟线程的内存分配，此时输出 {@code n/a}.
+ */
+public final class SoakMain {
+
+  /**
+   * 默认的平台线程数列表.
+   */
+  private static final String DEFAULT_THREADS = "1,4,32";
+  /**
+   * 默认每次运行的测量秒数.
+   */
+  private static final int DEFAULT_SECONDS = 60;
+  /**
+   * 默认每次运行前的预热秒数.
+   */
+  private static final int DEFAULT_WARMUP_SECONDS = 10;
+  /**
+   * 编译结果缓存容量.
+   */
+  private static final int CACHE_SIZE = 256;
+
+  /**
+   * 测试覆盖的格式化方式.
+   */
+  public enum Mode {
+    /**
+     * 每个线程各持有一个非线程安全的格式化器，调用 {@code qformat}.
+     */
+    SHARED_QFORMAT,
+    /**
+     * 共用一个多线程格式化器，每次调用分配缓冲区，调用 {@code qformat}.
+     */
+    DISCRETE_QFORMAT,
+    /**
+     * 共用一个使用缓冲区池的格式化器，调用 {@code qformat}.
+     */
+    POOLED_QFORMAT,
+    /**
+     * 共用一个使用编译结果缓存的格式化器，调用 {@code qformat}.
+     */
+    CACHED_QFORMAT,
+    /**
+     * 每次调用都编译模板字符串再格式化.
+     */
+    COMPILE_FORMAT,
+    /**
+     * 共用一个预先编译的格式化器，调用 {@code format}.
+     */
+    FORMAT
+  }
+
+  /**
+   * 从系统属性读取的测试配置.
+   */
+  private static final class Settings {
+    /**
+     * 格式化方式.
+     */
+    final List<Mode> modes = new ArrayList<>();
+    /**
+     * 平台线程数列表.
+     */
+    final List<Integer> threads = parseCounts(System.getProperty("slotstring.soak.threads", DEFAULT_THREADS));
+    /**
+     * 虚拟线程数列表.
+     */
+    final List<Integer> virtualThreads = parseCounts(System.getProperty("slotstring.soak.virtualThreads", ""));
+    /**
+     * 每次运行的测量秒数.
+     */
+    final long seconds = Long.getLong("slotstring.soak.seconds", DEFAULT_SECONDS);
+    /**
+     * 每次运行前的预热秒数.
+     */
+    final long warmupSeconds = Long.getLong("slotstring.soak.warmupSeconds", DEFAULT_WARMUP_SECONDS);
+    /**
+     * 全部线程合计每秒的操作数，为 0 时不限速.
+     */
+    final long rate = Long.getLong("slotstring.soak.rate", 0L);
+    /**
+     * 模板字符串大小.
+     */
+    final TemplateSize size = TemplateSize.valueOf(System.getProperty("slotstring.soak.size", "MEDIUM"));
+
+    Settings() {
+      String modes = System.getProperty("slotstring.soak.modes", "");
+      if (modes.trim().isEmpty()) {
+        this.modes.addAll(Arrays.asList(Mode.values()));
+      } else {
+        for (String mode : modes.split(",")) {
+          this.modes.add(Mode.valueOf(mode.trim()));
+        }
+      }
+    }
+  }
+
+  /**
+   * 一次格式化调用，已绑定该格式化方式共用或每个线程持有的格式化器.
+   */
+  @FunctionalInterface
+  private interface Operation {
+    /**
+     * 格式化一次.
+     * @return 输出字符串.
+     */
+    String render();
+  }
+
+  /**
+   * 一个施压线程及其测量结果.
+   */
+  private static final class Worker implements Runnable {
+    /**
+     * 格式化调用.
+     */
+    final Operation operation;
+    /**
+     * 按固定速率施压时两次调用的计划间隔（纳秒），为 0 时不限速.
+     */
+    final long intervalNanos;
+    /**
+     * 预期输出的字符数.
+     */
+    final int expectedLength;
+    /**
+     * 施压线程已启动.
+     */
+    final CountDownLatch ready;
+    /**
+     * 施压线程已结束.
+     */
+    final CountDownLatch done;
+    /**
+     * 开始测量的时间（纳秒时钟）.
+     */
+    final long measureFrom;
+    /**
+     * 结束测量的时间（纳秒时钟）.
+     */
+    final long measureTo;
+    /**
+     * 测量期间的耗时分布.
+     */
+    final LatencyHistogram histogram = new LatencyHistogram();
+    /**
+     * 测量期间分配的字节数，无法读取时为 -1.
+     */
+    long allocatedBytes = -1L;
+    /**
+     * 施压时抛出的异常.
+     */
+    Throwable failure;
+
+    Worker(Operation operation, long intervalNanos, int expectedLength, CountDownLatch ready, CountDownLatch done,
+        long measureFrom, long measureTo) {
+      this.operation = operation;
+      this.intervalNanos = intervalNanos;
+      this.expectedLength = expectedLength;
+      this.ready = ready;
+      this.done = done;
+      this.measureFrom = measureFrom;
+      this.measureTo = measureTo;
+    }
+
+    @Override
+    public void run() {
+      try {
+        ready.countDown();
+        long allocatedFrom = -1L;
+        boolean measuring = false;
+        long next = System.nanoTime();
+        for (;;) {
+          long start;
+          if (intervalNanos > 0) {
+            for (long now; (now = System.nanoTime()) < next; ) {
+              LockSupport.parkNanos(next - now);
+            }
+            start = next;
+            next += intervalNanos;
+          } else {
+            start = System.nanoTime();
+          }
+          if (!measuring && start >= measureFrom) {
+            measuring = true;
+            allocatedFrom = allocatedBytes();
+          }
+          if (start >= measureTo) {
+            break;
+          }
+          String res = operation.render();
+          long end = System.nanoTime();
+          if (res.length() != expectedLength) {
+            throw new IllegalStateException("unexpected output:\n" + res);
+          }
+          if (measuring) {
+            histogram.record(end - start);
+          }
+        }
+        long allocatedTo = allocatedBytes();
+        if (allocatedFrom >= 0 && allocatedTo >= 0) {
+          allocatedBytes = allocatedTo - allocatedFrom;
+        }
+      } catch (Throwable e) {
+        failure = e;
+      } finally {
+        done.countDown();
+      }
+    }
+  }
+
+  private SoakMain() {
+  }
+
+  /**
+   * 按配置依次运行每种格式化方式和线程数，并输出结果.
+   * @param args 未使用，配置通过系统属性指定.
+   * @throws Exception 运行失败.
+   */
+  public static void main(String[] args) throws Exception {
+    Settings settings = new Settings();
+    String pattern = Templates.pattern(settings.size);
+    int expectedLength = Templates.expected(settings.size).length();
+    Map<String, Object> dest = Templates.dest();
+    Templates.check(Templates.expected(settings.size), new SlotString(pattern).format(dest));
+    System.out.printf(Locale.ROOT, "# %s, %d cores, template %s, %ds warmup + %ds per run, rate %s%n",
+        System.getProperty("java.vm.name") + " " + System.getProperty("java.version"),
+        Runtime.getRuntime().availableProcessors(), settings.size, settings.warmupSeconds, settings.seconds,
+        settings.rate > 0 ? settings.rate + " ops/s" : "unbounded");
+    System.out.printf(Locale.ROOT, "%-16s %8s %12s %14s %10s %10s %10s %10s %10s%n", "mode", "threads", "ops/s",
+        "ops/cpu-s", "p50(us)", "p99(us)", "p999(us)", "max(us)", "B/op");
+    for (Mode mode : settings.modes) {
+      for (int threads : settings.threads) {
+        run(settings, mode, threads, false, pattern, expectedLength, dest);
+      }
+      for (int threads : settings.virtualThreads) {
+        run(settings, mode, threads, true, pattern, expectedLength, dest);
+      }
+    }
+  }
+
+  /**
+   * 运行一次持续负载测试并输出一行结果.
+   * @param settings 测试配置.
+   * @param mode 格式化方式.
+   * @param threads 线程数.
+   * @param virtual 是否使用虚拟线程.
+   * @param pattern 模板字符串.
+   * @param expectedLength 预期输出的字符数.
+   * @param dest 占位符替换表.
+   * @throws Exception 等待施压线程时被中断或施压线程失败.
+   */
+  private static void run(Settings settings, Mode mode, int threads, boolean virtual, String pattern,
+      int expectedLength, Map<String, Object> dest) throws Exception {
+    ExecutorService executor = virtual ? newVirtualThreadExecutor() : Executors.newFixedThreadPool(threads);
+    if (executor == null) {
+      System.out.printf(Locale.ROOT, "%-16s %8s virtual threads need Java 21+, skipped%n", mode, "v" + threads);
+      return;
+    }
+    SlotString shared = sharedFormatter(mode, pattern);
+    long intervalNanos = settings.rate > 0 ? TimeUnit.SECONDS.toNanos(threads) / settings.rate : 0L;
+    CountDownLatch ready = new CountDownLatch(threads);
+    CountDownLatch done = new CountDownLatch(threads);
+    long measureFrom = System.nanoTime() + TimeUnit.SECONDS.toNanos(settings.warmupSeconds);
+    long measureTo = measureFrom + TimeUnit.SECONDS.toNanos(settings.seconds);
+    Worker[] workers = new Worker[threads];
+    for (int i = 0; i < threads; ++i) {
+      workers[i] = new Worker(operation(mode, shared, pattern, dest), intervalNanos, expectedLength, ready, done,
+          measureFrom, measureTo);
+      executor.execute(workers[i]);
+    }
+    ready.await();
+    long sleepNanos = measureFrom - System.nanoTime();
+    if (sleepNanos > 0) {
+      TimeUnit.NANOSECONDS.sleep(sleepNanos);
+    }
+    long cpuFrom = processCpuNanos();
+    done.await();
+    long cpuNanos = processCpuNanos() - cpuFrom;
+    executor.shutdown();
+    LatencyHistogram histogram = new LatencyHistogram();
+    long allocated = 0;
+    for (Worker worker : workers) {
+      if (worker.failure != null) {
+        throw new IllegalStateException(mode + " failed on " + threads + " threads", worker.failure);
+      }
+      histogram.add(worker.histogram);
+      allocated = allocated < 0 || worker.allocatedBytes < 0 ? -1L : allocated + worker.allocatedBytes;
+    }
+    long ops = histogram.count();
+    double opsPerSecond = ops / (double) settings.seconds;
+    System.out.printf(Locale.ROOT, "%-16s %8s %12.0f %14s %10.1f %10.1f %10.1f %10.1f %10s%n", mode,
+        (virtual ? "v" : "") + threads, opsPerSecond,
+        cpuNanos > 0 ? String.format(Locale.ROOT, "%.0f", ops / (cpuNanos / 1e9)) : "n/a",
+        histogram.percentile(50) / 1e3, histogram.percentile(99) / 1e3, histogram.percentile(99.9) / 1e3,
+        histogram.max() / 1e3, allocated >= 0 && ops > 0 ? String.valueOf(allocated / ops) : "n/a");
+  }
+
+  /**
+   * 创建格式化方式共用的格式化器.
+   * @param mode 格式化方式.
+   * @param pattern 模板字符串.
+   * @return 格式化器，不共用格式化器的方式返回 {@code null}.
+   */
+  private static SlotString sharedFormatter(Mode mode, String pattern) {
+    switch (mode) {
+      case DISCRETE_QFORMAT:
+        return new SlotString(true);
+      case POOLED_QFORMAT:
+        return new SlotString(new SlotStringBufferPool());
+      case CACHED_QFORMAT:
+        return new SlotString(true, new SlotStringCache(CACHE_SIZE));
+      case FORMAT:
+        return new SlotString(pattern);
+      default:
+        return null;
+    }
+  }
+
+  /**
+   * 创建一个施压线程的格式化调用.
+   * @param mode 格式化方式.
+   * @param shared 共用的格式化器.
+   * @param pattern 模板字符串.
+   * @param dest 占位符替换表.
+   * @return 格式化调用.
+   */
+  private static Operation operation(Mode mode, SlotString shared, String pattern, Map<String, Object> dest) {
+    switch (mode) {
+      case SHARED_QFORMAT:
+        SlotString own = new SlotString(false);
+        return () -> own.qformat(pattern, dest);
+      case COMPILE_FORMAT:
+        return () -> new SlotString(pattern).format(dest);
+      case FORMAT:
+        return () -> shared.format(dest);
+      default:
+        return () -> shared.qformat(pattern, dest);
+    }
+  }
+
+  /**
+   * 获取当前线程已分配的字节数.
+   * @return 已分配的字节数，JVM 无法统计时（如虚拟线程）返回 -1.
+   */
+  private static long allocatedBytes() {
+    java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+      return -1L;
+    }
+    try {
+      return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+    } catch (UnsupportedOperationException e) {
+      return -1L;
+    }
+  }
+
+  /**
+   * 获取进程已使用的 CPU 时间.
+   * @return CPU 时间（纳秒），无法读取时返回 -1.
+   */
+  private static long processCpuNanos() {
+    java.lang.management.OperatingSystemMXBean bean = ManagementFactory.getOperatingSystemMXBean();
+    if (bean instanceof com.sun.management.OperatingSystemMXBean) {
+      return ((com.sun.management.OperatingSystemMXBean) bean).getProcessCpuTime();
+    }
+    return -1L;
+  }
+
+  /**
+   * 创建每个任务一个虚拟线程的执行器，测试程序以 Java 8 为目标，因此在运行时查找
+   * {@code Executors.newVirtualThreadPerTaskExecutor()}.
+   * @return 执行器，Java 21 以下返回 {@code null}.
+   */
+  private static ExecutorService newVirtualThreadExecutor() {
+    try {
+      return (ExecutorService) MethodHandles.publicLookup().findStatic(Executors.class,
+          "newVirtualThreadPerTaskExecutor", MethodType.methodType(ExecutorService.class)).invoke();
+    } catch (Throwable e) {
+      return null;
+    }
+  }
+
+  /**
+   * 解析逗号分隔的线程数列表.
+   * @param counts 线程数列表.
+   * @return 线程数，忽略空项.
+   */
+  private static List<Integer> parseCounts(String counts) {
+    List<Integer> res = new ArrayList<>();
+    for (String count : counts.split(",")) {
+      if (!count.trim().isEmpty()) {
+        res.add(Integer.parseInt(count.trim()));
+      }
+    }
+    return res;
+  }
+}
@@ -0,0 +1,19 @@
+package io.dev.util.benchmark;
+
+/**
+ * 基准测试覆盖的模板字符串大小.
+ */
+public enum TemplateSize {
+  /**
+   * 只有一个占位符的单行查询，即 README 中的凭证示例.
+   */
+  SMALL,
+  /**
+   * {@code PerformanceTestExample_Pattern.sql}，约 2.5 KB，42 个占位符.
+   */
+  MEDIUM,
+  /**
+   * 中等大小的模板字符串重复 {@value Templates#LARGE_REPEAT} 次.
+   */
+  LARGE
+}
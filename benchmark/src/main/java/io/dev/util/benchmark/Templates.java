@@ -0,0 +1,149 @@
+package io.dev.util.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 由 {@code asset/performanceTest} 中的模板构造的基准测试输入.
+ */
+final class Templates {
+
+  /**
+   * {@link TemplateSize#LARGE} 模板字符串中性能测试模板的重复次数.
+   */
+  static final int LARGE_REPEAT = 16;
+
+  private Templates() {
+  }
+
+  /**
+   * 获取模板字符串.
+   * @param size 模板字符串大小.
+   * @return 模板字符串.
+   */
+  static String pattern(TemplateSize size) {
+    switch (size) {
+      case SMALL:
+        return "SELECT * FROM VOUCHER{YEAR} WHERE COMMENT = ''";
+      case MEDIUM:
+        return resource("/PerformanceTestExample_Pattern.sql");
+      case LARGE:
+        StringBuilder large = new StringBuilder();
+        String medium = resource("/PerformanceTestExample_Pattern.sql");
+        for (int i = 0; i < LARGE_REPEAT; ++i) {
+          large.append(medium).append('\n');
+        }
+        return large.toString();
+      default:
+        throw new IllegalArgumentException(String.valueOf(size));
+    }
+  }
+
+  /**
+   * 获取按 {@link #dest()} 格式化的预期输出.
+   * @param size 模板字符串大小.
+   * @return 预期输出.
+   */
+  static String expected(TemplateSize size) {
+    switch (size) {
+      case SMALL:
+        return "SELECT * FROM VOUCHER2023 WHERE COMMENT = ''";
+      case MEDIUM:
+        return resource("/PerformanceTestExample_Expected.sql");
+      case LARGE:
+        StringBuilder large = new StringBuilder();
+        String medium = resource("/PerformanceTestExample_Expected.sql");
+        for (int i = 0; i < LARGE_REPEAT; ++i) {
+          large.append(medium).append('\n');
+        }
+        return large.toString();
+      default:
+        throw new IllegalArgumentException(String.valueOf(size));
+    }
+  }
+
+  /**
+   * @return 性能测试使用的占位符替换表.
+   */
+  static Map<String, Object> dest() {
+    Map<String, Object> dest = new HashMap<>();
+    dest.put("YEAR", 2023);
+    dest.put("USER1_ID", "1905C123-2AC0-4802-A184-F1AFDCE0C6AA");
+    dest.put("USER2_ID", "BA681A63-D3B3-4105-A1A0-1CA2522D08C0");
+    dest.put("TIME", "NOW()");
+    dest.put("USER1_CODE", 1000046L);
+    dest.put("USER2_CODE", 1005102L);
+    dest.put("START_CODE", 1000000L);
+    dest.put("END_CODE", 2000000L);
+    dest.put("DIM_NAME_PARAM", "AND T2.DIM_NAME = :DIM_NAME");
+    dest.put("EMPTY_SQL", "");
+    return dest;
+  }
+
+  /**
+   * 生成由多条 INSERT 语句组成的脚本模板字符串，每条语句 5 个占位符.
+   * @param statements 语句数量.
+   * @return 模板字符串.
+   */
+  static String script(int statements) {
+    StringBuilder pattern = new StringBuilder();
+    for (int i = 0; i < statements; ++i) {
+      pattern.append("INSERT INTO VOUCHER{YEAR} (ID, ORG, AMOUNT, ACTIVE, MEMO) VALUES (").append(i)
+          .append(", '{ORG}', {AMOUNT}, {ACTIVE}, '{MEMO}');\n");
+    }
+    return pattern.toString();
+  }
+
+  /**
+   * @return {@link #script(int)} 使用的占位符替换表.
+   */
+  static Map<String, Object> scriptDest() {
+    Map<String, Object> dest = new HashMap<>();
+    dest.put("YEAR", 2023);
+    dest.put("ORG", "总部");
+    dest.put("AMOUNT", new BigDecimal("12345.67"));
+    dest.put("ACTIVE", true);
+    dest.put("MEMO", "migrated");
+    return dest;
+  }
+
+  /**
+   * 检查输出，与预期不同时立即失败.
+   * @param expected 预期输出.
+   * @param actual 实际输出.
+   * @throws IllegalStateException 输出与预期不同.
+   */
+  static void check(String expected, String actual) {
+    if (!expected.equals(actual)) {
+      throw new IllegalStateException("unexpected output:\n" + actual);
+    }
+  }
+
+  /**
+   * 按 UTF-8 读取类路径资源.
+   * @param name 资源名称.
+   * @return 资源内容.
+   * @throws IllegalStateException 资源不存在.
+   */
+  private static String resource(String name) {
+    try (InputStream in = Templates.class.getResourceAsStream(name)) {
+      if (in == null) {
+        throw new IllegalStateException("missing resource " + name);
+      }
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      byte[] buf = new byte[8192];
+      for (int n; (n = in.read(buf)) > 0;) {
+        out.write(buf, 0, n);
+      }
+      return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+}
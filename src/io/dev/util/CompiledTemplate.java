@@ -0,0 +1,122 @@
+package io.dev.util;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * 编译的模板字符串.<br>
+ * <br>
+ * 编译后不可修改，编译结果的全部字段均为 {@code final} 且不保存任何缓存（按 Java Bean 格式化时的读取方法按类型缓存在
+ * {@link SlotResolvers} 中），可保存在 {@code static final} 字段中供任意多个线程共用，不需要同步.<br>
+ * 自身的格式化方法按默认的转换规则直接格式化编译结果，不经过任何格式化器，每次调用只在调用线程中分配本次输出所需的缓冲区；
+ * 需要重写转换规则或设置转义方式时，使用 {@link SlotString#SlotString(CompiledTemplate)} 创建共用该模板的格式化器.
+ */
+public final class CompiledTemplate {
+
+  /**
+   * 编译结果.
+   */
+  final SlotString.Template template;
+
+  CompiledTemplate(SlotString.Template template) {
+    this.template = template;
+  }
+
+  /**
+   * 编译模板字符串.
+   * @param pattern 模板字符串.
+   * @return 编译的模板.
+   * @throws NullPointerException {@code pattern} 为 {@code null}.
+   */
+  public static CompiledTemplate compile(String pattern) {
+    if (pattern == null) {
+      throw new NullPointerException("pattern");
+    }
+    return new SlotString(pattern).compiled();
+  }
+
+  /**
+   * 编译模板字符串，文本片段存放在共用的文本区中.
+   * @param pattern 模板字符串.
+   * @param arena 存放文本片段的文本区.
+   * @return 编译的模板.
+   * @throws NullPointerException {@code pattern} 为 {@code null}.
+   * @see SlotString#SlotString(String, SlotStringArena)
+   */
+  public static CompiledTemplate compile(String pattern, SlotStringArena arena) {
+    if (pattern == null) {
+      throw new NullPointerException("pattern");
+    }
+    return new SlotString(pattern, arena).compiled();
+  }
+
+  /**
+   * @return 模板字符串，由 {@code bind} 方法创建时为预先填入值之前的模板字符串，文本存放在文本区中时为 {@code null}.
+   */
+  public String pattern() {
+    return template.pattern;
+  }
+
+  /**
+   * @return 按位置排列的键名数组的副本.
+   * @see SlotString#slotKeys()
+   */
+  public String[] keys() {
+    return template.keys.clone();
+  }
+
+  /**
+   * @return 字符串片段的数量.
+   */
+  public int size() {
+    return template.size();
+  }
+
+  /**
+   * 按替换表格式化.
+   * @param dest 占位符替换表.
+   * @return 输出字符串.
+   */
+  public String format(Map<String, Object> dest) {
+    return SlotString.format(template, dest == null ? null : dest::get, null, null);
+  }
+
+  /**
+   * 按值来源格式化.
+   * @param resolver 占位符的值来源，为 {@code null} 时全部按 {@code null} 值处理.
+   * @return 输出字符串.
+   */
+  public String format(SlotResolver resolver) {
+    return SlotString.format(template, resolver, null, null);
+  }
+
+  /**
+   * 按位置格式化.
+   * @param values 按位置排列的替换值.
+   * @return 输出字符串.
+   * @see SlotString#formatSlots(Object[])
+   */
+  public String formatSlots(Object[] values) {
+    return SlotString.formatSlots(template, values, null, null);
+  }
+
+  /**
+   * 按替换表格式化，并将结果直接写入输出目标.
+   * @param out 输出目标.
+   * @param dest 占位符替换表.
+   * @throws IOException 写入输出目标失败.
+   */
+  public void formatTo(Appendable out, Map<String, Object> dest) throws IOException {
+    SlotString.formatTo(template, out, dest == null ? null : dest::get, null, null);
+  }
+
+  /**
+   * 将替换表中的值按默认的转换规则预先填入，返回新的编译的模板.
+   * @param dest 预先填入的占位符替换表.
+   * @return 新的编译的模板.
+   * @see SlotString#bind(Map)
+   */
+  public CompiledTemplate bind(Map<String, Object> dest) {
+    return new CompiledTemplate(SlotString.bind(template, dest, null, null));
+  }
+}
@@ -0,0 +1,26 @@
+package io.dev.util;
+
+/**
+ * 替换表的值的转换器.<br>
+ * <br>
+ * 将某一类型的值直接追加到结果缓冲区，不创建中间字符串.<br>
+ * {@code length} 方法返回的长度必须与 {@code append} 方法追加的字符数一致，用于预先计算输出长度.
+ * 
+ * @see SlotConverters
+ */
+public interface SlotConverter {
+
+  /**
+   * 计算值转换后的长度.
+   * @param val 替换表的值，不为 {@code null}.
+   * @return 转换后的字符数.
+   */
+  int length(Object val);
+
+  /**
+   * 将值转换后追加到结果缓冲区.
+   * @param res 结果缓冲区.
+   * @param val 替换表的值，不为 {@code null}.
+   */
+  void append(StringBuilder res, Object val);
+}
@@ -0,0 +1,316 @@
+package io.dev.util;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 按值的类型查找转换器的注册表.<br>
+ * <br>
+ * 查找结果按类型缓存在 {@code ClassValue} 中，未注册的类型会沿父类和接口查找已注册的转换器.<br>
+ * 默认注册表内置 {@code String}、{@code Long}、{@code Integer}、{@code Short}、{@code Byte}、{@code Boolean}、
+ * {@code Character} 和 {@code BigDecimal} 的转换器，其结果与 {@code SlotString.asString} 方法的默认转换结果完全一致，
+ * 但数值会直接追加到结果缓冲区，不创建中间字符串.<br>
+ * 默认注册表不可修改，需要注册其他转换器时以默认注册表为基础创建自己的注册表，并通过重写 {@code SlotString.converters}
+ * 方法交给格式化器使用，注册的转换器只对该格式化器生效.<br>
+ * 线程安全.
+ */
+public class SlotConverters {
+
+  /**
+   * 转换为自身的 {@code String} 转换器.
+   */
+  static final SlotConverter STRING = new SlotConverter() {
+
+    @Override
+    public int length(Object val) {
+      return ((String) val).length();
+    }
+
+    @Override
+    public void append(StringBuilder res, Object val) {
+      res.append((String) val);
+    }
+  };
+
+  /**
+   * {@code Long}、{@code Integer}、{@code Short} 和 {@code Byte} 转换器.
+   */
+  private static final SlotConverter INTEGRAL = new SlotConverter() {
+
+    @Override
+    public int length(Object val) {
+      return stringSize(((Number) val).longValue());
+    }
+
+    @Override
+    public void append(StringBuilder res, Object val) {
+      res.append(((Number) val).longValue());
+    }
+  };
+
+  /**
+   * {@code Boolean} 转换器.
+   */
+  private static final SlotConverter BOOLEAN = new SlotConverter() {
+
+    @Override
+    public int length(Object val) {
+      return ((Boolean) val) ? 4 : 5;
+    }
+
+    @Override
+    public void append(StringBuilder res, Object val) {
+      res.append(((Boolean) val).booleanValue());
+    }
+  };
+
+  /**
+   * {@code Character} 转换器.
+   */
+  private static final SlotConverter CHARACTER = new SlotConverter() {
+
+    @Override
+    public int length(Object val) {
+      return 1;
+    }
+
+    @Override
+    public void append(StringBuilder res, Object val) {
+      res.append(((Character) val).charValue());
+    }
+  };
+
+  /**
+   * {@code BigDecimal} 转换器，结果与 {@code toPlainString()} 一致.<br>
+   * 非标度值在 {@code long} 范围内且标度为 0 至 18 时按数字直接追加，否则使用 {@code toPlainString()}.
+   */
+  private static final SlotConverter BIG_DECIMAL = new SlotConverter() {
+
+    @Override
+    public int length(Object val) {
+      BigDecimal dec = (BigDecimal) val;
+      int scale = dec.scale();
+      BigInteger unscaled = dec.unscaledValue();
+      if (!isCompact(unscaled, scale)) {
+        return dec.toPlainString().length();
+      }
+      long u = unscaled.longValue();
+      int sign = u < 0 ? 1 : 0;
+      int digits = stringSize(Math.abs(u));
+      if (scale == 0) {
+        return sign + digits;
+      }
+      // 整数部分不足一位时补 0
+      return sign + Math.max(digits, scale + 1) + 1;
+    }
+
+    @Override
+    public void append(StringBuilder res, Object val) {
+      BigDecimal dec = (BigDecimal) val;
+      int scale = dec.scale();
+      BigInteger unscaled = dec.unscaledValue();
+      if (!isCompact(unscaled, scale)) {
+        res.append(dec.toPlainString());
+        return;
+      }
+      long u = unscaled.longValue();
+      if (scale == 0) {
+        res.append(u);
+        return;
+      }
+      if (u < 0) {
+        res.append('-');
+        u = -u;
+      }
+      long pow = POWERS_OF_TEN[scale];
+      res.append(u / pow).append('.');
+      long fraction = u % pow;
+      for (int i = stringSize(fraction); i < scale; ++i) {
+        res.append('0');
+      }
+      res.append(fraction);
+    }
+
+    private boolean isCompact(BigInteger unscaled, int scale) {
+      return scale >= 0 && scale < POWERS_OF_TEN.length && unscaled.bitLength() < 63;
+    }
+  };
+
+  /**
+   * 表示未找到转换器的占位值.
+   */
+  private static final SlotConverter NONE = new SlotConverter() {
+
+    @Override
+    public int length(Object val) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void append(StringBuilder res, Object val) {
+      throw new UnsupportedOperationException();
+    }
+  };
+
+  /**
+   * 10 的 0 至 18 次幂.
+   */
+  private static final long[] POWERS_OF_TEN = new long[19];
+
+  /**
+   * 不可修改的默认注册表.
+   */
+  private static final SlotConverters DEFAULTS = new SlotConverters(true);
+
+  static {
+    POWERS_OF_TEN[0] = 1;
+    for (int i = 1; i < POWERS_OF_TEN.length; ++i) {
+      POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+    }
+  }
+
+  /**
+   * 已注册的转换器.
+   */
+  private final Map<Class<?>, SlotConverter> registered = new HashMap<>();
+  /**
+   * 按类型缓存的查找结果，注册新的转换器时整体替换.
+   */
+  private volatile ClassValue<SlotConverter> lookup = newLookup();
+  /**
+   * 是否不可修改，仅默认注册表不可修改.
+   */
+  private final boolean immutable;
+
+  /**
+   * 创建空的注册表.
+   */
+  public SlotConverters() {
+    this(false);
+  }
+
+  /**
+   * 创建包含另一个注册表中全部已注册转换器的注册表.<br>
+   * 以 {@link #defaults()} 为基础时，新注册表保留内置的转换器，可继续注册其他转换器.
+   * @param base 作为基础的注册表.
+   */
+  public SlotConverters(SlotConverters base) {
+    this.immutable = false;
+    synchronized (base) {
+      registered.putAll(base.registered);
+    }
+  }
+
+  private SlotConverters(boolean builtin) {
+    this.immutable = builtin;
+    if (builtin) {
+      registered.put(String.class, STRING);
+      registered.put(Long.class, INTEGRAL);
+      registered.put(Integer.class, INTEGRAL);
+      registered.put(Short.class, INTEGRAL);
+      registered.put(Byte.class, INTEGRAL);
+      registered.put(Boolean.class, BOOLEAN);
+      registered.put(Character.class, CHARACTER);
+      registered.put(BigDecimal.class, BIG_DECIMAL);
+    }
+  }
+
+  /**
+   * 获取默认注册表.<br>
+   * {@code SlotString} 默认使用该注册表，默认注册表不可修改，不会因某处注册转换器而改变其他格式化器的输出.
+   * @return 不可修改的默认注册表.
+   * @see #SlotConverters(SlotConverters)
+   */
+  public static SlotConverters defaults() {
+    return DEFAULTS;
+  }
+
+  /**
+   * 注册类型的转换器.<br>
+   * 该类型及其未单独注册的子类型的值都会使用该转换器.
+   * @param type 值的类型.
+   * @param converter 转换器.
+   * @throws UnsupportedOperationException 在默认注册表中注册.
+   */
+  public synchronized void register(Class<?> type, SlotConverter converter) {
+    if (immutable) {
+      throw new UnsupportedOperationException("Default SlotConverters are immutable, "
+          + "register on new SlotConverters(SlotConverters.defaults()) instead");
+    }
+    registered.put(type, converter);
+    lookup = newLookup();
+  }
+
+  /**
+   * 查找值的转换器.
+   * @param val 替换表的值.
+   * @return 转换器，值为 {@code null} 或未找到时返回 {@code null}.
+   */
+  public SlotConverter lookup(Object val) {
+    if (val == null) {
+      return null;
+    }
+    SlotConverter converter = lookup.get(val.getClass());
+    return converter == NONE ? null : converter;
+  }
+
+  private ClassValue<SlotConverter> newLookup() {
+    return new ClassValue<SlotConverter>() {
+
+      @Override
+      protected SlotConverter computeValue(Class<?> type) {
+        synchronized (SlotConverters.this) {
+          SlotConverter converter = find(type);
+          return converter == null ? NONE : converter;
+        }
+      }
+    };
+  }
+
+  /**
+   * 沿父类和接口查找已注册的转换器.
+   * @param type 值的类型.
+   * @return 转换器，未找到时返回 {@code null}.
+   */
+  private SlotConverter find(Class<?> type) {
+    for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+      SlotConverter converter = registered.get(c);
+      if (converter != null) {
+        return converter;
+      }
+      for (Class<?> i : c.getInterfaces()) {
+        converter = find(i);
+        if (converter != null) {
+          return converter;
+        }
+      }
+    }
+    return null;
+  }
+
+  /**
+   * 计算整数转换为十进制字符串后的长度.
+   * @param x 整数.
+   * @return 字符数.
+   */
+  static int stringSize(long x) {
+    if (x == Long.MIN_VALUE) {
+      return 20;
+    }
+    int sign = 0;
+    if (x < 0) {
+      sign = 1;
+      x = -x;
+    }
+    long p = 10;
+    for (int i = 1; i < 19; ++i) {
+      if (x < p) {
+        return i + sign;
+      }
+      p *= 10;
+    }
+    return 19 + sign;
+  }
+}
@@ -0,0 +1,176 @@
+package io.dev.util;
+
+import java.io.IOException;
+
+/**
+ * 占位符值的转义方式.<br>
+ * <br>
+ * 通过 {@code SlotString.withEscape} 方法为整个模板字符串或单个键名设置，值转换为字符串后在写入结果缓冲区的同时转义，
+ * 不需要转义的连续字符整段追加，不创建转义后的临时字符串.<br>
+ * 转义结果用于引号内的字面量，引号本身由模板字符串提供，如 {@code '{NAME}'} 或 {@code "{NAME}"}.
+ */
+public enum SlotEscape {
+
+  /**
+   * SQL 字符串字面量，单引号转义为两个单引号.
+   */
+  SQL(replacements("'", "''")),
+  /**
+   * JSON 字符串，转义双引号、反斜杠和控制字符.
+   */
+  JSON(jsonReplacements()),
+  /**
+   * HTML 文本和属性值，转义 {@code & < > " '}.
+   */
+  HTML(replacements("&<>\"'", "&amp;", "&lt;", "&gt;", "&quot;", "&#39;"));
+
+  /**
+   * 需要转义的 ASCII 字符对应的转义结果，不需要转义的字符为 {@code null}.
+   */
+  private final String[] replacements;
+  /**
+   * 只有一个字符需要转义时为该字符，否则为 0.
+   */
+  private final char single;
+  /**
+   * 按转义后的长度分配缓冲区并转义追加 {@code CharSequence} 值的转换器.
+   */
+  final SlotConverter converter;
+
+  SlotEscape(String[] replacements) {
+    this.replacements = replacements;
+    char single = 0;
+    int count = 0;
+    for (char c = 0; c < replacements.length; ++c) {
+      if (replacements[c] != null) {
+        single = c;
+        ++count;
+      }
+    }
+    this.single = count == 1 ? single : 0;
+    this.converter = new SlotConverter() {
+
+      @Override
+      public int length(Object val) {
+        return SlotEscape.this.length((CharSequence) val);
+      }
+
+      @Override
+      public void append(StringBuilder res, Object val) {
+        SlotEscape.this.append(res, (CharSequence) val);
+      }
+    };
+  }
+
+  /**
+   * 创建 ASCII 字符的转义表.
+   * @param chars 需要转义的字符.
+   * @param values 按顺序对应的转义结果.
+   * @return 转义表.
+   */
+  private static String[] replacements(String chars, String... values) {
+    String[] replacements = new String[128];
+    for (int i = 0; i < chars.length(); ++i) {
+      replacements[chars.charAt(i)] = values[i];
+    }
+    return replacements;
+  }
+
+  /**
+   * @return JSON 字符串的转义表.
+   */
+  private static String[] jsonReplacements() {
+    String[] replacements = replacements("\"\\\b\f\n\r\t", "\\\"", "\\\\", "\\b", "\\f", "\\n", "\\r", "\\t");
+    for (char c = 0; c < 0x20; ++c) {
+      if (replacements[c] == null) {
+        replacements[c] = String.format("\\u%04x", (int) c);
+      }
+    }
+    return replacements;
+  }
+
+  /**
+   * 转义字符串.
+   * @param text 原字符串.
+   * @return 转义后的字符串，不需要转义时返回原字符串.
+   */
+  public String escape(String text) {
+    int length = length(text);
+    if (length == text.length()) {
+      return text;
+    }
+    StringBuilder res = new StringBuilder(length);
+    append(res, text);
+    return res.toString();
+  }
+
+  /**
+   * 将字符串转义后追加到结果缓冲区.<br>
+   * 依次查找需要转义的字符，其间的连续字符整段追加.
+   * @param res 结果缓冲区.
+   * @param text 原字符串.
+   */
+  public void append(StringBuilder res, CharSequence text) {
+    int from = 0;
+    for (int i; (i = next(text, from)) >= 0; from = i + 1) {
+      res.append(text, from, i).append(replacements[text.charAt(i)]);
+    }
+    if (from == 0) {
+      // 不需要转义时整段追加，String 可批量复制
+      res.append(text);
+    } else {
+      res.append(text, from, text.length());
+    }
+  }
+
+  /**
+   * 将字符串转义后写入输出目标.
+   * @param out 输出目标.
+   * @param text 原字符串.
+   * @throws IOException 写入输出目标失败.
+   */
+  public void appendTo(Appendable out, CharSequence text) throws IOException {
+    if (out instanceof StringBuilder) {
+      append((StringBuilder) out, text);
+      return;
+    }
+    int from = 0;
+    for (int i; (i = next(text, from)) >= 0; from = i + 1) {
+      out.append(text, from, i).append(replacements[text.charAt(i)]);
+    }
+    out.append(text, from, text.length());
+  }
+
+  /**
+   * 计算转义后的长度.
+   * @param text 原字符串.
+   * @return 转义后的长度.
+   */
+  int length(CharSequence text) {
+    int length = text.length();
+    for (int i = next(text, 0); i >= 0; i = next(text, i + 1)) {
+      length += replacements[text.charAt(i)].length() - 1;
+    }
+    return length;
+  }
+
+  /**
+   * 查找下一个需要转义的字符.<br>
+   * 只有一个字符需要转义且原字符串为 {@code String} 时使用 {@code String.indexOf} 查找.
+   * @param text 原字符串.
+   * @param from 开始查找的位置.
+   * @return 需要转义的字符的位置，不存在时返回 -1.
+   */
+  private int next(CharSequence text, int from) {
+    if (single != 0 && text instanceof String) {
+      return ((String) text).indexOf(single, from);
+    }
+    for (int i = from, length = text.length(); i < length; ++i) {
+      char c = text.charAt(i);
+      if (c < 128 && replacements[c] != null) {
+        return i;
+      }
+    }
+    return -1;
+  }
+}
@@ -0,0 +1,20 @@
+package io.dev.util;
+
+/**
+ * 占位符的值来源.<br>
+ * <br>
+ * 格式化时按键名查找替换值，可代替 {@code Map<String, Object>} 直接从业务对象中读取，不需要先复制到替换表.<br>
+ * 编译的模板字符串每次格式化中每个不同的键名只查找一次.
+ *
+ * @see SlotResolvers
+ */
+@FunctionalInterface
+public interface SlotResolver {
+
+  /**
+   * 查找键名对应的值.
+   * @param key 键名.
+   * @return 替换值，不存在时返回 {@code null}.
+   */
+  Object resolve(String key);
+}
@@ -0,0 +1,311 @@
+package io.dev.util;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.UndeclaredThrowableException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 常用的占位符值来源.<br>
+ * <br>
+ * 提供替换表、按位置排列的值数组和 Java Bean（包括 record）三种值来源.<br>
+ * Java Bean 的读取方法按类型查找一次并转换为方法句柄缓存，每个类型还按编译结果的键名数组缓存按键名位置排列的方法句柄，
+ * 格式化编译的模板字符串时不再按键名查找，编译结果本身不保存任何可变状态.
+ */
+public final class SlotResolvers {
+
+  /**
+   * 每个类型缓存的按键名位置排列的方法句柄数量，为 2 的幂.
+   */
+  private static final int TEMPLATE_SLOTS = 64;
+
+  /**
+   * 各类型的读取方法句柄，类型均为 {@code (Object)Object}.
+   */
+  private static final ClassValue<BeanAccessors> ACCESSORS = new ClassValue<BeanAccessors>() {
+
+    @Override
+    protected BeanAccessors computeValue(Class<?> type) {
+      return new BeanAccessors(findAccessors(type));
+    }
+  };
+
+  private SlotResolvers() {
+  }
+
+  /**
+   * 从替换表查找值.
+   * @param map 替换表.
+   * @return 值来源，替换表为 {@code null} 时始终返回 {@code null} 值.
+   */
+  public static SlotResolver map(Map<String, ?> map) {
+    if (map == null) {
+      return key -> null;
+    }
+    return map::get;
+  }
+
+  /**
+   * 从按位置排列的值数组查找值.<br>
+   * 通常配合 {@code SlotString.slotKeys} 方法使用，键名在 {@code keys} 中的位置即值在 {@code values} 中的位置，
+   * 超出 {@code values} 长度的值按 {@code null} 处理，重复的键名取第一个位置的值.<br>
+   * 创建时预先建立键名到位置的映射表，每次查找不再遍历键名；{@code keys} 在创建时读取，之后的修改不影响查找，
+   * {@code values} 按引用保存，查找时读取当前的值.
+   * @param keys 按位置排列的键名.
+   * @param values 按位置排列的值.
+   * @return 值来源.
+   */
+  public static SlotResolver array(String[] keys, Object[] values) {
+    int length = Math.min(keys.length, values.length);
+    HashMap<String, Integer> indexes = new HashMap<>(length * 4 / 3 + 1);
+    for (int i = 0; i < length; ++i) {
+      indexes.putIfAbsent(keys[i], i);
+    }
+    return key -> {
+      Integer i = indexes.get(key);
+      return i == null ? null : values[i];
+    };
+  }
+
+  /**
+   * 从 Java Bean 或 record 的属性查找值.<br>
+   * 键名依次匹配无参数的公共方法 {@code getKey()}、{@code isKey()}、{@code key()} 和公共字段 {@code key}，
+   * 没有对应属性的键名返回 {@code null}.<br>
+   * {@code key()} 形式的方法仅在类型声明了同名同类型的字段（如 record 的组件）时匹配，
+   * 因此模板中的键名不能调用 {@code incrementAndGet()}、{@code clear()} 等任意公共方法.
+   * @param bean Java Bean 或 record 对象.
+   * @return 值来源，{@code bean} 为 {@code null} 时始终返回 {@code null} 值.
+   */
+  public static SlotResolver bean(Object bean) {
+    if (bean == null) {
+      return key -> null;
+    }
+    return new BeanResolver(bean);
+  }
+
+  /**
+   * 获取编译结果中各键名在指定类型上的读取方法句柄，结果缓存在该类型的读取方法中.
+   * @param template 编译结果.
+   * @param type Java Bean 的类型.
+   * @return 按键名位置排列的方法句柄，没有对应属性的键名为 {@code null}.
+   */
+  static MethodHandle[] accessors(SlotString.Template template, Class<?> type) {
+    return ACCESSORS.get(type).getters(template.keys);
+  }
+
+  /**
+   * 调用读取方法句柄.
+   * @param getter 类型为 {@code (Object)Object} 的方法句柄.
+   * @param bean Java Bean 对象.
+   * @return 属性值.
+   */
+  static Object get(MethodHandle getter, Object bean) {
+    try {
+      return (Object) getter.invokeExact(bean);
+    } catch (RuntimeException | Error e) {
+      throw e;
+    } catch (Throwable e) {
+      throw new UndeclaredThrowableException(e);
+    }
+  }
+
+  /**
+   * 查找类型的全部读取方法.
+   * @param type Java Bean 的类型.
+   * @return 键名到方法句柄的映射表.
+   */
+  private static Map<String, MethodHandle> findAccessors(Class<?> type) {
+    HashMap<String, MethodHandle> accessors = new HashMap<>();
+    HashMap<String, Integer> priorities = new HashMap<>();
+    for (Method method : type.getMethods()) {
+      if (Modifier.isStatic(method.getModifiers()) || method.getParameterCount() != 0
+          || method.getReturnType() == void.class || method.getDeclaringClass() == Object.class) {
+        continue;
+      }
+      String name = method.getName();
+      String key;
+      int priority;
+      if (name.length() > 3 && name.startsWith("get")) {
+        key = decapitalize(name.substring(3));
+        priority = 0;
+      } else if (name.length() > 2 && name.startsWith("is") && method.getReturnType() == boolean.class) {
+        key = decapitalize(name.substring(2));
+        priority = 1;
+      } else if (hasField(type, name, method.getReturnType())) {
+        // record 风格的访问方法
+        key = name;
+        priority = 2;
+      } else {
+        continue;
+      }
+      addAccessor(accessors, priorities, key, priority, method);
+    }
+    for (Field field : type.getFields()) {
+      if (!Modifier.isStatic(field.getModifiers())) {
+        addAccessor(accessors, priorities, field.getName(), 3, field);
+      }
+    }
+    return accessors;
+  }
+
+  /**
+   * 判断类型或其父类是否声明了指定名称和类型的实例字段.
+   * @param type Java Bean 的类型.
+   * @param name 字段名.
+   * @param fieldType 字段类型.
+   * @return 是否声明了该字段.
+   */
+  private static boolean hasField(Class<?> type, String name, Class<?> fieldType) {
+    for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+      for (Field field : c.getDeclaredFields()) {
+        if (field.getName().equals(name) && field.getType() == fieldType
+            && !Modifier.isStatic(field.getModifiers())) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * 按 Java Bean 规范将属性名的首字母转为小写，前两个字母均为大写时不转换.
+   * @param name 去掉前缀的方法名.
+   * @return 属性名.
+   */
+  private static String decapitalize(String name) {
+    if (name.length() > 1 && Character.isUpperCase(name.charAt(1)) && Character.isUpperCase(name.charAt(0))) {
+      return name;
+    }
+    return Character.toLowerCase(name.charAt(0)) + name.substring(1);
+  }
+
+  /**
+   * 记录优先级更高的读取方法.
+   * @param accessors 键名到方法句柄的映射表.
+   * @param priorities 键名到已记录的读取方法优先级的映射表，数值越小越优先.
+   * @param key 键名.
+   * @param priority 读取方法的优先级.
+   * @param member 读取方法或字段.
+   */
+  private static void addAccessor(HashMap<String, MethodHandle> accessors, HashMap<String, Integer> priorities,
+      String key, int priority, AccessibleObject member) {
+    Integer existing = priorities.get(key);
+    if (existing != null && existing <= priority) {
+      return;
+    }
+    MethodHandle getter = unreflect(member);
+    if (getter != null) {
+      accessors.put(key, getter.asType(MethodType.methodType(Object.class, Object.class)));
+      priorities.put(key, priority);
+    }
+  }
+
+  /**
+   * 将读取方法或字段转换为方法句柄，非公共类的成员会先取消访问检查.
+   * @param member 读取方法或字段.
+   * @return 方法句柄，无法访问时返回 {@code null}.
+   */
+  private static MethodHandle unreflect(AccessibleObject member) {
+    MethodHandles.Lookup lookup = MethodHandles.lookup();
+    for (int attempt = 0; attempt < 2; ++attempt) {
+      try {
+        if (member instanceof Method) {
+          return lookup.unreflect((Method) member);
+        }
+        return lookup.unreflectGetter((Field) member);
+      } catch (IllegalAccessException e) {
+        try {
+          member.setAccessible(true);
+        } catch (RuntimeException denied) {
+          return null;
+        }
+      }
+    }
+    return null;
+  }
+
+  /**
+   * 从 Java Bean 查找值的值来源.
+   */
+  static final class BeanResolver implements SlotResolver {
+    /**
+     * Java Bean 对象.
+     */
+    final Object bean;
+
+    BeanResolver(Object bean) {
+      this.bean = bean;
+    }
+
+    @Override
+    public Object resolve(String key) {
+      MethodHandle getter = ACCESSORS.get(bean.getClass()).named.get(key);
+      return getter == null ? null : get(getter, bean);
+    }
+  }
+
+  /**
+   * 一个类型的读取方法句柄.<br>
+   * 按编译结果的键名数组（按引用）缓存按键名位置排列的方法句柄，缓存表按引用的哈希值直接寻址，冲突时覆盖旧记录，
+   * 大小固定，因此不会无限引用格式化过该类型的编译结果.
+   */
+  static final class BeanAccessors {
+    /**
+     * 键名到方法句柄的映射表.
+     */
+    final Map<String, MethodHandle> named;
+    /**
+     * 按键名数组缓存的方法句柄.
+     */
+    private final AtomicReferenceArray<TemplateGetters> templates = new AtomicReferenceArray<>(TEMPLATE_SLOTS);
+
+    BeanAccessors(Map<String, MethodHandle> named) {
+      this.named = named;
+    }
+
+    /**
+     * 获取键名数组中各键名的读取方法句柄，未缓存时查找并放入缓存.
+     * @param keys 编译结果中按位置排列的键名.
+     * @return 按键名位置排列的方法句柄，没有对应属性的键名为 {@code null}.
+     */
+    MethodHandle[] getters(String[] keys) {
+      int index = System.identityHashCode(keys) & (TEMPLATE_SLOTS - 1);
+      TemplateGetters cached = templates.get(index);
+      if (cached != null && cached.keys == keys) {
+        return cached.getters;
+      }
+      MethodHandle[] getters = new MethodHandle[keys.length];
+      for (int k = 0; k < getters.length; ++k) {
+        getters[k] = named.get(keys[k]);
+      }
+      templates.set(index, new TemplateGetters(keys, getters));
+      return getters;
+    }
+  }
+
+  /**
+   * 一个编译结果的键名数组对应的方法句柄.
+   */
+  private static final class TemplateGetters {
+    /**
+     * 编译结果中按位置排列的键名.
+     */
+    final String[] keys;
+    /**
+     * 按键名位置排列的方法句柄.
+     */
+    final MethodHandle[] getters;
+
+    TemplateGetters(String[] keys, MethodHandle[] getters) {
+      this.keys = keys;
+      this.getters = getters;
+    }
+  }
+}
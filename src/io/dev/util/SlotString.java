@@ -1,8 +1,33 @@
 package io.dev.util;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.UndeclaredThrowableException;
 import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.CoderResult;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * 模板字符串格式化器.<br>
@@ -17,36 +42,104 @@ public class SlotString {
   /**
    * 文本类型的字符串片段.
    */
-  private static final int TEXT_TYPE = 0;
+  static final int TEXT_TYPE = 0;
   /**
    * 键名类型的字符串片段.
    */
-  private static final int KEY_TYPE = 1;
+  static final int KEY_TYPE = 1;
+  /**
+   * 并行格式化的默认阈值（字符串片段数量）.
+   */
+  public static final int DEFAULT_PARALLEL_THRESHOLD = 8192;
+  /**
+   * 并行格式化时每个分块最少的字符串片段数量.
+   */
+  private static final int MIN_PARALLEL_CHUNK = 1024;
+  /**
+   * 解析模板字符串时每个分块的字符数，流式格式化时每次读取的字符数.
+   */
+  private static final int STREAM_CHUNK = 8192;
+  /**
+   * 流式格式化时键名的最大长度（按模板中的原始字符计算，包括转义符）.<br>
+   * 超过时开始键名的 { （及其 # $ 前缀）和已读取的键名原文按普通文字输出并继续解析，
+   * 使未闭合的 { 不会让键名缓冲区随模板字符串无限增长；按模板字符串格式化或编译时不限制.
+   */
+  static final int MAX_KEY_LENGTH = 8192;
+  /**
+   * 流式格式化内存映射文件时每次映射的最大字节数.
+   */
+  private static final long MAP_REGION = 1L << 26;
+  /**
+   * 各格式化器类型是否重写了 {@code asString} 方法.
+   */
+  private static final ClassValue<Boolean> OVERRIDES_AS_STRING = new ClassValue<Boolean>() {
+
+    @Override
+    protected Boolean computeValue(Class<?> type) {
+      for (Class<?> c = type; c != SlotString.class; c = c.getSuperclass()) {
+        try {
+          c.getDeclaredMethod("asString", Object.class, boolean.class);
+          return true;
+        } catch (NoSuchMethodException e) {
+          // 继续检查父类
+        }
+      }
+      return false;
+    }
+  };
+  /**
+   * 全局运行监听器（未设置时为 {@code null}）.
+   */
+  private static volatile SlotStringListener listener;
 
   /**
    * 多线程支持.
    */
   private final boolean multiThread;
   /**
-   * 编译结果缓冲区.
+   * {@code qformat} 方法使用的编译结果缓存（未开启时为 {@code null}）.
+   */
+  private final SlotStringCache cache;
+  /**
+   * 编译结果，只在创建格式化器时（包括其中调用的 {@code compile} 方法）赋值.
+   */
+  private Template template;
+  /**
+   * 按编译结果生成的专用格式化方法句柄（未生成时为 {@code null}）.
+   */
+  private MethodHandle formatter;
+  /**
+   * 多线程时 {@code qformat} 方法使用的缓冲区池（未开启时为 {@code null}）.
    */
-  private ArrayList<Object> assemblies;
+  private final SlotStringBufferPool pool;
   /**
-   * 编译的字符串片段.
+   * 共用的结果缓冲区和键名缓冲区（仅非多线程可用）.
    */
-  private String[] parts;
+  private final Buffers buffers;
   /**
-   * 编译的字符串片段的类型.
+   * 是否使用转换器直接追加值（未重写 {@code asString} 方法时可用）.
    */
-  private int[] types;
+  private final boolean directConversion;
   /**
-   * 共用的结果缓冲区（仅非多线程可用）.
+   * 执行值转换的格式化器，重写了转换规则的格式化器的副本为原格式化器，其余为自身.
    */
-  private StringBuilder res;
+  private final SlotString conversion;
   /**
-   * 共用的键名缓冲区（仅非多线程可用）.
+   * 全部占位符默认的转义方式（未设置时为 {@code null}）.
    */
-  private StringBuilder key;
+  private final SlotEscape escape;
+  /**
+   * 按键名设置的转义方式（未设置时为 {@code null}），不可修改.
+   */
+  private final Map<String, SlotEscape> keyEscapes;
+  /**
+   * 编译结果中按位置排列的各键名的转义方式（不转义时为 {@code null}）.
+   */
+  private final SlotEscape[] escapes;
+  /**
+   * {@code qformat} 方法使用的键名表（首次使用时创建）.
+   */
+  private volatile KeyTable keyTable;
 
   /**
    * 创建不支持多线程和编译模板字符串的格式化器.<br>
@@ -64,11 +157,62 @@ public class SlotString {
    * @param multiThread 是否开启多线程支持.
    */
   public SlotString(boolean multiThread) {
+    this(multiThread, null);
+  }
+
+  /**
+   * 创建使用编译结果缓存的格式化器，可指定是否开启多线程支持.<br>
+   * 适用于反复格式化有限数量的不同模板字符串.<br>
+   * {@code qformat} 方法会先在缓存中查找模板字符串的编译结果，未命中时编译并放入缓存，再按编译结果格式化.<br>
+   * 同一个缓存可被多个格式化器共用.
+   * @param multiThread 是否开启多线程支持.
+   * @param cache 编译结果缓存，为 {@code null} 时不使用缓存.
+   */
+  public SlotString(boolean multiThread, SlotStringCache cache) {
+    this(multiThread, cache, null);
+  }
+
+  /**
+   * 创建从缓冲区池复用缓冲区的多线程格式化器.<br>
+   * 适用于多线程频繁格式化不同的模板字符串.<br>
+   * {@code qformat} 方法每次调用从缓冲区池取出缓冲区，调用结束后归还，同一个缓冲区池可被多个格式化器共用.
+   * @param pool 缓冲区池.
+   */
+  public SlotString(SlotStringBufferPool pool) {
+    this(true, null, pool);
+  }
+
+  private SlotString(boolean multiThread, SlotStringCache cache, SlotStringBufferPool pool) {
     this.multiThread = multiThread;
-    if (!multiThread) {
-      res = new StringBuilder();
-      key = new StringBuilder();
-    }
+    this.cache = cache;
+    this.pool = pool;
+    this.buffers = multiThread ? null : new Buffers();
+    this.directConversion = !OVERRIDES_AS_STRING.get(getClass());
+    this.conversion = this;
+    this.escape = null;
+    this.keyEscapes = null;
+    this.escapes = null;
+  }
+
+  /**
+   * 复制格式化器的设置，使用指定的编译结果和转义方式，副本使用自己的缓冲区，不使用专用格式化方法.<br>
+   * 副本总是 {@code SlotString} 类型，原格式化器重写了转换规则时由原格式化器执行副本的值转换.
+   * @param source 原格式化器.
+   * @param template 副本的编译结果.
+   * @param escape 副本全部占位符默认的转义方式.
+   * @param keyEscapes 副本按键名设置的转义方式，不可修改.
+   */
+  private SlotString(SlotString source, Template template, SlotEscape escape, Map<String, SlotEscape> keyEscapes) {
+    this.multiThread = source.multiThread;
+    this.cache = source.cache;
+    this.pool = source.pool;
+    this.buffers = multiThread ? null : new Buffers();
+    this.directConversion = source.directConversion;
+    this.conversion = source.conversion.getClass() == SlotString.class ? this : source.conversion;
+    this.template = template;
+    this.escape = escape;
+    this.keyEscapes = keyEscapes;
+    this.escapes = resolveEscapes(template);
   }
   
   /**
@@ -82,6 +226,64 @@ public class SlotString {
     compile(pattern);
   }
 
+  /**
+   * 创建支持多线程和编译模板符串的格式化器，可指定是否生成专用的格式化方法.<br>
+   * 开启生成时，编译结果会被展开为一条依次追加各字符串片段的方法句柄链，文本片段作为常量绑定在句柄中，
+   * {@code format} 方法直接调用该句柄，不再逐个判断字符串片段的类型，适用于调用频率极高的模板字符串.<br>
+   * 字符串片段过多时不生成，{@code format} 方法仍按编译结果格式化，两者的输出完全一致.
+   * @param pattern 模板符串.
+   * @param generate 是否生成专用的格式化方法.
+   */
+  public SlotString(String pattern, boolean generate) {
+    this(pattern);
+    if (generate && template != null) {
+      formatter = Generator.generate(this, template);
+    }
+  }
+
+  /**
+   * 创建支持多线程和编译模板符串的格式化器，编译结果的文本存放在共用的文本区中.<br>
+   * 编译结果不保留模板字符串和各文本片段的 {@code String} 对象，只保留文本片段在文本区中的位置，
+   * 不同模板字符串中相同的文本片段在文本区中只存放一份，适用于同时持有大量编译的模板字符串的场景.<br>
+   * 不支持生成专用的格式化方法，运行监听器收到的模板字符串为 {@code null}.
+   * @param pattern 模板符串.
+   * @param arena 存放文本片段的文本区，为 {@code null} 时与 {@link #SlotString(String)} 相同.
+   */
+  public SlotString(String pattern, SlotStringArena arena) {
+    this(pattern);
+    if (arena != null && template != null) {
+      template = arena.compact(template);
+    }
+  }
+
+  /**
+   * 创建使用已有编译结果的格式化器，支持多线程.
+   * @param template 编译结果.
+   */
+  SlotString(Template template) {
+    this(true);
+    this.template = template;
+  }
+
+  /**
+   * 创建使用已编译模板的支持多线程的格式化器.<br>
+   * 多个格式化器可共用同一个编译的模板，不再重复编译，格式化器可重写转换规则或设置转义方式.
+   * @param template 编译的模板.
+   */
+  public SlotString(CompiledTemplate template) {
+    this(template.template);
+  }
+
+  /**
+   * 获取编译结果的不可变形式，可保存在 {@code static final} 字段中供多个线程共用.<br>
+   * 未先编译模板字符串调用该方法会返回 {@code null}.
+   * @return 编译的模板.
+   */
+  public CompiledTemplate compiled() {
+    Template template = this.template;
+    return template == null ? null : new CompiledTemplate(template);
+  }
+
   /**
    * 编译模板符串并存储编译结果.<br>
    * 用于加速 {@code format} 方法格式化.
@@ -91,22 +293,59 @@ public class SlotString {
     if (pattern == null) {
       return;
     }
+    template = assemble(pattern);
+  }
+
+  /**
+   * 编译模板字符串并返回编译结果.
+   * @param pattern 模板符串.
+   * @return 编译结果.
+   */
+  private Template assemble(String pattern) {
+    SlotStringListener l = listener;
+    long start = l != null ? System.nanoTime() : 0L;
     StringBuilder res = new StringBuilder();
     StringBuilder key = new StringBuilder();
-    assemblies = new ArrayList<>();
-    parse(pattern, res, key, null);
+    ArrayList<Object> assemblies = new ArrayList<>();
+    try {
+      parse(pattern, res, key, null, assemblies, null);
+    } catch (IOException e) {
+      // 编译时只写入结果缓冲区，不会发生
+      throw new UncheckedIOException(e);
+    }
     if (res.length() != 0) {
       assemblies.add(TEXT_TYPE);
       assemblies.add(res.toString());
     }
+    Template template = toTemplate(pattern, assemblies);
+    if (l != null) {
+      l.onCompile(pattern, template.size(), System.nanoTime() - start);
+    }
+    return template;
+  }
+
+  /**
+   * 将编译结果缓冲区转换为编译结果.
+   * @param pattern 模板字符串.
+   * @param assemblies 编译结果缓冲区.
+   * @return 编译结果.
+   */
+  private static Template toTemplate(String pattern, ArrayList<Object> assemblies) {
     int size = assemblies.size() / 2;
-    types = new int[size];
-    parts = new String[size];
+    int[] types = new int[size];
+    String[] parts = new String[size];
     for (int i = 0, p = 0; i < assemblies.size(); ++p) {
       types[p] = (Integer) assemblies.get(i++);
       parts[p] = (String) assemblies.get(i++);
     }
-    assemblies = null;
+    return new Template(pattern, parts, types);
+  }
+  
+  /**
+   * @return 编译结果，未先编译模板字符串时为 {@code null}.
+   */
+  Template template() {
+    return template;
   }
   
   /**
@@ -118,157 +357,1911 @@ public class SlotString {
    * @return 输出字符串.
    */
   public String format(Map<String, Object> dest) {
-    if (parts == null || types == null) {
+    if (template == null) {
       return null;
     }
-    StringBuilder res = new StringBuilder();
-    for (int i = 0; i < types.length; ++i) {
-      int type = types[i];
-      if (type == TEXT_TYPE) {
-        res.append(parts[i]);
-      } else if (type == KEY_TYPE) {
-        Object val = null;
-        if (dest != null) {
-          val = dest.get(parts[i]);
-        }
-        res.append(asString(val, false));
-      }
+    SlotStringListener l = listener;
+    if (l == null) {
+      return formatCompiled(dest);
     }
-    return res.toString();
+    long start = System.nanoTime();
+    String res = formatCompiled(dest);
+    l.onRender(template.pattern, res.length(), System.nanoTime() - start);
+    return res;
   }
-  
+
   /**
-   * 不编译直接格式化传入的模板字符串.<br>
-   * 模板字符串中的占位符会根据其名称被替换为替换表中对应的值.
+   * 按值来源格式化编译的模板字符串.<br>
+   * 每个不同的键名只从值来源查找一次，{@link SlotResolvers#bean} 创建的值来源按键名位置直接调用缓存的读取方法.<br>
+   * 未先编译模板字符串调用该方法会返回 {@code null}.
    * 
-   * @param pattern 模板字符串.
-   * @param dest 占位符替换表.
+   * @param resolver 占位符的值来源，为 {@code null} 时全部按 {@code null} 值处理.
    * @return 输出字符串.
    */
-  public String qformat(String pattern, Map<String, Object> dest) {
-    if (pattern == null || pattern.isEmpty()) {
-      return pattern;
+  public String format(SlotResolver resolver) {
+    Template template = this.template;
+    if (template == null) {
+      return null;
     }
-    StringBuilder res;
-    StringBuilder key;
-    if (multiThread) {
-      res = new StringBuilder();
-      key = new StringBuilder();
-    } else {
-      res = this.res;
-      key = this.key;
-      res.setLength(0);
-      key.setLength(0);
+    return format(template, resolver);
+  }
+
+  /**
+   * 按值来源格式化指定的编译结果.
+   * @param template 编译结果.
+   * @param resolver 占位符的值来源.
+   * @return 输出字符串.
+   */
+  String format(Template template, SlotResolver resolver) {
+    return format(template, resolver, conversion, escapes(template));
+  }
+
+  /**
+   * 按值来源、转换规则和转义方式格式化指定的编译结果，不依赖任何格式化器的状态.
+   * @param template 编译结果.
+   * @param resolver 占位符的值来源.
+   * @param conversion 执行值转换的格式化器，为 {@code null} 时按默认的转换规则.
+   * @param escapes 按位置排列的各键名的转义方式，全部不转义时为 {@code null}.
+   * @return 输出字符串.
+   */
+  static String format(Template template, SlotResolver resolver, SlotString conversion, SlotEscape[] escapes) {
+    SlotStringListener l = listener;
+    if (l == null) {
+      return render(template, resolver, conversion, escapes);
     }
-    parse(pattern, res, key, dest);
-    return res.toString();
+    long start = System.nanoTime();
+    String res = render(template, resolver, conversion, escapes);
+    l.onRender(template.pattern, res.length(), System.nanoTime() - start);
+    return res;
   }
-  
+
   /**
-   * 将替换表的值转化为字符串.<br>
-   * 重写该方法，并在新实现开头调用 {@code super.asString(val, true)} 可实现在原有转换规则的基础上扩展.<br>
-   * 该方法 {@code preventDefault} 为 {@code true} 时，遇到非 {@code null} 和 {@code BigDecimal} 类的 {@code val} 会返回 {@code null}.
-   *  
-   * @param val 替换表的值
-   * @param preventDefault 是否阻止默认的调用 {@code toString()} 行为.
-   * @return 转换后的字符串.
+   * 异步按值来源格式化编译的模板字符串.<br>
+   * 与 {@link #formatAsync(SlotResolver, Executor)} 相同，运行环境支持虚拟线程（Java 21 及以上）时每个键名在一个新的虚拟线程中查找，
+   * 否则使用专用的守护线程缓存线程池，不占用公共的 {@code ForkJoinPool}.
+   * 
+   * @param resolver 占位符的值来源，为 {@code null} 时全部按 {@code null} 值处理.
+   * @return 输出字符串的异步结果，未先编译模板字符串时结果为 {@code null}.
    */
-  protected String asString(Object val, boolean preventDefault) {
-    if (val == null) {
-      return "";
-    } else if (val instanceof BigDecimal) {
-      return ((BigDecimal) val).toPlainString();
+  public CompletableFuture<String> formatAsync(SlotResolver resolver) {
+    return formatAsync(resolver, AsyncExecutor.DEFAULT);
+  }
+
+  /**
+   * 异步按值来源格式化编译的模板字符串.<br>
+   * 每个不同的键名作为一个任务提交到执行器并发查找，全部查找完成后在完成最后一个查找的线程中组装输出字符串，
+   * 适用于值来源较慢（如远程配置或数据库查询）的场景，总耗时接近最慢的一次查找而不是全部查找耗时之和.<br>
+   * 任一查找抛出异常时，返回的异步结果以该异常异常完成.
+   * 
+   * @param resolver 占位符的值来源，为 {@code null} 时全部按 {@code null} 值处理，必须线程安全.
+   * @param executor 执行查找的执行器.
+   * @return 输出字符串的异步结果，未先编译模板字符串时结果为 {@code null}.
+   */
+  public CompletableFuture<String> formatAsync(SlotResolver resolver, Executor executor) {
+    Template template = this.template;
+    if (template == null) {
+      return CompletableFuture.completedFuture(null);
     }
-    if (preventDefault) {
-      return null;
-    } else {
-      return val.toString();
+    SlotStringListener l = listener;
+    long start = l != null ? System.nanoTime() : 0L;
+    String[] keys = template.keys;
+    Object[] values = new Object[keys.length];
+    CompletableFuture<?>[] lookups = new CompletableFuture<?>[resolver != null ? keys.length : 0];
+    for (int k = 0; k < lookups.length; ++k) {
+      int slot = k;
+      lookups[k] = CompletableFuture.runAsync(() -> values[slot] = resolver.resolve(keys[slot]), executor);
     }
+    SlotEscape[] escapes = escapes(template);
+    return CompletableFuture.allOf(lookups).thenApply(v -> {
+      String res = write(template, values, conversion, escapes);
+      if (l != null) {
+        l.onRender(template.pattern, res.length(), System.nanoTime() - start);
+      }
+      return res;
+    });
   }
-  
+
   /**
-   * {@code compile} 和 {@code qformat} 方法的公共解析部分.
-   * 
-   * @param pattern 模板字符串.
-   * @param res 使用的结果缓冲区.
-   * @param key 使用的键名缓冲区.
+   * 按专用格式化方法或编译结果格式化.
    * @param dest 占位符替换表.
+   * @return 输出字符串.
    */
-  private void parse(String pattern, StringBuilder res, StringBuilder key, Map<String, Object> dest) {
-    int state = 0;
-    char prev = 0;
-    for (int i = 0; i < pattern.length(); ++i) {
-      char c = pattern.charAt(i);
-      if (state == 0) {
-        if (c == '#' || c == '$') {
-          state = 1;
-          prev = c;
-        } else if (c == '{') {
-          state = 2;
-          key.setLength(0);
-        } else if (c == '\\') {
-          state = 3;
-        } else {
-          res.append(c);
-        }
-      } else if (state == 1) {
-        if (c == '{') {
-          state = 2;
-          key.setLength(0);
-        } else {
-          state = 0;
-          res.append(prev);
-          --i; // re-parse
-        }
-      } else if (state == 2) {
-        if (c == '}') {
-          state = 0;
-          if (assemblies != null) {
-            parseCompile(res, key);
-          } else {
-            parseQformat(res, key, dest);
-          }
-        } else if (c == '\\') {
-          state = 4;
-        } else {
-          key.append(c);
+  private String formatCompiled(Map<String, Object> dest) {
+    if (formatter != null) {
+      try {
+        return (String) formatter.invokeExact(dest);
+      } catch (RuntimeException | Error e) {
+        throw e;
+      } catch (Throwable e) {
+        throw new UndeclaredThrowableException(e);
+      }
+    }
+    return render(template, resolver(dest), conversion, escapes);
+  }
+
+  /**
+   * 按编译结果格式化.<br>
+   * 每个不同的键名只查找和转换一次，重复出现的占位符复用转换结果.
+   * @param template 编译结果.
+   * @param resolver 占位符的值来源.
+   * @param conversion 执行值转换的格式化器，为 {@code null} 时按默认的转换规则.
+   * @param escapes 按位置排列的各键名的转义方式，全部不转义时为 {@code null}.
+   * @return 输出字符串.
+   */
+  private static String render(Template template, SlotResolver resolver, SlotString conversion,
+      SlotEscape[] escapes) {
+    return write(template, resolve(template, resolver), conversion, escapes);
+  }
+
+  /**
+   * 从值来源查找编译结果中各键名的值.
+   * @param template 编译结果.
+   * @param resolver 占位符的值来源.
+   * @return 按位置排列的各键名的值.
+   */
+  static Object[] resolve(Template template, SlotResolver resolver) {
+    String[] keys = template.keys;
+    Object[] values = new Object[keys.length];
+    if (resolver instanceof SlotResolvers.BeanResolver) {
+      Object bean = ((SlotResolvers.BeanResolver) resolver).bean;
+      MethodHandle[] getters = SlotResolvers.accessors(template, bean.getClass());
+      for (int k = 0; k < keys.length; ++k) {
+        if (getters[k] != null) {
+          values[k] = SlotResolvers.get(getters[k], bean);
         }
-      } else if (state == 3) {
-        state = 0;
-        res.append(c);
-      } else if (state == 4) {
-        state = 2;
-        key.append(c);
+      }
+    } else if (resolver != null) {
+      for (int k = 0; k < keys.length; ++k) {
+        values[k] = resolver.resolve(keys[k]);
       }
     }
+    return values;
   }
-  
+
   /**
-   * {@code qformat} 方法的替换表值处理逻辑.
-   * @param res 使用的结果缓冲区.
-   * @param key 使用的键名缓冲区.
+   * 将替换表转换为值来源.
    * @param dest 占位符替换表.
+   * @return 值来源，替换表为 {@code null} 时返回 {@code null}.
    */
-  private void parseQformat(StringBuilder res, StringBuilder key, Map<String, Object> dest) {
-    Object val = null;
-    if (dest != null) {
-      val = dest.get(key.toString());
+  private static SlotResolver resolver(Map<String, Object> dest) {
+    return dest == null ? null : dest::get;
+  }
+
+  /**
+   * 将编译结果和各键名对应的值写入结果缓冲区.<br>
+   * 先为每个键名的值选择一次转换器并按出现次数统计输出长度，再按该长度一次性分配结果缓冲区写入，避免缓冲区扩容复制.<br>
+   * 没有可用转换器的值会先使用 {@code asString} 方法转换为字符串，每个键名只转换一次.
+   * @param template 编译结果.
+   * @param values 按位置排列的各键名的值，会被改写为转换后的值.
+   * @param conversion 执行值转换的格式化器，为 {@code null} 时按默认的转换规则.
+   * @param escapes 按位置排列的各键名的转义方式，全部不转义时为 {@code null}.
+   * @return 输出字符串.
+   */
+  private static String write(Template template, Object[] values, SlotString conversion, SlotEscape[] escapes) {
+    SlotConverter[] converters = new SlotConverter[values.length];
+    StringBuilder res = new StringBuilder(convert(template, values, converters, null, conversion, escapes));
+    writeSegments(res, template, values, converters, 0, template.size());
+    return res.toString();
+  }
+
+  /**
+   * 为每个键名的值选择一次转换器，并按出现次数统计输出长度.<br>
+   * 没有可用转换器的值会先使用 {@code asString} 方法转换为字符串，每个键名只转换一次.
+   * @param template 编译结果.
+   * @param values 按位置排列的各键名的值，会被改写为转换后的值.
+   * @param converters 按位置写入的各键名的转换器.
+   * @param lengths 按位置写入的各键名的转换结果长度，不需要时为 {@code null}.
+   * @param conversion 执行值转换的格式化器，为 {@code null} 时按默认的转换规则.
+   * @param escapes 按位置排列的各键名的转义方式，全部不转义时为 {@code null}.
+   * @return 输出字符串的长度.
+   */
+  private static int convert(Template template, Object[] values, SlotConverter[] converters, int[] lengths,
+      SlotString conversion, SlotEscape[] escapes) {
+    SlotConverters registry = registry(conversion);
+    int[] counts = template.counts;
+    int length = template.literalLength;
+    for (int k = 0; k < values.length; ++k) {
+      Object val = values[k];
+      if (val == null) {
+        SlotStringListener l = listener;
+        if (l != null) {
+          l.onNullSlot(template.pattern, template.keys[k], counts[k]);
+        }
+      }
+      SlotConverter converter = registry != null ? registry.lookup(val) : null;
+      if (escapes != null && escapes[k] != null) {
+        values[k] = slotText(val, conversion);
+        converter = escapes[k].converter;
+      } else if (converter == null) {
+        String text = asString(val, conversion);
+        values[k] = text == null ? "null" : text;
+        converter = SlotConverters.STRING;
+      }
+      converters[k] = converter;
+      int slotLength = converter.length(values[k]);
+      if (lengths != null) {
+        lengths[k] = slotLength;
+      }
+      length += slotLength * counts[k];
     }
-    res.append(asString(val, false));
+    return length;
   }
-  
+
   /**
-   * {@code compile} 方法的解析结果记录逻辑.
-   * @param res 使用的结果缓冲区.
-   * @param key 使用的键名缓冲区.
+   * 按 {@code format} 方法的规则将一个键名的值转换为字符串.
+   * @param val 键名的值.
+   * @return 转换结果.
    */
-  private void parseCompile(StringBuilder res, StringBuilder key) {
-    if (res.length() != 0) {
-      assemblies.add(TEXT_TYPE);
-      assemblies.add(res.toString());
-      res.setLength(0);
+  String slotText(Object val) {
+    return slotText(val, conversion);
+  }
+
+  /**
+   * 按 {@code format} 方法的规则和指定的转换规则将一个键名的值转换为字符串.
+   * @param val 键名的值.
+   * @param conversion 执行值转换的格式化器，为 {@code null} 时按默认的转换规则.
+   * @return 转换结果.
+   */
+  private static String slotText(Object val, SlotString conversion) {
+    SlotConverters registry = registry(conversion);
+    SlotConverter converter = registry != null ? registry.lookup(val) : null;
+    if (converter == null) {
+      String text = asString(val, conversion);
+      return text == null ? "null" : text;
+    } else if (converter == SlotConverters.STRING) {
+      return (String) val;
+    }
+    StringBuilder res = new StringBuilder(converter.length(val));
+    converter.append(res, val);
+    return res.toString();
+  }
+
+  /**
+   * 按 {@code format} 方法的规则将编译结果中一个键名的值转换为字符串，并按该键名的转义方式转义.
+   * @param k 键名的位置.
+   * @param val 键名的值.
+   * @return 转换结果.
+   */
+  String slotText(int k, Object val) {
+    String text = slotText(val);
+    return escapes == null || escapes[k] == null ? text : escapes[k].escape(text);
+  }
+
+  /**
+   * 返回为全部占位符设置转义方式的新格式化器.<br>
+   * 值转换为字符串后在写入输出的同时转义，单独为键名设置的转义方式优先.<br>
+   * 新格式化器是当前格式化器的副本，{@code format}、{@code qformat} 和 {@code bind} 等方法均按设置转义，但不生成专用格式化方法.
+   * 
+   * @param escape 转义方式，为 {@code null} 时不转义.
+   * @return 新的格式化器.
+   */
+  public SlotString withEscape(SlotEscape escape) {
+    return new SlotString(this, template, escape, keyEscapes);
+  }
+
+  /**
+   * 返回为指定键名的占位符设置转义方式的新格式化器.<br>
+   * 新格式化器是当前格式化器的副本，不生成专用格式化方法.
+   * 
+   * @param key 键名.
+   * @param escape 转义方式，为 {@code null} 时该键名不转义.
+   * @return 新的格式化器.
+   * @see #withEscape(SlotEscape)
+   */
+  public SlotString withEscape(String key, SlotEscape escape) {
+    Map<String, SlotEscape> byKey = keyEscapes == null ? new HashMap<>() : new HashMap<>(keyEscapes);
+    byKey.put(key, escape);
+    return new SlotString(this, template, this.escape, Collections.unmodifiableMap(byKey));
+  }
+
+  /**
+   * 获取键名的转义方式.
+   * @param key 键名，为 {@code null} 时返回全部占位符默认的转义方式.
+   * @return 转义方式，不转义时为 {@code null}.
+   */
+  SlotEscape escapeOf(String key) {
+    if (keyEscapes != null && key != null && keyEscapes.containsKey(key)) {
+      return keyEscapes.get(key);
+    }
+    return escape;
+  }
+
+  /**
+   * 获取编译结果中按位置排列的各键名的转义方式.
+   * @param template 编译结果.
+   * @return 各键名的转义方式，全部不转义时为 {@code null}.
+   */
+  private SlotEscape[] escapes(Template template) {
+    if (escape == null && keyEscapes == null) {
+      return null;
+    }
+    return template == this.template ? escapes : resolveEscapes(template);
+  }
+
+  /**
+   * 按键名查找编译结果中各键名的转义方式.
+   * @param template 编译结果.
+   * @return 各键名的转义方式，全部不转义或未编译时为 {@code null}.
+   */
+  private SlotEscape[] resolveEscapes(Template template) {
+    if (template == null || (escape == null && keyEscapes == null)) {
+      return null;
+    }
+    SlotEscape[] escapes = new SlotEscape[template.keys.length];
+    boolean any = false;
+    for (int k = 0; k < escapes.length; ++k) {
+      escapes[k] = escapeOf(template.keys[k]);
+      any |= escapes[k] != null;
+    }
+    return any ? escapes : null;
+  }
+
+  /**
+   * 创建按 {@code equals} 方法检测值变化的增量格式化会话.
+   * @return 增量格式化会话，未先编译模板字符串时返回 {@code null}.
+   * @see #session(boolean)
+   */
+  public SlotStringSession session() {
+    return session(false);
+  }
+
+  /**
+   * 创建增量格式化会话.<br>
+   * 会话记录上次格式化时各键名的值、转换结果和输出字符串，再次格式化时只转换值发生变化的键名，
+   * 其余部分从上次的输出字符串整段复制；适用于同一个替换表多次修改少量键名后反复格式化的场景.<br>
+   * 会话不是线程安全的.
+   * 
+   * @param identity 为 {@code true} 时按引用（{@code ==}）检测值变化，否则按 {@code equals} 方法检测.
+   * @return 增量格式化会话，未先编译模板字符串时返回 {@code null}.
+   */
+  public SlotStringSession session(boolean identity) {
+    if (template == null) {
+      return null;
+    }
+    return new SlotStringSession(this, template, identity);
+  }
+
+  /**
+   * 将编译结果中指定范围的字符串片段写入结果缓冲区.
+   * @param res 结果缓冲区.
+   * @param template 编译结果.
+   * @param values 按位置排列的各键名转换后的值.
+   * @param converters 按位置排列的各键名的转换器.
+   * @param from 第一个字符串片段的下标.
+   * @param to 最后一个字符串片段之后的下标.
+   */
+  private static void writeSegments(StringBuilder res, Template template, Object[] values, SlotConverter[] converters,
+      int from, int to) {
+    for (int i = from; i < to; ++i) {
+      int slot = template.slot(i);
+      if (slot < 0) {
+        template.appendText(res, i);
+      } else {
+        converters[slot].append(res, values[slot]);
+      }
+    }
+  }
+
+  /**
+   * 使用公共的 {@code ForkJoinPool} 并行格式化编译的模板字符串.<br>
+   * 与 {@link #formatParallel(SlotResolver, ForkJoinPool, int)} 相同，阈值为 {@link #DEFAULT_PARALLEL_THRESHOLD}.
+   * 
+   * @param dest 占位符替换表.
+   * @return 输出字符串.
+   */
+  public String formatParallel(Map<String, Object> dest) {
+    return formatParallel(resolver(dest), ForkJoinPool.commonPool(), DEFAULT_PARALLEL_THRESHOLD);
+  }
+
+  /**
+   * 并行格式化编译的模板字符串.<br>
+   * 适用于字符串片段数量很多的模板（如包含上万条语句的脚本），每个不同的键名仍只查找和转换一次，
+   * 字符串片段按顺序分为多个分块，在 {@code pool} 中并行写入各自按精确长度分配的缓冲区，最后按输出长度一次性分配结果缓冲区拼接.<br>
+   * 字符串片段数量小于 {@code threshold} 时不拆分，直接在调用线程中格式化；输出字符串与 {@code format} 方法的结果完全相同，
+   * 但不使用专用格式化方法.<br>
+   * 未先编译模板字符串调用该方法会返回 {@code null}.
+   * 
+   * @param resolver 占位符的值来源，为 {@code null} 时全部按 {@code null} 值处理.
+   * @param pool 执行格式化的线程池.
+   * @param threshold 并行格式化的最少字符串片段数量.
+   * @return 输出字符串.
+   */
+  public String formatParallel(SlotResolver resolver, ForkJoinPool pool, int threshold) {
+    if (template == null) {
+      return null;
+    }
+    SlotStringListener l = listener;
+    long start = l != null ? System.nanoTime() : 0L;
+    Template template = this.template;
+    Object[] values = resolve(template, resolver);
+    int size = template.size();
+    String res;
+    if (size < threshold || size < MIN_PARALLEL_CHUNK * 2) {
+      res = write(template, values, conversion, escapes);
+    } else {
+      SlotConverter[] converters = new SlotConverter[values.length];
+      int[] lengths = new int[values.length];
+      int length = convert(template, values, converters, lengths, conversion, escapes);
+      // 每个线程约 4 个分块，便于工作窃取平衡负载
+      int chunks = pool.getParallelism() * 4;
+      int chunkSize = Math.max(MIN_PARALLEL_CHUNK, (size + chunks - 1) / chunks);
+      StringBuilder[] buffers = new StringBuilder[(size + chunkSize - 1) / chunkSize];
+      pool.invoke(new RenderTask(template, values, converters, lengths, buffers, chunkSize, 0, buffers.length));
+      StringBuilder joined = new StringBuilder(length);
+      for (StringBuilder chunk : buffers) {
+        joined.append(chunk);
+      }
+      res = joined.toString();
+    }
+    if (l != null) {
+      l.onRender(template.pattern, res.length(), System.nanoTime() - start);
+    }
+    return res;
+  }
+
+  /**
+   * 格式化编译的模板字符串，并将结果直接写入输出目标.<br>
+   * 文本片段和替换表的值依次写入输出目标，不构建完整的输出字符串，适用于 {@code Writer}、网络或文件等输出.<br>
+   * 未先编译模板字符串调用该方法不会写入任何内容.
+   * 
+   * @param out 输出目标.
+   * @param dest 占位符替换表.
+   * @throws IOException 写入输出目标失败.
+   */
+  public void formatTo(Appendable out, Map<String, Object> dest) throws IOException {
+    Template template = this.template;
+    if (template == null) {
+      return;
+    }
+    formatTo(template, out, resolver(dest));
+  }
+
+  /**
+   * 按值来源格式化指定的编译结果，并将结果直接写入输出目标.
+   * @param template 编译结果.
+   * @param out 输出目标.
+   * @param resolver 占位符的值来源.
+   * @throws IOException 写入输出目标失败.
+   */
+  void formatTo(Template template, Appendable out, SlotResolver resolver) throws IOException {
+    formatTo(template, out, resolver, conversion, escapes(template));
+  }
+
+  /**
+   * 按值来源、转换规则和转义方式格式化指定的编译结果，并将结果直接写入输出目标，不依赖任何格式化器的状态.
+   * @param template 编译结果.
+   * @param out 输出目标.
+   * @param resolver 占位符的值来源.
+   * @param conversion 执行值转换的格式化器，为 {@code null} 时按默认的转换规则.
+   * @param escapes 按位置排列的各键名的转义方式，全部不转义时为 {@code null}.
+   * @throws IOException 写入输出目标失败.
+   */
+  static void formatTo(Template template, Appendable out, SlotResolver resolver, SlotString conversion,
+      SlotEscape[] escapes) throws IOException {
+    SlotStringListener l = listener;
+    if (l == null) {
+      renderTo(template, resolver, out, conversion, escapes);
+      return;
+    }
+    long start = System.nanoTime();
+    renderTo(template, resolver, out, conversion, escapes);
+    l.onRender(template.pattern, -1, System.nanoTime() - start);
+  }
+
+  /**
+   * 按位置格式化编译的模板字符串.<br>
+   * 编译时每个不同的键名按首次出现的顺序分配一个位置，{@code values} 中对应位置的值会替换该键名的全部占位符，
+   * 不需要构建替换表，也不需要按键名查找.<br>
+   * {@code values} 为 {@code null} 或长度不足时，缺少的值按 {@code null} 处理.<br>
+   * 未先编译模板字符串调用该方法会返回 {@code null}.
+   * 
+   * @param values 按位置排列的替换值.
+   * @return 输出字符串.
+   * @see #slotKeys()
+   * @see #slotIndexes()
+   */
+  public String formatSlots(Object[] values) {
+    Template template = this.template;
+    if (template == null) {
+      return null;
+    }
+    return formatSlots(template, values);
+  }
+
+  /**
+   * 按位置格式化指定的编译结果.
+   * @param template 编译结果.
+   * @param values 按位置排列的替换值.
+   * @return 输出字符串.
+   */
+  String formatSlots(Template template, Object[] values) {
+    return formatSlots(template, values, conversion, escapes(template));
+  }
+
+  /**
+   * 按位置、转换规则和转义方式格式化指定的编译结果，不依赖任何格式化器的状态.
+   * @param template 编译结果.
+   * @param values 按位置排列的替换值.
+   * @param conversion 执行值转换的格式化器，为 {@code null} 时按默认的转换规则.
+   * @param escapes 按位置排列的各键名的转义方式，全部不转义时为 {@code null}.
+   * @return 输出字符串.
+   */
+  static String formatSlots(Template template, Object[] values, SlotString conversion, SlotEscape[] escapes) {
+    SlotStringListener l = listener;
+    long start = l != null ? System.nanoTime() : 0L;
+    Object[] slotValues = new Object[template.keys.length];
+    if (values != null) {
+      System.arraycopy(values, 0, slotValues, 0, Math.min(values.length, slotValues.length));
+    }
+    String res = write(template, slotValues, conversion, escapes);
+    if (l != null) {
+      l.onRender(template.pattern, res.length(), System.nanoTime() - start);
+    }
+    return res;
+  }
+
+  /**
+   * 获取编译的模板字符串中按位置排列的键名.<br>
+   * 未先编译模板字符串调用该方法会返回 {@code null}.
+   * @return 键名数组的副本，下标即键名的位置.
+   */
+  public String[] slotKeys() {
+    if (template == null) {
+      return null;
+    }
+    return template.keys.clone();
+  }
+
+  /**
+   * 获取编译的模板字符串中键名到位置的映射表.<br>
+   * 未先编译模板字符串调用该方法会返回 {@code null}.
+   * @return 不可修改的键名位置表，迭代顺序与位置顺序一致.
+   */
+  public Map<String, Integer> slotIndexes() {
+    if (template == null) {
+      return null;
+    }
+    String[] keys = template.keys;
+    LinkedHashMap<String, Integer> indexes = new LinkedHashMap<>();
+    for (int k = 0; k < keys.length; ++k) {
+      indexes.put(keys[k], k);
+    }
+    return Collections.unmodifiableMap(indexes);
+  }
+
+  /**
+   * 将替换表中的值预先填入编译的模板字符串，返回新的格式化器.<br>
+   * 替换表中存在的键名（包括值为 {@code null} 的键名）对应的占位符会按当前的转换规则转换后与相邻的文本合并，
+   * 其余占位符保留，新格式化器格式化时只需处理剩余的占位符，适用于部分值长期不变的场景.<br>
+   * 新格式化器是当前格式化器的副本，保留重写的转换规则和是否生成专用格式化方法的设置，但键名的位置按剩余的键名重新分配.<br>
+   * 未先编译模板字符串调用该方法会返回 {@code null}.
+   * 
+   * @param dest 预先填入的占位符替换表.
+   * @return 新的格式化器.
+   */
+  public SlotString bind(Map<String, Object> dest) {
+    if (template == null) {
+      return null;
+    }
+    SlotString bound = new SlotString(this, bind(template, dest), escape, keyEscapes);
+    if (formatter != null) {
+      bound.formatter = Generator.generate(bound, bound.template);
+    }
+    return bound;
+  }
+
+  /**
+   * 将替换表中的值按当前的转换规则和转义方式预先填入编译结果.
+   * @param template 编译结果.
+   * @param dest 预先填入的占位符替换表.
+   * @return 新的编译结果，原编译结果使用文本区时新编译结果使用同一个文本区.
+   */
+  Template bind(Template template, Map<String, Object> dest) {
+    return bind(template, dest, conversion, escapes(template));
+  }
+
+  /**
+   * 将替换表中的值按指定的转换规则和转义方式预先填入编译结果，不依赖任何格式化器的状态.
+   * @param template 编译结果.
+   * @param dest 预先填入的占位符替换表.
+   * @param conversion 执行值转换的格式化器，为 {@code null} 时按默认的转换规则.
+   * @param escapes 按位置排列的各键名的转义方式，全部不转义时为 {@code null}.
+   * @return 新的编译结果，原编译结果使用文本区时新编译结果使用同一个文本区.
+   */
+  static Template bind(Template template, Map<String, Object> dest, SlotString conversion, SlotEscape[] escapes) {
+    ArrayList<Object> assemblies = new ArrayList<>();
+    StringBuilder res = new StringBuilder();
+    for (int i = 0, size = template.size(); i < size; ++i) {
+      int slot = template.slot(i);
+      if (slot < 0) {
+        template.appendText(res, i);
+      } else if (dest != null && dest.containsKey(template.keys[slot])) {
+        appendValue(res, dest.get(template.keys[slot]), escapes == null ? null : escapes[slot], conversion);
+      } else {
+        if (res.length() != 0) {
+          assemblies.add(TEXT_TYPE);
+          assemblies.add(res.toString());
+          res.setLength(0);
+        }
+        assemblies.add(KEY_TYPE);
+        assemblies.add(template.keys[slot]);
+      }
+    }
+    if (res.length() != 0) {
+      assemblies.add(TEXT_TYPE);
+      assemblies.add(res.toString());
+    }
+    Template bound = toTemplate(template.pattern, assemblies);
+    return template.arena != null ? template.arena.compact(bound) : bound;
+  }
+
+  /**
+   * 按编译结果格式化，并将结果直接写入输出目标.<br>
+   * 与 {@code format} 方法相同，每个不同的键名只查找和转换一次，按转换器注册表和转义方式转换，重复出现的占位符复用转换结果.
+   * @param template 编译结果.
+   * @param resolver 占位符的值来源.
+   * @param out 输出目标.
+   * @param conversion 执行值转换的格式化器，为 {@code null} 时按默认的转换规则.
+   * @param escapes 按位置排列的各键名的转义方式，全部不转义时为 {@code null}.
+   * @throws IOException 写入输出目标失败.
+   */
+  private static void renderTo(Template template, SlotResolver resolver, Appendable out, SlotString conversion,
+      SlotEscape[] escapes) throws IOException {
+    Object[] values = resolve(template, resolver);
+    SlotConverter[] converters = new SlotConverter[values.length];
+    convert(template, values, converters, null, conversion, escapes);
+    String[] texts = new String[values.length];
+    for (int k = 0; k < values.length; ++k) {
+      if (converters[k] == SlotConverters.STRING) {
+        texts[k] = (String) values[k];
+      } else {
+        StringBuilder text = new StringBuilder(converters[k].length(values[k]));
+        converters[k].append(text, values[k]);
+        texts[k] = text.toString();
+      }
+    }
+    for (int i = 0, size = template.size(); i < size; ++i) {
+      int slot = template.slot(i);
+      if (slot < 0) {
+        template.appendText(out, i);
+      } else {
+        out.append(texts[slot]);
+      }
+    }
+  }
+  
+  /**
+   * 不编译直接格式化传入的模板字符串.<br>
+   * 模板字符串中的占位符会根据其名称被替换为替换表中对应的值.
+   * 
+   * @param pattern 模板字符串.
+   * @param dest 占位符替换表.
+   * @return 输出字符串.
+   */
+  public String qformat(String pattern, Map<String, Object> dest) {
+    return qformat(pattern, resolver(dest));
+  }
+
+  /**
+   * 不编译直接按值来源格式化传入的模板字符串.<br>
+   * 模板字符串中的占位符会根据其名称被替换为值来源中对应的值.
+   * 
+   * @param pattern 模板字符串.
+   * @param resolver 占位符的值来源，为 {@code null} 时全部按 {@code null} 值处理.
+   * @return 输出字符串.
+   */
+  public String qformat(String pattern, SlotResolver resolver) {
+    if (pattern == null || pattern.isEmpty()) {
+      return pattern;
+    }
+    SlotStringListener l = listener;
+    if (l == null) {
+      return qformatPattern(pattern, resolver);
+    }
+    long start = System.nanoTime();
+    String res = qformatPattern(pattern, resolver);
+    l.onRender(pattern, res.length(), System.nanoTime() - start);
+    return res;
+  }
+
+  /**
+   * 按编译结果缓存或直接解析格式化模板字符串.
+   * @param pattern 模板字符串.
+   * @param resolver 占位符的值来源.
+   * @return 输出字符串.
+   */
+  private String qformatPattern(String pattern, SlotResolver resolver) {
+    Template template = cache != null ? cached(pattern) : null;
+    if (template != null) {
+      return render(template, resolver, conversion, escapes(template));
+    }
+    Buffers buffers = acquireBuffers();
+    try {
+      parse(pattern, buffers.res, buffers.key, resolver, null, null);
+      return buffers.res.toString();
+    } catch (IOException e) {
+      // 未指定输出目标时只写入结果缓冲区，不会发生
+      throw new UncheckedIOException(e);
+    } finally {
+      releaseBuffers(buffers);
+    }
+  }
+
+  /**
+   * 不编译直接格式化传入的模板字符串，并将结果直接写入输出目标.<br>
+   * 结果缓冲区仅暂存占位符之间的文本，遇到占位符时连同替换表的值一起写入输出目标，不构建完整的输出字符串.<br>
+   * 模板字符串为 {@code null} 或空字符串时不写入任何内容.
+   * 
+   * @param out 输出目标.
+   * @param pattern 模板字符串.
+   * @param dest 占位符替换表.
+   * @throws IOException 写入输出目标失败.
+   */
+  public void qformatTo(Appendable out, String pattern, Map<String, Object> dest) throws IOException {
+    if (pattern == null || pattern.isEmpty()) {
+      return;
+    }
+    SlotStringListener l = listener;
+    if (l == null) {
+      qformatPatternTo(out, pattern, resolver(dest));
+      return;
+    }
+    long start = System.nanoTime();
+    qformatPatternTo(out, pattern, resolver(dest));
+    l.onRender(pattern, -1, System.nanoTime() - start);
+  }
+
+  /**
+   * 按编译结果缓存或直接解析格式化模板字符串，并将结果直接写入输出目标.
+   * @param out 输出目标.
+   * @param pattern 模板字符串.
+   * @param resolver 占位符的值来源.
+   * @throws IOException 写入输出目标失败.
+   */
+  private void qformatPatternTo(Appendable out, String pattern, SlotResolver resolver) throws IOException {
+    Template template = cache != null ? cached(pattern) : null;
+    if (template != null) {
+      renderTo(template, resolver, out, conversion, escapes(template));
+      return;
+    }
+    Buffers buffers = acquireBuffers();
+    try {
+      parse(pattern, buffers.res, buffers.key, resolver, null, out);
+      flush(buffers.res, out);
+    } finally {
+      releaseBuffers(buffers);
+    }
+  }
+
+  /**
+   * 不编译直接流式格式化从 {@code Reader} 读取的模板字符串，并将结果直接写入输出目标.<br>
+   * 模板字符串按固定大小分块读取和解析，解析状态跨分块延续，每个分块解析后即写入输出目标，
+   * 键名超过 {@link #MAX_KEY_LENGTH} 时按原文输出，内存占用与模板字符串的长度无关，
+   * 适用于无法整体读入内存的超大模板.<br>
+   * 不使用编译结果缓存，不关闭 {@code pattern}.
+   * 
+   * @param out 输出目标.
+   * @param pattern 模板字符串的来源.
+   * @param resolver 占位符的值来源，为 {@code null} 时全部按 {@code null} 值处理.
+   * @throws IOException 读取模板字符串或写入输出目标失败.
+   */
+  public void qformatTo(Appendable out, Reader pattern, SlotResolver resolver) throws IOException {
+    SlotStringListener l = listener;
+    long start = l == null ? 0L : System.nanoTime();
+    Buffers buffers = acquireBuffers();
+    try {
+      ParseState state = new ParseState(null, resolver, null, out);
+      char[] chunk = new char[STREAM_CHUNK];
+      int n;
+      state.chars = chunk;
+      while ((n = pattern.read(chunk)) >= 0) {
+        parseChunk(state, 0, n, buffers.res, buffers.key);
+      }
+      flush(buffers.res, out);
+    } finally {
+      releaseBuffers(buffers);
+    }
+    if (l != null) {
+      l.onRender(null, -1, System.nanoTime() - start);
+    }
+  }
+
+  /**
+   * 不编译直接流式格式化内存映射文件中的模板字符串，并将结果直接写入输出目标.<br>
+   * 文件按区域依次映射，再按固定大小的分段解码和解析，跨分段的多字节字符留到下一个分段解码，
+   * 模板字符串不会整体读入堆内存.<br>
+   * 无法解码的字节按字符集的替换字符处理，不使用编译结果缓存，不关闭 {@code pattern}.
+   * 
+   * @param out 输出目标，写入通道时可使用 {@code Channels.newWriter}.
+   * @param pattern 模板文件的通道，从位置 0 读取到文件末尾.
+   * @param charset 模板文件的字符集.
+   * @param resolver 占位符的值来源，为 {@code null} 时全部按 {@code null} 值处理.
+   * @throws IOException 读取模板文件或写入输出目标失败.
+   */
+  public void qformatTo(Appendable out, FileChannel pattern, Charset charset, SlotResolver resolver)
+      throws IOException {
+    SlotStringListener l = listener;
+    long start = l == null ? 0L : System.nanoTime();
+    CharsetDecoder decoder = charset.newDecoder()
+        .onMalformedInput(CodingErrorAction.REPLACE)
+        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    Buffers buffers = acquireBuffers();
+    try {
+      ParseState state = new ParseState(null, resolver, null, out);
+      // 解码器对堆内数组有快速路径，映射区域分段复制到堆内再解码
+      ByteBuffer in = ByteBuffer.allocate(STREAM_CHUNK);
+      CharBuffer chars = CharBuffer.allocate(STREAM_CHUNK);
+      long size = pattern.size();
+      for (long position = 0L; position < size; ) {
+        MappedByteBuffer bytes = pattern.map(FileChannel.MapMode.READ_ONLY, position,
+            Math.min(MAP_REGION, size - position));
+        position += bytes.limit();
+        while (bytes.hasRemaining()) {
+          int n = Math.min(in.remaining(), bytes.remaining());
+          bytes.get(in.array(), in.arrayOffset() + in.position(), n);
+          in.position(in.position() + n);
+          in.flip();
+          CoderResult result;
+          do {
+            result = decoder.decode(in, chars, position == size && !bytes.hasRemaining());
+            if (result.isError()) {
+              result.throwException();
+            }
+            parseChunk(chars, state, buffers.res, buffers.key);
+          } while (result.isOverflow());
+          // 分段末尾不完整的字符留到下一个分段
+          in.compact();
+        }
+      }
+      if (size > 0) {
+        while (decoder.flush(chars).isOverflow()) {
+          parseChunk(chars, state, buffers.res, buffers.key);
+        }
+        parseChunk(chars, state, buffers.res, buffers.key);
+      }
+      flush(buffers.res, out);
+    } finally {
+      releaseBuffers(buffers);
+    }
+    if (l != null) {
+      l.onRender(null, -1, System.nanoTime() - start);
+    }
+  }
+
+  /**
+   * 解析字符缓冲区中已解码的分块，然后清空字符缓冲区.
+   * @param chars 字符缓冲区.
+   * @param state 跨分块延续的解析状态.
+   * @param res 使用的结果缓冲区.
+   * @param key 使用的键名缓冲区.
+   * @throws IOException 写入输出目标失败.
+   */
+  private void parseChunk(CharBuffer chars, ParseState state, StringBuilder res, StringBuilder key)
+      throws IOException {
+    chars.flip();
+    state.chars = chars.array();
+    parseChunk(state, chars.arrayOffset(), chars.arrayOffset() + chars.limit(), res, key);
+    chars.clear();
+  }
+
+  /**
+   * 获取 {@code qformat} 方法使用的缓冲区.<br>
+   * 非多线程时返回共用的缓冲区，多线程时从缓冲区池取出或创建新的缓冲区.
+   * @return 已清空的缓冲区.
+   */
+  private Buffers acquireBuffers() {
+    if (!multiThread) {
+      buffers.res.setLength(0);
+      buffers.key.setLength(0);
+      return buffers;
+    }
+    if (pool != null) {
+      return pool.acquire();
+    }
+    return new Buffers();
+  }
+
+  /**
+   * 归还 {@code qformat} 方法使用的缓冲区.
+   * @param buffers 缓冲区.
+   */
+  private void releaseBuffers(Buffers buffers) {
+    if (pool != null) {
+      pool.release(buffers);
+    }
+  }
+  
+  /**
+   * 从编译结果缓存中获取模板字符串的编译结果，未命中且缓存准许放入时编译并放入缓存.
+   * @param pattern 模板字符串.
+   * @return 编译结果，首次出现的模板字符串返回 {@code null}，由调用方直接解析.
+   */
+  private Template cached(String pattern) {
+    Template template = cache.get(pattern);
+    if (template == null && cache.admit(pattern)) {
+      template = assemble(pattern);
+      cache.put(pattern, template);
+    }
+    return template;
+  }
+  
+  /**
+   * 生成的格式化方法的键名片段处理逻辑.
+   * @param res 使用的结果缓冲区.
+   * @param dest 占位符替换表.
+   * @param key 键名.
+   */
+  void appendSlot(StringBuilder res, Map<String, Object> dest, String key) {
+    Object val = null;
+    if (dest != null) {
+      val = dest.get(key);
+    }
+    if (val == null) {
+      notifyNullSlot(template.pattern, key);
+    }
+    appendValue(res, val, conversion);
+  }
+
+  /**
+   * 将替换表的值转换后按转义方式追加到结果缓冲区.
+   * @param res 使用的结果缓冲区.
+   * @param val 替换表的值.
+   * @param escape 转义方式，为 {@code null} 时不转义.
+   */
+  void appendValue(StringBuilder res, Object val, SlotEscape escape) {
+    appendValue(res, val, escape, conversion);
+  }
+
+  /**
+   * 将替换表的值按指定的转换规则转换后按转义方式追加到结果缓冲区.
+   * @param res 使用的结果缓冲区.
+   * @param val 替换表的值.
+   * @param escape 转义方式，为 {@code null} 时不转义.
+   * @param conversion 执行值转换的格式化器，为 {@code null} 时按默认的转换规则.
+   */
+  private static void appendValue(StringBuilder res, Object val, SlotEscape escape, SlotString conversion) {
+    if (escape != null) {
+      escape.append(res, slotText(val, conversion));
+    } else {
+      appendValue(res, val, conversion);
+    }
+  }
+
+  /**
+   * 将替换表的值转换后追加到结果缓冲区.<br>
+   * 未重写 {@code asString} 方法且注册表中有对应的转换器时直接追加，否则追加 {@code asString} 方法的转换结果.
+   * @param res 使用的结果缓冲区.
+   * @param val 替换表的值.
+   * @param conversion 执行值转换的格式化器，为 {@code null} 时按默认的转换规则.
+   */
+  private static void appendValue(StringBuilder res, Object val, SlotString conversion) {
+    SlotConverters registry = registry(conversion);
+    if (registry != null) {
+      SlotConverter converter = registry.lookup(val);
+      if (converter != null) {
+        converter.append(res, val);
+        return;
+      }
+    }
+    res.append(asString(val, conversion));
+  }
+
+  /**
+   * 获取值转换使用的转换器注册表.
+   * @param conversion 执行值转换的格式化器，为 {@code null} 时按默认的转换规则.
+   * @return 转换器注册表，重写了 {@code asString} 方法时为 {@code null}.
+   */
+  private static SlotConverters registry(SlotString conversion) {
+    if (conversion == null) {
+      return SlotConverters.defaults();
+    }
+    return conversion.directConversion ? conversion.converters() : null;
+  }
+
+  /**
+   * 按 {@code asString} 方法将值转换为字符串.
+   * @param val 替换表的值.
+   * @param conversion 执行值转换的格式化器，为 {@code null} 时按默认的转换规则.
+   * @return 转换结果.
+   */
+  private static String asString(Object val, SlotString conversion) {
+    return conversion == null ? asString(val, false, SlotConverters.defaults()) : conversion.asString(val, false);
+  }
+
+  /**
+   * 通知全局监听器占位符对应的值为 {@code null}.<br>
+   * 未设置监听器时不转换键名.
+   * @param pattern 模板字符串.
+   * @param key 键名.
+   */
+  private static void notifyNullSlot(String pattern, CharSequence key) {
+    SlotStringListener l = listener;
+    if (l != null) {
+      l.onNullSlot(pattern, key.toString(), 1);
+    }
+  }
+
+  /**
+   * 设置全局运行监听器.<br>
+   * 对所有格式化器立即生效，为 {@code null} 时停止回调，格式化时不再计时.
+   * @param listener 运行监听器.
+   * @see SlotStringMetrics
+   */
+  public static void setListener(SlotStringListener listener) {
+    SlotString.listener = listener;
+  }
+
+  /**
+   * 获取全局运行监听器.
+   * @return 运行监听器，未设置时返回 {@code null}.
+   */
+  public static SlotStringListener getListener() {
+    return listener;
+  }
+
+  /**
+   * 获取替换表的值的转换器注册表.<br>
+   * 重写该方法可为格式化器指定单独的注册表，默认注册表不可修改，需要内置的转换器时以
+   * {@code new SlotConverters(SlotConverters.defaults())} 为基础注册.<br>
+   * 未重写 {@code asString} 方法时，注册表中有转换器的值会直接追加到结果缓冲区，不创建中间字符串；
+   * 重写 {@code asString} 方法后，值的转换完全由 {@code asString} 方法决定.
+   * @return 转换器注册表.
+   */
+  protected SlotConverters converters() {
+    return SlotConverters.defaults();
+  }
+  
+  /**
+   * 将替换表的值转化为字符串.<br>
+   * 重写该方法，并在新实现开头调用 {@code super.asString(val, true)} 可实现在原有转换规则的基础上扩展.<br>
+   * 该方法 {@code preventDefault} 为 {@code true} 时，遇到非 {@code null} 和 {@code BigDecimal} 类的 {@code val} 会返回 {@code null}.<br>
+   * 该方法 {@code preventDefault} 为 {@code false} 时，注册表中有转换器的值使用转换器转换，否则调用 {@code toString()}.
+   *  
+   * @param val 替换表的值
+   * @param preventDefault 是否阻止默认的调用 {@code toString()} 行为.
+   * @return 转换后的字符串.
+   */
+  protected String asString(Object val, boolean preventDefault) {
+    return asString(val, preventDefault, converters());
+  }
+
+  /**
+   * 默认的替换表值转换规则.
+   * @param val 替换表的值.
+   * @param preventDefault 是否阻止默认的转换规则.
+   * @param converters 转换器注册表.
+   * @return 转换结果.
+   */
+  private static String asString(Object val, boolean preventDefault, SlotConverters converters) {
+    if (val == null) {
+      return "";
+    } else if (val instanceof BigDecimal) {
+      return ((BigDecimal) val).toPlainString();
+    }
+    if (preventDefault) {
+      return null;
+    } else if (val instanceof String) {
+      return (String) val;
+    }
+    SlotConverter converter = converters.lookup(val);
+    if (converter == null) {
+      return val.toString();
+    }
+    StringBuilder res = new StringBuilder(converter.length(val));
+    converter.append(res, val);
+    return res.toString();
+  }
+  
+  /**
+   * {@code compile} 和 {@code qformat} 方法的公共解析部分.<br>
+   * 整个模板字符串作为一个分块交给 {@code parseChunk} 方法，与流式格式化使用同一个状态机.
+   * 
+   * @param pattern 模板字符串.
+   * @param res 使用的结果缓冲区.
+   * @param key 使用的键名缓冲区.
+   * @param resolver 占位符的值来源.
+   * @param assemblies 编译结果缓冲区，为 {@code null} 时按 {@code qformat} 方法处理.
+   * @param out 输出目标，为 {@code null} 时结果全部写入结果缓冲区.
+   * @throws IOException 写入输出目标失败.
+   */
+  private void parse(String pattern, StringBuilder res, StringBuilder key, SlotResolver resolver,
+      ArrayList<Object> assemblies, Appendable out) throws IOException {
+    ParseState state = new ParseState(pattern, resolver, assemblies, out);
+    state.text = pattern;
+    parseChunk(state, 0, pattern.length(), res, key);
+  }
+
+  /**
+   * 模板字符串的分块解析逻辑（状态机）.<br>
+   * 分块结束时停留的状态和 # $ 前缀保存在 {@code state} 中，下一个分块从该状态继续；
+   * 模板字符串结束时停留在 state 1、2、4 的内容被丢弃，流式格式化时键名超过 {@link #MAX_KEY_LENGTH} 时按原文输出.<br>
+   * 指定了输出目标时，分块解析后将结果缓冲区中暂存的文本写入输出目标.
+   * 
+   * @param state 跨分块延续的解析状态，分块为其中的模板字符串或字符数组.
+   * @param from 分块的开始位置.
+   * @param to 分块的结束位置.
+   * @param res 使用的结果缓冲区.
+   * @param key 使用的键名缓冲区.
+   * @throws IOException 写入输出目标失败.
+   */
+  private void parseChunk(ParseState state, int from, int to, StringBuilder res, StringBuilder key)
+      throws IOException {
+    int i = from;
+    while (i < to) {
+      switch (state.state) {
+        case 0: {
+          // state 0: 整段复制到下一个特殊字符之前的普通文字
+          int next = state.nextSpecial(i, to);
+          state.append(res, i, next);
+          if (next == to) {
+            i = to;
+            break;
+          }
+          char c = state.charAt(next);
+          i = next + 1;
+          if (c == '\\') {
+            state.state = 3;
+          } else if (c == '{') {
+            state.startKey(key);
+            state.prefix = 0;
+            state.state = 2;
+          } else {
+            state.prefix = c;
+            state.state = 1;
+          }
+          break;
+        }
+        case 1:
+          // state 1: 仅后接 { 时开始键名，否则作为普通文字并重新解析后一个字符
+          if (state.charAt(i) == '{') {
+            ++i;
+            state.startKey(key);
+            state.state = 2;
+          } else {
+            res.append(state.prefix);
+            state.state = 0;
+          }
+          break;
+        case 2: {
+          // state 2: 整段复制到 } 或转义符之前的键名
+          int next = state.nextKeyEnd(i, to);
+          state.append(key, i, next);
+          if (state.raw != null) {
+            state.append(state.raw, i, next);
+            if (state.raw.length() > MAX_KEY_LENGTH) {
+              // 键名过长，视为未闭合的 {，原文按普通文字输出并从当前位置继续解析
+              if (state.prefix != 0) {
+                res.append(state.prefix);
+              }
+              res.append('{').append(state.raw);
+              state.startKey(key);
+              state.state = 0;
+              i = next;
+              break;
+            }
+          }
+          i = next;
+          if (i == to) {
+            break;
+          }
+          if (state.charAt(i++) == '}') {
+            if (state.assemblies != null) {
+              parseCompile(res, key, state.assemblies);
+            } else {
+              parseQformat(state.pattern, res, key, state.resolver, state.out);
+            }
+            state.state = 0;
+          } else {
+            if (state.raw != null) {
+              state.raw.append('\\');
+            }
+            state.state = 4;
+          }
+          break;
+        }
+        case 3:
+          // state 3: 转义任意字符为普通文字
+          res.append(state.charAt(i++));
+          state.state = 0;
+          break;
+        default:
+          // state 4: 转义任意字符为键名
+          char c = state.charAt(i++);
+          key.append(c);
+          if (state.raw != null) {
+            state.raw.append(c);
+          }
+          state.state = 2;
+          break;
+      }
+    }
+    if (state.out != null) {
+      flush(res, state.out);
+    }
+  }
+  
+  /**
+   * {@code qformat} 方法的替换表值处理逻辑.
+   * @param pattern 模板字符串.
+   * @param res 使用的结果缓冲区.
+   * @param key 使用的键名缓冲区.
+   * @param resolver 占位符的值来源.
+   * @param out 输出目标，为 {@code null} 时写入结果缓冲区.
+   * @throws IOException 写入输出目标失败.
+   */
+  private void parseQformat(String pattern, StringBuilder res, StringBuilder key, SlotResolver resolver,
+      Appendable out) throws IOException {
+    Object val = null;
+    String name = null;
+    if (resolver != null) {
+      name = keyTable().canonical(key);
+      val = resolver.resolve(name);
+    }
+    if (val == null) {
+      notifyNullSlot(pattern, name != null ? name : key);
+    }
+    SlotEscape escape = escapeOf(name);
+    if (out == null) {
+      appendValue(res, val, escape);
+    } else {
+      flush(res, out);
+      if (escape != null) {
+        escape.appendTo(out, slotText(val));
+      } else {
+        out.append(conversion.asString(val, false));
+      }
+    }
+  }
+
+  /**
+   * 获取 {@code qformat} 方法使用的键名表，不存在时创建.
+   * @return 键名表.
+   */
+  private KeyTable keyTable() {
+    KeyTable table = keyTable;
+    if (table == null) {
+      synchronized (this) {
+        table = keyTable;
+        if (table == null) {
+          keyTable = table = new KeyTable();
+        }
+      }
+    }
+    return table;
+  }
+
+  /**
+   * 将结果缓冲区中暂存的文本写入输出目标并清空结果缓冲区.
+   * @param res 使用的结果缓冲区.
+   * @param out 输出目标.
+   * @throws IOException 写入输出目标失败.
+   */
+  private static void flush(StringBuilder res, Appendable out) throws IOException {
+    if (res.length() != 0) {
+      out.append(res);
+      res.setLength(0);
+    }
+  }
+  
+  /**
+   * {@code compile} 方法的解析结果记录逻辑.
+   * @param res 使用的结果缓冲区.
+   * @param key 使用的键名缓冲区.
+   * @param assemblies 编译结果缓冲区.
+   */
+  private void parseCompile(StringBuilder res, StringBuilder key, ArrayList<Object> assemblies) {
+    if (res.length() != 0) {
+      assemblies.add(TEXT_TYPE);
+      assemblies.add(res.toString());
+      res.setLength(0);
+    }
+    assemblies.add(KEY_TYPE);
+    assemblies.add(key.toString());
+  }
+
+  /**
+   * 模板字符串的编译结果.<br>
+   * 文本片段以 {@code String} 对象保存在 {@code parts} 中，或以位置保存在文本区中（{@code arena} 不为 {@code null}），
+   * 两种形式通过 {@code size}、{@code slot} 和 {@code appendText} 方法统一访问.
+   */
+  static final class Template {
+    /**
+     * 模板字符串，文本存放在文本区中时为 {@code null}.
+     */
+    final String pattern;
+    /**
+     * 编译的字符串片段，文本存放在文本区中时为 {@code null}.
+     */
+    final String[] parts;
+    /**
+     * 编译的字符串片段的类型，文本存放在文本区中时为 {@code null}.
+     */
+    final int[] types;
+    /**
+     * 键名类型的字符串片段的位置，文本类型的字符串片段为 -1，文本存放在文本区中时为 {@code null}.
+     */
+    final int[] slots;
+    /**
+     * 存放文本片段的文本区（未使用时为 {@code null}）.
+     */
+    final SlotStringArena arena;
+    /**
+     * 文本区中编码后的字符串片段，未使用文本区时为 {@code null}.
+     */
+    final long[] segments;
+    /**
+     * 按位置排列的不同键名.
+     */
+    final String[] keys;
+    /**
+     * 按位置排列的各键名的出现次数.
+     */
+    final int[] counts;
+    /**
+     * 文本类型的字符串片段的总长度.
+     */
+    final int literalLength;
+    /**
+     * 键名类型的字符串片段的数量.
+     */
+    final int slotCount;
+
+    Template(String pattern, String[] parts, int[] types) {
+      this.pattern = pattern;
+      this.parts = parts;
+      this.types = types;
+      this.arena = null;
+      this.segments = null;
+      slots = new int[types.length];
+      LinkedHashMap<String, Integer> indexes = new LinkedHashMap<>();
+      int literalLength = 0;
+      int slotCount = 0;
+      for (int i = 0; i < types.length; ++i) {
+        if (types[i] == TEXT_TYPE) {
+          slots[i] = -1;
+          literalLength += parts[i].length();
+        } else {
+          Integer slot = indexes.get(parts[i]);
+          if (slot == null) {
+            slot = indexes.size();
+            indexes.put(parts[i], slot);
+          }
+          slots[i] = slot;
+          ++slotCount;
+        }
+      }
+      this.keys = indexes.keySet().toArray(new String[0]);
+      this.counts = new int[keys.length];
+      for (int i = 0; i < types.length; ++i) {
+        if (types[i] == KEY_TYPE) {
+          ++counts[slots[i]];
+        }
+      }
+      this.literalLength = literalLength;
+      this.slotCount = slotCount;
+    }
+
+    Template(String pattern, String[] parts, int[] types, int[] slots, String[] keys, int[] counts,
+        int literalLength, int slotCount) {
+      this.pattern = pattern;
+      this.parts = parts;
+      this.types = types;
+      this.slots = slots;
+      this.arena = null;
+      this.segments = null;
+      this.keys = keys;
+      this.counts = counts;
+      this.literalLength = literalLength;
+      this.slotCount = slotCount;
+    }
+
+    Template(SlotStringArena arena, long[] segments, String[] keys, int[] counts, int literalLength, int slotCount) {
+      this.pattern = null;
+      this.parts = null;
+      this.types = null;
+      this.slots = null;
+      this.arena = arena;
+      this.segments = segments;
+      this.keys = keys;
+      this.counts = counts;
+      this.literalLength = literalLength;
+      this.slotCount = slotCount;
+    }
+
+    /**
+     * @return 字符串片段的数量.
+     */
+    int size() {
+      return segments != null ? segments.length : types.length;
+    }
+
+    /**
+     * 获取字符串片段对应的键名位置.
+     * @param i 字符串片段的下标.
+     * @return 键名的位置，文本类型的字符串片段返回 -1.
+     */
+    int slot(int i) {
+      return segments != null ? SlotStringArena.slot(segments[i]) : slots[i];
+    }
+
+    /**
+     * 获取文本类型的字符串片段的长度.
+     * @param i 字符串片段的下标.
+     * @return 文本长度.
+     */
+    int textLength(int i) {
+      return segments != null ? SlotStringArena.length(segments[i]) : parts[i].length();
+    }
+
+    /**
+     * 将文本类型的字符串片段追加到结果缓冲区.
+     * @param res 结果缓冲区.
+     * @param i 字符串片段的下标.
+     */
+    void appendText(StringBuilder res, int i) {
+      if (segments != null) {
+        arena.append(res, segments[i]);
+      } else {
+        res.append(parts[i]);
+      }
+    }
+
+    /**
+     * 将文本类型的字符串片段写入输出目标.
+     * @param out 输出目标.
+     * @param i 字符串片段的下标.
+     * @throws IOException 写入输出目标失败.
+     */
+    void appendText(Appendable out, int i) throws IOException {
+      if (segments != null) {
+        arena.appendTo(out, segments[i]);
+      } else {
+        out.append(parts[i]);
+      }
+    }
+  }
+
+  /**
+   * 跨分块延续的解析状态和解析目标.
+   */
+  static final class ParseState {
+    /**
+     * 模板字符串，流式格式化时为 {@code null}.
+     */
+    final String pattern;
+    /**
+     * 占位符的值来源.
+     */
+    final SlotResolver resolver;
+    /**
+     * 编译结果缓冲区，为 {@code null} 时按 {@code qformat} 方法处理.
+     */
+    final ArrayList<Object> assemblies;
+    /**
+     * 输出目标，为 {@code null} 时结果全部写入结果缓冲区.
+     */
+    final Appendable out;
+    /**
+     * 分块结束时停留的状态，与 {@code parseChunk} 方法中的 state 0-4 对应.
+     */
+    int state;
+    /**
+     * 键名的前缀字符（# 或 $），state 1 时为等待 { 的前缀，直接以 { 开始的键名为 0.
+     */
+    char prefix;
+    /**
+     * 作为分块的模板字符串，分块为字符数组时为 {@code null}.
+     */
+    String text;
+    /**
+     * 分块所在的字符数组，分块为模板字符串时不使用.
+     */
+    char[] chars;
+    /**
+     * 流式格式化时当前键名的原文（包括转义符），用于限制键名长度和超长时原样输出；按模板字符串解析时为 {@code null}.
+     */
+    final StringBuilder raw;
+    /**
+     * 模板字符串中 # 下一次出现的位置，不再出现时为模板字符串的长度，尚未查找时为 -1.
+     */
+    private int nextHash = -1;
+    /**
+     * 模板字符串中 $ 下一次出现的位置，不再出现时为模板字符串的长度，尚未查找时为 -1.
+     */
+    private int nextDollar = -1;
+    /**
+     * 模板字符串中 { 下一次出现的位置，不再出现时为模板字符串的长度，尚未查找时为 -1.
+     */
+    private int nextOpen = -1;
+    /**
+     * 模板字符串中 } 下一次出现的位置，不再出现时为模板字符串的长度，尚未查找时为 -1.
+     */
+    private int nextClose = -1;
+    /**
+     * 模板字符串中 转义符 下一次出现的位置，不再出现时为模板字符串的长度，尚未查找时为 -1.
+     */
+    private int nextEscape = -1;
+
+    ParseState(String pattern, SlotResolver resolver, ArrayList<Object> assemblies, Appendable out) {
+      this.pattern = pattern;
+      this.resolver = resolver;
+      this.assemblies = assemblies;
+      this.out = out;
+      this.raw = pattern == null ? new StringBuilder() : null;
+    }
+
+    /**
+     * 开始新的键名，清空键名缓冲区和键名原文.
+     * @param key 使用的键名缓冲区.
+     */
+    void startKey(StringBuilder key) {
+      key.setLength(0);
+      if (raw != null) {
+        raw.setLength(0);
+      }
+    }
+
+    /**
+     * 获取分块中的字符.
+     * @param i 位置.
+     * @return 字符.
+     */
+    char charAt(int i) {
+      return text != null ? text.charAt(i) : chars[i];
+    }
+
+    /**
+     * 将分块中的一段追加到缓冲区.
+     * @param sb 缓冲区.
+     * @param from 开始位置.
+     * @param to 结束位置.
+     */
+    void append(StringBuilder sb, int from, int to) {
+      if (text != null) {
+        sb.append(text, from, to);
+      } else {
+        sb.append(chars, from, to - from);
+      }
+    }
+
+    /**
+     * 查找普通文字之后下一个特殊字符（# $ { \）的位置.
+     * @param from 开始位置.
+     * @param to 分块的结束位置.
+     * @return 特殊字符的位置，不再出现时返回 {@code to}.
+     */
+    int nextSpecial(int from, int to) {
+      if (text != null) {
+        // 模板字符串整体为一个分块，各字符分别查找并复用仍在开始位置之后的结果
+        nextHash = indexOf(text, '#', from, nextHash);
+        nextDollar = indexOf(text, '$', from, nextDollar);
+        nextOpen = indexOf(text, '{', from, nextOpen);
+        nextEscape = indexOf(text, '\\', from, nextEscape);
+        return Math.min(Math.min(nextHash, nextDollar), Math.min(nextOpen, nextEscape));
+      }
+      int i = from;
+      while (i < to) {
+        char c = chars[i];
+        // 多数普通文字大于 $，只需再比较两次
+        if (c <= '$' ? c >= '#' : c == '{' || c == '\\') {
+          break;
+        }
+        ++i;
+      }
+      return i;
+    }
+
+    /**
+     * 查找键名之后下一个 } 或转义符的位置.
+     * @param from 开始位置.
+     * @param to 分块的结束位置.
+     * @return } 或转义符的位置，不再出现时返回 {@code to}.
+     */
+    int nextKeyEnd(int from, int to) {
+      if (text != null) {
+        nextClose = indexOf(text, '}', from, nextClose);
+        nextEscape = indexOf(text, '\\', from, nextEscape);
+        return Math.min(nextClose, nextEscape);
+      }
+      int i = from;
+      while (i < to && chars[i] != '}' && chars[i] != '\\') {
+        ++i;
+      }
+      return i;
+    }
+
+    /**
+     * 查找字符在模板字符串中从指定位置开始下一次出现的位置.<br>
+     * 上次查找的结果仍在指定位置之后时直接复用.
+     * 
+     * @param pattern 模板字符串.
+     * @param c 查找的字符.
+     * @param from 开始查找的位置.
+     * @param cached 上次查找的结果.
+     * @return 字符的位置，不再出现时返回模板字符串的长度.
+     */
+    private static int indexOf(String pattern, char c, int from, int cached) {
+      if (cached >= from) {
+        return cached;
+      }
+      int index = pattern.indexOf(c, from);
+      return index < 0 ? pattern.length() : index;
+    }
+  }
+
+  /**
+   * 一组 {@code qformat} 方法使用的缓冲区.
+   */
+  static final class Buffers {
+    /**
+     * 结果缓冲区.
+     */
+    final StringBuilder res = new StringBuilder();
+    /**
+     * 键名缓冲区.
+     */
+    final StringBuilder key = new StringBuilder();
+  }
+
+  /**
+   * {@code qformat} 方法使用的键名表.<br>
+   * 按键名缓冲区的内容查找此前出现过的相同键名的 {@code String} 对象，使反复出现的键名不再每次创建新的字符串.<br>
+   * 查找不加锁，新增键名时复制整个表后替换；键名数量达到上限后不再新增，未收录的键名每次创建新的字符串.
+   */
+  static final class KeyTable {
+    /**
+     * 最多收录的键名数量.
+     */
+    static final int MAX_KEYS = 256;
+    /**
+     * 按哈希值开放寻址的键名，容量为 2 的幂且至少为键名数量的两倍.
+     */
+    private volatile String[] table = new String[16];
+    /**
+     * 已收录的键名数量.
+     */
+    private int size;
+
+    /**
+     * 获取与键名缓冲区内容相同的键名.
+     * @param key 键名缓冲区.
+     * @return 收录的键名，未收录且无法收录时返回新的字符串.
+     */
+    String canonical(CharSequence key) {
+      int hash = 0;
+      for (int i = 0, length = key.length(); i < length; ++i) {
+        hash = 31 * hash + key.charAt(i);
+      }
+      String[] table = this.table;
+      int mask = table.length - 1;
+      for (int i = spread(hash) & mask; table[i] != null; i = (i + 1) & mask) {
+        String name = table[i];
+        if (name.hashCode() == hash && name.contentEquals(key)) {
+          return name;
+        }
+      }
+      return add(key.toString(), hash);
+    }
+
+    /**
+     * 收录新的键名.
+     * @param name 键名.
+     * @param hash 键名的哈希值.
+     * @return 收录的键名.
+     */
+    private synchronized String add(String name, int hash) {
+      if (size >= MAX_KEYS) {
+        return name;
+      }
+      String[] table = this.table;
+      int capacity = (size + 1) * 2 > table.length ? table.length * 2 : table.length;
+      String[] grown = new String[capacity];
+      int mask = capacity - 1;
+      for (String old : table) {
+        if (old != null) {
+          if (old.equals(name)) {
+            // 其他线程已收录
+            return old;
+          }
+          int i = spread(old.hashCode()) & mask;
+          while (grown[i] != null) {
+            i = (i + 1) & mask;
+          }
+          grown[i] = old;
+        }
+      }
+      int i = spread(hash) & mask;
+      while (grown[i] != null) {
+        i = (i + 1) & mask;
+      }
+      grown[i] = name;
+      ++size;
+      this.table = grown;
+      return name;
+    }
+
+    /**
+     * 混合哈希值的高位.
+     * @param hash 哈希值.
+     * @return 混合后的哈希值.
+     */
+    private static int spread(int hash) {
+      return hash ^ (hash >>> 16);
+    }
+  }
+
+  /**
+   * 并行写入字符串片段分块的任务.<br>
+   * 分块数量大于 1 时二分为两个子任务，每个分块先统计输出长度再按该长度分配缓冲区写入.
+   */
+  private static final class RenderTask extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 编译结果.
+     */
+    private final Template template;
+    /**
+     * 按位置排列的各键名转换后的值.
+     */
+    private final Object[] values;
+    /**
+     * 按位置排列的各键名的转换器.
+     */
+    private final SlotConverter[] converters;
+    /**
+     * 按位置排列的各键名的转换结果长度.
+     */
+    private final int[] lengths;
+    /**
+     * 按分块下标写入的分块缓冲区.
+     */
+    private final StringBuilder[] chunks;
+    /**
+     * 每个分块的字符串片段数量.
+     */
+    private final int chunkSize;
+    /**
+     * 本任务写入的第一个分块的下标.
+     */
+    private final int from;
+    /**
+     * 本任务写入的最后一个分块之后的下标.
+     */
+    private final int to;
+
+    RenderTask(Template template, Object[] values, SlotConverter[] converters, int[] lengths, StringBuilder[] chunks,
+        int chunkSize, int from, int to) {
+      this.template = template;
+      this.values = values;
+      this.converters = converters;
+      this.lengths = lengths;
+      this.chunks = chunks;
+      this.chunkSize = chunkSize;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected void compute() {
+      if (to - from > 1) {
+        int mid = (from + to) >>> 1;
+        invokeAll(new RenderTask(template, values, converters, lengths, chunks, chunkSize, from, mid),
+            new RenderTask(template, values, converters, lengths, chunks, chunkSize, mid, to));
+        return;
+      }
+      int begin = from * chunkSize;
+      int end = Math.min(begin + chunkSize, template.size());
+      int length = 0;
+      for (int i = begin; i < end; ++i) {
+        int slot = template.slot(i);
+        length += slot < 0 ? template.textLength(i) : lengths[slot];
+      }
+      StringBuilder chunk = new StringBuilder(length);
+      writeSegments(chunk, template, values, converters, begin, end);
+      chunks[from] = chunk;
+    }
+  }
+
+  /**
+   * {@code formatAsync} 方法默认的执行器.<br>
+   * 仅在首次使用时初始化.
+   */
+  private static final class AsyncExecutor {
+    /**
+     * 运行环境支持时为每个任务创建虚拟线程的执行器，否则为守护线程的缓存线程池.
+     */
+    static final Executor DEFAULT = create();
+
+    private static Executor create() {
+      try {
+        MethodHandle factory = MethodHandles.publicLookup().findStatic(Executors.class,
+            "newVirtualThreadPerTaskExecutor", MethodType.methodType(ExecutorService.class));
+        return (Executor) factory.invoke();
+      } catch (Throwable e) {
+        // Java 21 以下没有虚拟线程，查找通常会阻塞，不能使用并行度只有 CPU 数减一且全局共用的 ForkJoinPool
+        AtomicInteger threads = new AtomicInteger();
+        return Executors.newCachedThreadPool(task -> {
+          Thread thread = new Thread(task, "SlotString-async-" + threads.incrementAndGet());
+          thread.setDaemon(true);
+          return thread;
+        });
+      }
+    }
+  }
+
+  /**
+   * 专用格式化方法的生成器.<br>
+   * 仅在首次生成时初始化.
+   */
+  private static final class Generator {
+    /**
+     * 生成的方法句柄链允许的最多字符串片段数量.
+     */
+    private static final int MAX_SEGMENTS = 256;
+    /**
+     * 估算结果缓冲区容量时每个键名片段的预留长度.
+     */
+    private static final int SLOT_CAPACITY_HINT = 16;
+    /**
+     * {@code (StringBuilder, String)void}.
+     */
+    private static final MethodHandle APPEND_TEXT;
+    /**
+     * {@code (SlotString, StringBuilder, Map, String)void}.
+     */
+    private static final MethodHandle APPEND_SLOT;
+    /**
+     * {@code (StringBuilder)String}.
+     */
+    private static final MethodHandle TO_STRING;
+    /**
+     * {@code (int)StringBuilder}.
+     */
+    private static final MethodHandle NEW_BUILDER;
+
+    static {
+      MethodHandles.Lookup lookup = MethodHandles.lookup();
+      try {
+        APPEND_TEXT = lookup.findVirtual(StringBuilder.class, "append",
+            MethodType.methodType(StringBuilder.class, String.class))
+            .asType(MethodType.methodType(void.class, StringBuilder.class, String.class));
+        APPEND_SLOT = lookup.findVirtual(SlotString.class, "appendSlot",
+            MethodType.methodType(void.class, StringBuilder.class, Map.class, String.class));
+        TO_STRING = lookup.findVirtual(StringBuilder.class, "toString", MethodType.methodType(String.class));
+        NEW_BUILDER = lookup.findConstructor(StringBuilder.class, MethodType.methodType(void.class, int.class));
+      } catch (ReflectiveOperationException e) {
+        throw new ExceptionInInitializerError(e);
+      }
+    }
+
+    /**
+     * 生成类型为 {@code (Map)String} 的专用格式化方法句柄.
+     * @param owner 提供值转换规则的格式化器.
+     * @param template 编译结果.
+     * @return 方法句柄，字符串片段过多或文本存放在文本区中时返回 {@code null}.
+     */
+    static MethodHandle generate(SlotString owner, Template template) {
+      String[] parts = template.parts;
+      int[] types = template.types;
+      if (parts == null || types.length > MAX_SEGMENTS) {
+        return null;
+      }
+      MethodHandle appendSlot = APPEND_SLOT.bindTo(owner);
+      // (StringBuilder, Map)String
+      MethodHandle chain = MethodHandles.dropArguments(TO_STRING, 1, Map.class);
+      for (int i = types.length - 1; i >= 0; --i) {
+        MethodHandle segment;
+        if (types[i] == TEXT_TYPE) {
+          segment = MethodHandles.dropArguments(MethodHandles.insertArguments(APPEND_TEXT, 1, parts[i]), 1, Map.class);
+        } else {
+          segment = MethodHandles.insertArguments(appendSlot, 2, parts[i]);
+        }
+        chain = MethodHandles.foldArguments(chain, segment);
+      }
+      int capacity = template.literalLength + template.slotCount * SLOT_CAPACITY_HINT;
+      return MethodHandles.foldArguments(chain, MethodHandles.insertArguments(NEW_BUILDER, 0, capacity));
     }
-    assemblies.add(KEY_TYPE);
-    assemblies.add(key.toString());
   }
 }
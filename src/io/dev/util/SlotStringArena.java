@@ -0,0 +1,365 @@
+package io.dev.util;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.CharBuffer;
+import java.util.HashMap;
+
+/**
+ * 编译结果的共用文本区.<br>
+ * <br>
+ * 将多个编译结果的文本片段依次存放在按页分配的 {@code char[]} 中，编译结果只保留每个字符串片段编码后的 {@code long} 值
+ * （文本片段为所在页、页内偏移和长度，键名片段为键名的位置），不再为每个文本片段持有一个 {@code String} 对象.<br>
+ * 内容相同的文本片段只存放一份，不同编译结果中名称相同的键名共用同一个 {@code String} 对象.<br>
+ * 存放的文本不会被释放，文本区的大小随存放的不同文本片段增长，适用于长期持有大量编译结果的场景.<br>
+ * 线程安全，可被多个格式化器共用.
+ *
+ * @see SlotString#SlotString(String, SlotStringArena)
+ */
+public class SlotStringArena {
+
+  /**
+   * 默认的每页字符数.
+   */
+  private static final int DEFAULT_PAGE_SIZE = 1 << 16;
+  /**
+   * 文本片段长度和页内偏移的位数.
+   */
+  private static final int LENGTH_BITS = 22;
+  /**
+   * 页序号的位数.
+   */
+  private static final int PAGE_BITS = 19;
+  /**
+   * 单个文本片段的最大长度，也是每页字符数的上限，更长的文本片段会被拆分存放.
+   */
+  private static final int MAX_LENGTH = (1 << LENGTH_BITS) - 1;
+  /**
+   * 最多的页数.
+   */
+  private static final int MAX_PAGES = 1 << PAGE_BITS;
+  /**
+   * 键名片段的标记位.
+   */
+  private static final long KEY_FLAG = 1L << 63;
+
+  /**
+   * 每页字符数.
+   */
+  private final int pageSize;
+  /**
+   * 已分配的页，每次存放新的文本片段后重新写入，使读取的线程可见新写入的文本.
+   */
+  private volatile char[][] pages = new char[0][];
+  /**
+   * 已分配的页数.
+   */
+  private int pageCount;
+  /**
+   * 当前页的序号，尚未分配时为 -1.
+   */
+  private int current = -1;
+  /**
+   * 当前页已使用的字符数.
+   */
+  private int used;
+  /**
+   * 去重表，保存编码后的文本片段，0 为空位.
+   */
+  private long[] table = new long[64];
+  /**
+   * 去重表中各文本片段的哈希值.
+   */
+  private int[] hashes = new int[64];
+  /**
+   * 存放的不同文本片段数量.
+   */
+  private int segmentCount;
+  /**
+   * 存放的字符数.
+   */
+  private long charCount;
+  /**
+   * 因内容相同而复用的文本片段数量.
+   */
+  private long dedupCount;
+  /**
+   * 共用的键名.
+   */
+  private final HashMap<String, String> keys = new HashMap<>();
+
+  /**
+   * 创建使用默认页大小的文本区.
+   */
+  public SlotStringArena() {
+    this(DEFAULT_PAGE_SIZE);
+  }
+
+  /**
+   * 创建指定页大小的文本区.<br>
+   * 超过页大小的文本片段单独分配一页.
+   * @param pageSize 每页字符数.
+   */
+  public SlotStringArena(int pageSize) {
+    if (pageSize <= 0 || pageSize > MAX_LENGTH) {
+      throw new IllegalArgumentException("pageSize must be in (0, " + MAX_LENGTH + "]: " + pageSize);
+    }
+    this.pageSize = pageSize;
+  }
+
+  /**
+   * 将编译结果的文本片段存入文本区，返回使用文本区的编译结果.
+   * @param template 编译结果.
+   * @return 使用文本区的编译结果.
+   */
+  SlotString.Template compact(SlotString.Template template) {
+    int size = template.size();
+    int count = 0;
+    for (int i = 0; i < size; ++i) {
+      int length = template.parts[i].length();
+      count += template.slot(i) < 0 ? (length + MAX_LENGTH - 1) / MAX_LENGTH : 1;
+    }
+    long[] segments = new long[count];
+    String[] keys = new String[template.keys.length];
+    synchronized (this) {
+      for (int k = 0; k < keys.length; ++k) {
+        String key = this.keys.putIfAbsent(template.keys[k], template.keys[k]);
+        keys[k] = key != null ? key : template.keys[k];
+      }
+      for (int i = 0, p = 0; i < size; ++i) {
+        int slot = template.slot(i);
+        if (slot >= 0) {
+          segments[p++] = KEY_FLAG | slot;
+          continue;
+        }
+        String text = template.parts[i];
+        for (int from = 0; from < text.length(); from += MAX_LENGTH) {
+          segments[p++] = intern(text, from, Math.min(text.length(), from + MAX_LENGTH));
+        }
+      }
+      // 发布新写入的文本
+      pages = pages;
+    }
+    return new SlotString.Template(this, segments, keys, template.counts, template.literalLength,
+        template.slotCount);
+  }
+
+  /**
+   * 查找内容相同的文本片段，不存在时存入文本区.
+   * @param text 文本.
+   * @param from 文本片段的开始位置.
+   * @param to 文本片段的结束位置.
+   * @return 编码后的文本片段.
+   */
+  private long intern(String text, int from, int to) {
+    int length = to - from;
+    int hash = 0;
+    for (int i = from; i < to; ++i) {
+      hash = 31 * hash + text.charAt(i);
+    }
+    int mask = table.length - 1;
+    int index = mix(hash) & mask;
+    char[][] pages = this.pages;
+    for (long segment; (segment = table[index]) != 0L; index = (index + 1) & mask) {
+      if (hashes[index] == hash && length(segment) == length
+          && regionMatches(pages[page(segment)], offset(segment), text, from, length)) {
+        ++dedupCount;
+        return segment;
+      }
+    }
+    long segment = store(text, from, to);
+    table[index] = segment;
+    hashes[index] = hash;
+    if (++segmentCount * 2 > table.length) {
+      rehash();
+    }
+    return segment;
+  }
+
+  /**
+   * 将文本片段写入当前页，当前页剩余空间不足时分配新页.
+   * @param text 文本.
+   * @param from 文本片段的开始位置.
+   * @param to 文本片段的结束位置.
+   * @return 编码后的文本片段.
+   */
+  private long store(String text, int from, int to) {
+    int length = to - from;
+    int index;
+    int offset;
+    if (length > pageSize) {
+      index = addPage(new char[length]);
+      offset = 0;
+    } else {
+      if (current < 0 || pageSize - used < length) {
+        current = addPage(new char[pageSize]);
+        used = 0;
+      }
+      index = current;
+      offset = used;
+      used += length;
+    }
+    text.getChars(from, to, pages[index], offset);
+    charCount += length;
+    return ((long) index << (LENGTH_BITS * 2)) | ((long) offset << LENGTH_BITS) | length;
+  }
+
+  /**
+   * 追加一页.
+   * @param page 新页.
+   * @return 新页的序号.
+   */
+  private int addPage(char[] page) {
+    if (pageCount == MAX_PAGES) {
+      throw new IllegalStateException("Arena is full: " + pageCount + " pages");
+    }
+    char[][] pages = this.pages;
+    if (pageCount == pages.length) {
+      char[][] grown = new char[Math.max(4, pageCount * 2)][];
+      System.arraycopy(pages, 0, grown, 0, pageCount);
+      pages = grown;
+    }
+    pages[pageCount] = page;
+    this.pages = pages;
+    return pageCount++;
+  }
+
+  /**
+   * 将去重表扩容为两倍.
+   */
+  private void rehash() {
+    long[] oldTable = table;
+    int[] oldHashes = hashes;
+    table = new long[oldTable.length * 2];
+    hashes = new int[oldHashes.length * 2];
+    int mask = table.length - 1;
+    for (int i = 0; i < oldTable.length; ++i) {
+      if (oldTable[i] != 0L) {
+        int index = mix(oldHashes[i]) & mask;
+        while (table[index] != 0L) {
+          index = (index + 1) & mask;
+        }
+        table[index] = oldTable[i];
+        hashes[index] = oldHashes[i];
+      }
+    }
+  }
+
+  /**
+   * 将编码后的文本片段追加到结果缓冲区.
+   * @param res 结果缓冲区.
+   * @param segment 编码后的文本片段.
+   */
+  void append(StringBuilder res, long segment) {
+    res.append(pages[page(segment)], offset(segment), length(segment));
+  }
+
+  /**
+   * 将编码后的文本片段写入输出目标.
+   * @param out 输出目标.
+   * @param segment 编码后的文本片段.
+   * @throws IOException 写入输出目标失败.
+   */
+  void appendTo(Appendable out, long segment) throws IOException {
+    char[] page = pages[page(segment)];
+    if (out instanceof StringBuilder) {
+      ((StringBuilder) out).append(page, offset(segment), length(segment));
+    } else if (out instanceof Writer) {
+      ((Writer) out).write(page, offset(segment), length(segment));
+    } else {
+      out.append(CharBuffer.wrap(page, offset(segment), length(segment)));
+    }
+  }
+
+  /**
+   * 获取编码后的字符串片段对应的键名位置.
+   * @param segment 编码后的字符串片段.
+   * @return 键名的位置，文本片段返回 -1.
+   */
+  static int slot(long segment) {
+    return segment < 0L ? (int) segment : -1;
+  }
+
+  /**
+   * @param segment 编码后的文本片段.
+   * @return 所在页的序号.
+   */
+  private static int page(long segment) {
+    return (int) (segment >>> (LENGTH_BITS * 2));
+  }
+
+  /**
+   * @param segment 编码后的文本片段.
+   * @return 页内偏移.
+   */
+  private static int offset(long segment) {
+    return (int) (segment >>> LENGTH_BITS) & MAX_LENGTH;
+  }
+
+  /**
+   * @param segment 编码后的文本片段.
+   * @return 文本片段的长度.
+   */
+  static int length(long segment) {
+    return (int) segment & MAX_LENGTH;
+  }
+
+  /**
+   * 混合哈希值的高位，减少去重表中的冲突.
+   * @param hash 文本片段的哈希值.
+   * @return 混合后的哈希值.
+   */
+  private static int mix(int hash) {
+    return hash ^ (hash >>> 16);
+  }
+
+  /**
+   * 比较页中的文本与文本片段的内容是否相同.
+   * @param page 页.
+   * @param offset 页内偏移.
+   * @param text 文本.
+   * @param from 文本片段的开始位置.
+   * @param length 比较的长度.
+   * @return 内容是否相同.
+   */
+  private static boolean regionMatches(char[] page, int offset, String text, int from, int length) {
+    for (int i = 0; i < length; ++i) {
+      if (page[offset + i] != text.charAt(from + i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @return 存放的不同文本片段数量.
+   */
+  public synchronized int segmentCount() {
+    return segmentCount;
+  }
+
+  /**
+   * @return 存放的字符数.
+   */
+  public synchronized long charCount() {
+    return charCount;
+  }
+
+  /**
+   * @return 因内容相同而复用的文本片段数量.
+   */
+  public synchronized long dedupCount() {
+    return dedupCount;
+  }
+
+  /**
+   * @return 已分配的字符数，包括各页未使用的部分.
+   */
+  public synchronized long capacity() {
+    long capacity = 0L;
+    for (int p = 0; p < pageCount; ++p) {
+      capacity += pages[p].length;
+    }
+    return capacity;
+  }
+}
@@ -0,0 +1,103 @@
+package io.dev.util;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 格式化器缓冲区池.<br>
+ * <br>
+ * 供多线程的 {@code SlotString.qformat} 方法复用结果缓冲区和键名缓冲区，避免每次调用都创建新的缓冲区.<br>
+ * 缓冲区存放在固定数量的槽位中，按线程 ID 选择起始槽位并以 CAS 取出和归还，不使用 {@code ThreadLocal}，
+ * 因此大量短生命周期的线程（例如虚拟线程）不会各自持有缓冲区.<br>
+ * 容量超过上限的缓冲区在归还时被丢弃，避免个别超大的模板字符串使缓冲区长期占用内存.<br>
+ * 线程安全，可被多个格式化器共用.
+ */
+public class SlotStringBufferPool {
+
+  /**
+   * 默认的缓冲区容量上限.
+   */
+  private static final int DEFAULT_MAX_CAPACITY = 64 * 1024;
+  /**
+   * 取出和归还缓冲区时最多尝试的槽位数.
+   */
+  private static final int MAX_PROBES = 4;
+
+  /**
+   * 缓冲区槽位.
+   */
+  private final AtomicReferenceArray<SlotString.Buffers> slots;
+  /**
+   * 可归还的缓冲区容量上限.
+   */
+  private final int maxCapacity;
+
+  /**
+   * 创建槽位数为处理器数量 2 倍的缓冲区池，使用默认的缓冲区容量上限.
+   */
+  public SlotStringBufferPool() {
+    this(Runtime.getRuntime().availableProcessors() * 2, DEFAULT_MAX_CAPACITY);
+  }
+
+  /**
+   * 创建指定槽位数和缓冲区容量上限的缓冲区池.<br>
+   * 槽位数会被调整为不小于指定值的 2 的幂.
+   * @param size 槽位数.
+   * @param maxCapacity 可归还的缓冲区容量上限（字符数）.
+   */
+  public SlotStringBufferPool(int size, int maxCapacity) {
+    if (size <= 0) {
+      throw new IllegalArgumentException("size must be positive: " + size);
+    }
+    int n = Integer.highestOneBit(size);
+    if (n < size) {
+      n <<= 1;
+    }
+    this.slots = new AtomicReferenceArray<>(n);
+    this.maxCapacity = maxCapacity;
+  }
+
+  /**
+   * 取出一组缓冲区，池中没有可用缓冲区时创建新的缓冲区.
+   * @return 已清空的缓冲区.
+   */
+  SlotString.Buffers acquire() {
+    int mask = slots.length() - 1;
+    int start = probe();
+    for (int i = 0; i < MAX_PROBES && i <= mask; ++i) {
+      SlotString.Buffers buffers = slots.getAndSet((start + i) & mask, null);
+      if (buffers != null) {
+        return buffers;
+      }
+    }
+    return new SlotString.Buffers();
+  }
+
+  /**
+   * 归还一组缓冲区.<br>
+   * 容量超过上限或池中没有空闲槽位时丢弃该缓冲区.
+   * @param buffers 缓冲区.
+   */
+  void release(SlotString.Buffers buffers) {
+    if (buffers.res.capacity() > maxCapacity || buffers.key.capacity() > maxCapacity) {
+      return;
+    }
+    buffers.res.setLength(0);
+    buffers.key.setLength(0);
+    int mask = slots.length() - 1;
+    int start = probe();
+    for (int i = 0; i < MAX_PROBES && i <= mask; ++i) {
+      if (slots.compareAndSet((start + i) & mask, null, buffers)) {
+        return;
+      }
+    }
+  }
+
+  /**
+   * 按当前线程对象的哈希值计算起始槽位，同一线程的取出和归还从同一槽位开始.
+   * @return 起始槽位.
+   */
+  private int probe() {
+    int h = Thread.currentThread().hashCode() * 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+}
@@ -0,0 +1,245 @@
+package io.dev.util;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 模板字符串编译结果缓存.<br>
+ * <br>
+ * 供 {@code SlotString.qformat} 方法复用模板字符串的编译结果，使重复出现的模板字符串获得与 {@code compile+format} 相近的速度.<br>
+ * 缓存按模板字符串的哈希值分段加锁，每段按最近最少使用的顺序淘汰，总容量不超过创建时指定的大小.<br>
+ * 未命中的模板字符串第二次出现时才准许编译并放入缓存，首次出现时只在分段的准入表中记录哈希值，由格式化器直接单遍解析，
+ * 因此大量只出现一次的模板字符串既不会付出编译的代价，也不会淘汰反复出现的模板字符串的编译结果.<br>
+ * 线程安全，可被多个格式化器共用.
+ */
+public class SlotStringCache {
+
+  /**
+   * 默认分段数.
+   */
+  private static final int DEFAULT_CONCURRENCY = 16;
+  /**
+   * 准入表容量与分段容量的倍数.
+   */
+  private static final int ADMISSION_FACTOR = 4;
+
+  /**
+   * 缓存分段.
+   */
+  private final Segment[] segments;
+  /**
+   * 命中次数.
+   */
+  private final LongAdder hits = new LongAdder();
+  /**
+   * 未命中次数.
+   */
+  private final LongAdder misses = new LongAdder();
+  /**
+   * 淘汰次数.
+   */
+  private final LongAdder evictions = new LongAdder();
+  /**
+   * 首次出现而未准许放入的次数.
+   */
+  private final LongAdder rejections = new LongAdder();
+
+  /**
+   * 创建指定容量的缓存，使用默认分段数.
+   * @param maxSize 最多缓存的模板字符串数量.
+   */
+  public SlotStringCache(int maxSize) {
+    this(maxSize, DEFAULT_CONCURRENCY);
+  }
+
+  /**
+   * 创建指定容量和分段数的缓存.<br>
+   * 分段数会被调整为不大于容量的 2 的幂.
+   * @param maxSize 最多缓存的模板字符串数量.
+   * @param concurrency 期望的并发访问线程数.
+   */
+  public SlotStringCache(int maxSize, int concurrency) {
+    if (maxSize <= 0) {
+      throw new IllegalArgumentException("maxSize must be positive: " + maxSize);
+    }
+    int n = Integer.highestOneBit(Math.max(1, Math.min(maxSize, concurrency)));
+    segments = new Segment[n];
+    for (int i = 0; i < n; ++i) {
+      segments[i] = new Segment(maxSize / n + (i < maxSize % n ? 1 : 0));
+    }
+  }
+
+  /**
+   * 查找模板字符串的编译结果.
+   * @param pattern 模板字符串.
+   * @return 编译结果，未命中时返回 {@code null}.
+   */
+  SlotString.Template get(String pattern) {
+    Segment segment = segmentFor(pattern);
+    SlotString.Template template;
+    synchronized (segment) {
+      template = segment.get(pattern);
+    }
+    if (template != null) {
+      hits.increment();
+    } else {
+      misses.increment();
+    }
+    return template;
+  }
+
+  /**
+   * 判断未命中的模板字符串是否准许编译并放入缓存.<br>
+   * 准入表中已记录该模板字符串的哈希值（此前出现过）时准许并移除记录，否则记录哈希值并拒绝.<br>
+   * 准入表按哈希值直接寻址，冲突时覆盖旧记录，大小固定；哈希值相同的不同模板字符串可能被提前准许，不影响结果.
+   * @param pattern 模板字符串.
+   * @return 是否准许放入.
+   */
+  boolean admit(String pattern) {
+    Segment segment = segmentFor(pattern);
+    boolean admitted;
+    synchronized (segment) {
+      admitted = segment.admit(pattern.hashCode());
+    }
+    if (!admitted) {
+      rejections.increment();
+    }
+    return admitted;
+  }
+
+  /**
+   * 放入模板字符串的编译结果.
+   * @param pattern 模板字符串.
+   * @param template 编译结果.
+   */
+  void put(String pattern, SlotString.Template template) {
+    Segment segment = segmentFor(pattern);
+    synchronized (segment) {
+      segment.put(pattern, template);
+    }
+  }
+
+  /**
+   * 获取命中次数.
+   * @return 命中次数.
+   */
+  public long hitCount() {
+    return hits.sum();
+  }
+
+  /**
+   * 获取未命中次数.
+   * @return 未命中次数.
+   */
+  public long missCount() {
+    return misses.sum();
+  }
+
+  /**
+   * 获取首次出现而未放入缓存（直接解析）的次数.
+   * @return 拒绝次数.
+   */
+  public long rejectionCount() {
+    return rejections.sum();
+  }
+
+  /**
+   * 获取因容量不足而淘汰的编译结果数量.
+   * @return 淘汰次数.
+   */
+  public long evictionCount() {
+    return evictions.sum();
+  }
+
+  /**
+   * 获取当前缓存的模板字符串数量.
+   * @return 缓存数量.
+   */
+  public int size() {
+    int size = 0;
+    for (Segment segment : segments) {
+      synchronized (segment) {
+        size += segment.size();
+      }
+    }
+    return size;
+  }
+
+  /**
+   * 清空缓存和准入表，计数器不变.
+   */
+  public void clear() {
+    for (Segment segment : segments) {
+      synchronized (segment) {
+        segment.clear();
+      }
+    }
+  }
+
+  private Segment segmentFor(String pattern) {
+    int h = pattern.hashCode();
+    h ^= h >>> 16;
+    return segments[h & (segments.length - 1)];
+  }
+
+  /**
+   * 按访问顺序淘汰的缓存分段.
+   */
+  private final class Segment extends LinkedHashMap<String, SlotString.Template> {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 分段容量.
+     */
+    private final int capacity;
+    /**
+     * 准入表，记录首次出现的模板字符串的哈希值（0 记为 1），未记录的位置为 0，容量为 2 的幂.
+     */
+    private final int[] seen;
+    /**
+     * 由哈希值计算准入表位置时右移的位数，取乘积的高位，与选择分段使用的低位无关.
+     */
+    private final int shift;
+
+    Segment(int capacity) {
+      super(16, 0.75f, true);
+      this.capacity = capacity;
+      this.seen = new int[Integer.highestOneBit(Math.max(capacity * ADMISSION_FACTOR - 1, 1)) << 1];
+      this.shift = Integer.numberOfLeadingZeros(seen.length) + 1;
+    }
+
+    /**
+     * 查询并更新准入表.
+     * @param hash 模板字符串的哈希值.
+     * @return 此前是否记录过该哈希值.
+     */
+    boolean admit(int hash) {
+      int h = hash == 0 ? 1 : hash;
+      int index = h * 0x9E3779B9 >>> shift;
+      if (seen[index] == h) {
+        seen[index] = 0;
+        return true;
+      }
+      seen[index] = h;
+      return false;
+    }
+
+    @Override
+    public void clear() {
+      super.clear();
+      Arrays.fill(seen, 0);
+    }
+
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<String, SlotString.Template> eldest) {
+      if (size() > capacity) {
+        evictions.increment();
+        return true;
+      }
+      return false;
+    }
+  }
+}
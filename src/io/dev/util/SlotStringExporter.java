@@ -0,0 +1,312 @@
+package io.dev.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * 编译的模板字符串的批量导出器.<br>
+ * <br>
+ * 按每行一个值来源格式化同一个编译的模板字符串，并将编码后的结果直接写入通道（如 {@code FileChannel}），
+ * 适用于按百万行数据生成 SQL 脚本等场景.<br>
+ * 每次导出只使用一个编码器，输出与全部行的格式化结果拼接后一次性编码的结果相同，UTF-16 等带字节序标记的字符集只在开头写入一次标记.<br>
+ * 字符集为 US-ASCII、ISO-8859-1、UTF-8、UTF-16BE 或 UTF-16LE 等无状态的字符集时，文本片段在创建导出器时编码一次，
+ * 每行各键名的值转换到可复用的字符缓冲区，直接编码到可复用的直接缓冲区；其余字符集的编码结果可能与前后文有关，
+ * 每行的文本片段和值依次放入字符缓冲区后整体编码.<br>
+ * 缓冲区写满时写入通道，不创建每行的输出字符串，内存占用与行数无关.<br>
+ * 创建后不可修改，每次导出使用独立的缓冲区，线程安全.
+ */
+public class SlotStringExporter {
+
+  /**
+   * 默认的直接缓冲区大小（字节）.
+   */
+  private static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+  /**
+   * 无状态的字符集，字符串各部分分别编码后拼接与整体编码的结果相同.
+   */
+  private static final List<Charset> STATELESS_CHARSETS = Arrays.asList(StandardCharsets.US_ASCII,
+      StandardCharsets.ISO_8859_1, StandardCharsets.UTF_8, StandardCharsets.UTF_16BE, StandardCharsets.UTF_16LE);
+
+  /**
+   * 转换值使用的格式化器.
+   */
+  private final SlotString slot;
+  /**
+   * 编译结果.
+   */
+  private final SlotString.Template template;
+  /**
+   * 输出的字符集.
+   */
+  private final Charset charset;
+  /**
+   * 各字符串片段编码后的文本，键名类型的字符串片段为 {@code null}，字符集不是无状态的字符集时为 {@code null}.
+   */
+  private final byte[][] literals;
+  /**
+   * 按位置排列的各键名的转义方式，不转义的键名为 {@code null}.
+   */
+  private final SlotEscape[] escapes;
+  /**
+   * 直接缓冲区大小（字节）.
+   */
+  private final int bufferSize;
+
+  /**
+   * 创建使用默认缓冲区大小的导出器.
+   * @param slot 编译的模板字符串.
+   * @param charset 输出的字符集.
+   */
+  public SlotStringExporter(SlotString slot, Charset charset) {
+    this(slot, charset, DEFAULT_BUFFER_SIZE);
+  }
+
+  /**
+   * 创建导出器.
+   * @param slot 编译的模板字符串.
+   * @param charset 输出的字符集，无法编码的字符按 {@code String.getBytes} 的规则替换.
+   * @param bufferSize 直接缓冲区大小（字节），缓冲区写满时写入通道.
+   */
+  public SlotStringExporter(SlotString slot, Charset charset, int bufferSize) {
+    if (slot.template() == null) {
+      throw new IllegalArgumentException("SlotString is not compiled");
+    }
+    if (bufferSize < 16) {
+      throw new IllegalArgumentException("bufferSize must be at least 16: " + bufferSize);
+    }
+    this.slot = slot;
+    this.template = slot.template();
+    this.charset = charset;
+    this.bufferSize = bufferSize;
+    this.escapes = new SlotEscape[template.keys.length];
+    for (int k = 0; k < escapes.length; ++k) {
+      escapes[k] = slot.escapeOf(template.keys[k]);
+    }
+    if (!STATELESS_CHARSETS.contains(charset)) {
+      this.literals = null;
+      return;
+    }
+    this.literals = new byte[template.size()][];
+    StringBuilder text = new StringBuilder();
+    for (int i = 0; i < literals.length; ++i) {
+      if (template.slot(i) < 0) {
+        text.setLength(0);
+        template.appendText(text, i);
+        literals[i] = text.toString().getBytes(charset);
+      }
+    }
+  }
+
+  /**
+   * 按顺序格式化每行的值来源并写入通道.
+   * @param rows 每行的值来源，为 {@code null} 的行全部按 {@code null} 值处理.
+   * @param channel 输出通道，从当前位置开始写入，不会被关闭.
+   * @return 写入的字节数.
+   * @throws IOException 写入通道失败.
+   */
+  public long export(Stream<? extends SlotResolver> rows, WritableByteChannel channel) throws IOException {
+    return export(rows.iterator(), channel);
+  }
+
+  /**
+   * 按顺序格式化每行的值来源并写入通道.
+   * @param rows 每行的值来源，为 {@code null} 的行全部按 {@code null} 值处理.
+   * @param channel 输出通道，从当前位置开始写入，不会被关闭.
+   * @return 写入的字节数.
+   * @throws IOException 写入通道失败.
+   */
+  public long export(Iterator<? extends SlotResolver> rows, WritableByteChannel channel) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocateDirect(bufferSize);
+    // 整个导出只重置一次编码器，带字节序标记或移位状态的字符集不会在每个值之前重新开始
+    CharsetEncoder encoder = charset.newEncoder()
+        .onMalformedInput(CodingErrorAction.REPLACE)
+        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    String[] keys = template.keys;
+    int[] starts = new int[keys.length];
+    int[] ends = new int[keys.length];
+    StringBuilder text = new StringBuilder();
+    char[] chars = new char[64];
+    CharBuffer in = CharBuffer.wrap(chars, 0, 0);
+    long written = 0;
+    while (rows.hasNext()) {
+      SlotStringListener l = SlotString.getListener();
+      long start = l != null ? System.nanoTime() : 0L;
+      Object[] values = SlotString.resolve(template, rows.next());
+      // 每个键名只转换一次，转换结果依次存放在字符缓冲区中
+      text.setLength(0);
+      for (int k = 0; k < values.length; ++k) {
+        if (values[k] == null && l != null) {
+          l.onNullSlot(template.pattern, keys[k], template.counts[k]);
+        }
+        starts[k] = text.length();
+        slot.appendValue(text, values[k], escapes[k]);
+        ends[k] = text.length();
+      }
+      int row = text.length();
+      if (literals == null) {
+        // 上一行末尾未编码的不完整字符之后按顺序放入整行的文本片段和值，一起编码
+        text.append(chars, in.position(), in.remaining());
+        for (int i = 0, size = template.size(); i < size; ++i) {
+          int k = template.slot(i);
+          if (k < 0) {
+            template.appendText(text, i);
+          } else {
+            text.append(text, starts[k], ends[k]);
+          }
+        }
+      }
+      if (chars.length < text.length()) {
+        chars = new char[Math.max(text.length(), chars.length * 2)];
+        in = CharBuffer.wrap(chars);
+      }
+      text.getChars(0, text.length(), chars, 0);
+      if (literals == null) {
+        in.limit(text.length()).position(row);
+        written += encode(encoder, in, buffer, channel);
+      } else {
+        for (int i = 0; i < literals.length; ++i) {
+          byte[] literal = literals[i];
+          if (literal != null) {
+            written += put(literal, buffer, channel);
+          } else {
+            int k = template.slot(i);
+            in.limit(ends[k]).position(starts[k]);
+            written += encode(encoder, in, buffer, channel);
+            if (in.hasRemaining()) {
+              // 值末尾不完整的字符与整体编码相同，按替换字节输出
+              written += put(encoder.replacement(), buffer, channel);
+            }
+          }
+        }
+        in.limit(0);
+      }
+      if (l != null) {
+        l.onRender(template.pattern, -1, System.nanoTime() - start);
+      }
+    }
+    written += finish(encoder, in, buffer, channel);
+    written += flush(buffer, channel);
+    return written;
+  }
+
+  /**
+   * 将编码后的文本放入缓冲区，缓冲区写满时写入通道.
+   * @param bytes 编码后的文本.
+   * @param buffer 直接缓冲区.
+   * @param channel 输出通道.
+   * @return 写入通道的字节数.
+   * @throws IOException 写入通道失败.
+   */
+  private static long put(byte[] bytes, ByteBuffer buffer, WritableByteChannel channel) throws IOException {
+    if (bytes.length <= buffer.remaining()) {
+      buffer.put(bytes);
+      return 0;
+    }
+    long written = 0;
+    for (int from = 0; from < bytes.length; ) {
+      if (!buffer.hasRemaining()) {
+        written += flush(buffer, channel);
+      }
+      int length = Math.min(buffer.remaining(), bytes.length - from);
+      buffer.put(bytes, from, length);
+      from += length;
+    }
+    return written;
+  }
+
+  /**
+   * 将字符编码到缓冲区，缓冲区写满时写入通道.<br>
+   * 编码器的状态延续到下一次编码，末尾不完整的字符留在 {@code in} 中.
+   * @param encoder 字符集编码器.
+   * @param in 待编码的字符.
+   * @param buffer 直接缓冲区.
+   * @param channel 输出通道.
+   * @return 写入通道的字节数.
+   * @throws IOException 写入通道失败.
+   */
+  private static long encode(CharsetEncoder encoder, CharBuffer in, ByteBuffer buffer, WritableByteChannel channel)
+      throws IOException {
+    long written = 0;
+    for (; ; ) {
+      CoderResult result = encoder.encode(in, buffer, false);
+      if (result.isUnderflow()) {
+        return written;
+      }
+      written += check(result, buffer, channel);
+    }
+  }
+
+  /**
+   * 编码剩余的字符并结束编码，写出编码器中保留的状态（如移位序列）.
+   * @param encoder 字符集编码器.
+   * @param in 剩余的字符.
+   * @param buffer 直接缓冲区.
+   * @param channel 输出通道.
+   * @return 写入通道的字节数.
+   * @throws IOException 写入通道失败.
+   */
+  private static long finish(CharsetEncoder encoder, CharBuffer in, ByteBuffer buffer, WritableByteChannel channel)
+      throws IOException {
+    long written = 0;
+    for (boolean flushing = false; ; ) {
+      CoderResult result = flushing ? encoder.flush(buffer) : encoder.encode(in, buffer, true);
+      if (result.isUnderflow()) {
+        if (flushing) {
+          return written;
+        }
+        flushing = true;
+      } else {
+        written += check(result, buffer, channel);
+      }
+    }
+  }
+
+  /**
+   * 处理编码器的非下溢结果，缓冲区已满时写入通道.
+   * @param result 编码结果.
+   * @param buffer 直接缓冲区.
+   * @param channel 输出通道.
+   * @return 写入通道的字节数.
+   * @throws IOException 写入通道失败或编码失败.
+   */
+  private static long check(CoderResult result, ByteBuffer buffer, WritableByteChannel channel) throws IOException {
+    if (result.isOverflow()) {
+      return flush(buffer, channel);
+    }
+    try {
+      result.throwException();
+    } catch (CharacterCodingException e) {
+      throw new IOException(e);
+    }
+    return 0;
+  }
+
+  /**
+   * 将缓冲区中的全部内容写入通道并清空缓冲区.
+   * @param buffer 直接缓冲区.
+   * @param channel 输出通道.
+   * @return 写入通道的字节数.
+   * @throws IOException 写入通道失败.
+   */
+  private static long flush(ByteBuffer buffer, WritableByteChannel channel) throws IOException {
+    buffer.flip();
+    long written = buffer.remaining();
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+    buffer.clear();
+    return written;
+  }
+}
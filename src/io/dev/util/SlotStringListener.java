@@ -0,0 +1,45 @@
+package io.dev.util;
+
+/**
+ * 格式化器的运行监听器.<br>
+ * <br>
+ * 通过 {@code SlotString.setListener} 方法设置为全局监听器后，所有格式化器在编译、格式化和遇到 {@code null} 值时回调对应的方法.<br>
+ * 未设置监听器时格式化器不计时也不回调，设置后每次调用额外读取两次纳秒时钟.<br>
+ * 回调在格式化的线程中同步执行，实现必须线程安全且尽量轻量，抛出的异常会传递给格式化方法的调用方.<br>
+ * 各方法默认不做任何处理，实现只需重写关心的方法.
+ *
+ * @see SlotStringMetrics
+ */
+public interface SlotStringListener {
+
+  /**
+   * 编译模板字符串后回调.<br>
+   * 包括构造格式化器时的编译和编译结果缓存未命中时的编译.
+   * @param pattern 模板字符串.
+   * @param segments 编译的字符串片段数量.
+   * @param nanos 编译耗时（纳秒）.
+   */
+  default void onCompile(String pattern, int segments, long nanos) {
+  }
+
+  /**
+   * 格式化一次后回调.
+   * @param pattern 模板字符串，使用 {@code bind} 方法创建的格式化器为预先填入值之前的模板字符串，
+   *     文本存放在文本区中的格式化器和流式格式化的方法为 {@code null}.
+   * @param length 输出的字符数，直接写入输出目标的方法为 -1.
+   * @param nanos 格式化耗时（纳秒）.
+   */
+  default void onRender(String pattern, int length, long nanos) {
+  }
+
+  /**
+   * 占位符对应的值为 {@code null}（包括替换表中不存在该键名）时回调.<br>
+   * 编译的模板字符串每次格式化中每个键名只回调一次，{@code occurrences} 为该键名的占位符数量；
+   * {@code qformat} 方法未使用缓存时每个占位符回调一次.
+   * @param pattern 模板字符串，文本存放在文本区中的格式化器和流式格式化的方法为 {@code null}.
+   * @param key 键名.
+   * @param occurrences 被替换为 {@code null} 值的转换结果的占位符数量.
+   */
+  default void onNullSlot(String pattern, String key, int occurrences) {
+  }
+}
@@ -0,0 +1,354 @@
+package io.dev.util;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * 格式化器运行统计.<br>
+ * <br>
+ * 作为全局运行监听器统计编译次数和耗时、格式化次数、耗时分布和输出字符数，以及被替换为 {@code null} 值的转换结果的占位符数量.<br>
+ * 除总计外，每个模板字符串单独统计一份，单独统计的模板字符串数量达到上限后，新出现的模板字符串只计入总计，
+ * 因此 {@code qformat} 方法格式化大量不同的模板字符串时不会无限占用内存.<br>
+ * 计数器和耗时分桶均使用 {@code LongAdder}，多线程同时记录不会互相争用.<br>
+ * 可注册为 JMX MBean 以便在运行时查看.
+ *
+ * <pre>
+ * SlotStringMetrics metrics = new SlotStringMetrics();
+ * metrics.register();
+ * SlotString.setListener(metrics);
+ * </pre>
+ */
+public class SlotStringMetrics implements SlotStringListener, SlotStringMetricsMBean {
+
+  /**
+   * 默认的 JMX 对象名.
+   */
+  public static final String OBJECT_NAME = "io.dev.util:type=SlotStringMetrics";
+
+  /**
+   * 默认最多单独统计的模板字符串数量.
+   */
+  private static final int DEFAULT_MAX_TEMPLATES = 1024;
+
+  /**
+   * 最多单独统计的模板字符串数量.
+   */
+  private final int maxTemplates;
+  /**
+   * 编译次数.
+   */
+  private final LongAdder compiles = new LongAdder();
+  /**
+   * 编译总耗时.
+   */
+  private final LongAdder compileNanos = new LongAdder();
+  /**
+   * 全部模板字符串的总计.
+   */
+  private final Stats total = new Stats();
+  /**
+   * 各模板字符串的单独统计.
+   */
+  private final ConcurrentHashMap<String, Stats> templates = new ConcurrentHashMap<>();
+
+  /**
+   * 创建使用默认单独统计数量上限的运行统计.
+   */
+  public SlotStringMetrics() {
+    this(DEFAULT_MAX_TEMPLATES);
+  }
+
+  /**
+   * 创建指定单独统计数量上限的运行统计.
+   * @param maxTemplates 最多单独统计的模板字符串数量，为 0 时只统计总计.
+   */
+  public SlotStringMetrics(int maxTemplates) {
+    if (maxTemplates < 0) {
+      throw new IllegalArgumentException("maxTemplates must not be negative: " + maxTemplates);
+    }
+    this.maxTemplates = maxTemplates;
+  }
+
+  @Override
+  public void onCompile(String pattern, int segments, long nanos) {
+    compiles.increment();
+    compileNanos.add(nanos);
+  }
+
+  @Override
+  public void onRender(String pattern, int length, long nanos) {
+    total.record(length, nanos);
+    Stats stats = statsFor(pattern);
+    if (stats != null) {
+      stats.record(length, nanos);
+    }
+  }
+
+  @Override
+  public void onNullSlot(String pattern, String key, int occurrences) {
+    total.nullSlots.add(occurrences);
+    Stats stats = statsFor(pattern);
+    if (stats != null) {
+      stats.nullSlots.add(occurrences);
+    }
+  }
+
+  /**
+   * 获取模板字符串的单独统计，未达到上限时创建.
+   * @param pattern 模板字符串.
+   * @return 单独统计，达到上限或模板字符串为 {@code null} 时返回 {@code null}.
+   */
+  private Stats statsFor(String pattern) {
+    if (pattern == null) {
+      return null;
+    }
+    Stats stats = templates.get(pattern);
+    if (stats == null && templates.size() < maxTemplates) {
+      stats = templates.computeIfAbsent(pattern, p -> new Stats());
+    }
+    return stats;
+  }
+
+  /**
+   * 注册为平台 MBean 服务器中使用默认对象名的 MBean.
+   * @return 注册的对象名.
+   * @throws JMException 注册失败，包括默认对象名已被注册.
+   */
+  public ObjectName register() throws JMException {
+    ObjectName name = new ObjectName(OBJECT_NAME);
+    ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+    return name;
+  }
+
+  /**
+   * 从平台 MBean 服务器中注销使用默认对象名的 MBean.
+   * @throws JMException 注销失败.
+   */
+  public static void unregister() throws JMException {
+    ObjectName name = new ObjectName(OBJECT_NAME);
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    if (server.isRegistered(name)) {
+      server.unregisterMBean(name);
+    }
+  }
+
+  @Override
+  public long getCompileCount() {
+    return compiles.sum();
+  }
+
+  @Override
+  public long getCompileNanos() {
+    return compileNanos.sum();
+  }
+
+  @Override
+  public long getRenderCount() {
+    return total.histogram.count();
+  }
+
+  @Override
+  public long getRenderNanos() {
+    return total.nanos.sum();
+  }
+
+  @Override
+  public long getOutputChars() {
+    return total.chars.sum();
+  }
+
+  @Override
+  public long getNullSlotCount() {
+    return total.nullSlots.sum();
+  }
+
+  @Override
+  public long getRenderP50Nanos() {
+    return total.histogram.percentile(0.5);
+  }
+
+  @Override
+  public long getRenderP99Nanos() {
+    return total.histogram.percentile(0.99);
+  }
+
+  @Override
+  public long getRenderP999Nanos() {
+    return total.histogram.percentile(0.999);
+  }
+
+  @Override
+  public int getTemplateCount() {
+    return templates.size();
+  }
+
+  /**
+   * 获取模板字符串的格式化次数.
+   * @param pattern 模板字符串.
+   * @return 格式化次数，未单独统计时返回 0.
+   */
+  public long renderCount(String pattern) {
+    Stats stats = pattern == null ? null : templates.get(pattern);
+    return stats == null ? 0L : stats.histogram.count();
+  }
+
+  /**
+   * 获取模板字符串的格式化耗时分位数.
+   * @param pattern 模板字符串.
+   * @param percentile 分位，取值 (0, 1].
+   * @return 分位数所在桶的上界（纳秒），未单独统计时返回 0.
+   */
+  public long renderPercentileNanos(String pattern, double percentile) {
+    Stats stats = pattern == null ? null : templates.get(pattern);
+    return stats == null ? 0L : stats.histogram.percentile(percentile);
+  }
+
+  /**
+   * 获取模板字符串中被替换为 {@code null} 值的转换结果的占位符数量.
+   * @param pattern 模板字符串.
+   * @return 占位符数量，未单独统计时返回 0.
+   */
+  public long nullSlotCount(String pattern) {
+    Stats stats = pattern == null ? null : templates.get(pattern);
+    return stats == null ? 0L : stats.nullSlots.sum();
+  }
+
+  @Override
+  public String[] topTemplates(int limit) {
+    ArrayList<Map.Entry<String, Stats>> entries = new ArrayList<>(templates.entrySet());
+    long[] counts = new long[entries.size()];
+    Integer[] order = new Integer[entries.size()];
+    for (int i = 0; i < order.length; ++i) {
+      counts[i] = entries.get(i).getValue().histogram.count();
+      order[i] = i;
+    }
+    Arrays.sort(order, (a, b) -> Long.compare(counts[b], counts[a]));
+    String[] res = new String[Math.max(0, Math.min(limit, order.length))];
+    for (int i = 0; i < res.length; ++i) {
+      Map.Entry<String, Stats> entry = entries.get(order[i]);
+      Stats stats = entry.getValue();
+      res[i] = "count=" + counts[order[i]]
+          + " p50=" + stats.histogram.percentile(0.5)
+          + "ns p99=" + stats.histogram.percentile(0.99)
+          + "ns chars=" + stats.chars.sum()
+          + " nullSlots=" + stats.nullSlots.sum()
+          + " pattern=" + entry.getKey();
+    }
+    return res;
+  }
+
+  @Override
+  public void reset() {
+    compiles.reset();
+    compileNanos.reset();
+    total.reset();
+    templates.clear();
+  }
+
+  /**
+   * 一个模板字符串或总计的统计.
+   */
+  private static final class Stats {
+    /**
+     * 格式化耗时分布，同时记录格式化次数.
+     */
+    final Histogram histogram = new Histogram();
+    /**
+     * 格式化总耗时.
+     */
+    final LongAdder nanos = new LongAdder();
+    /**
+     * 输出的总字符数.
+     */
+    final LongAdder chars = new LongAdder();
+    /**
+     * 被替换为 {@code null} 值的转换结果的占位符数量.
+     */
+    final LongAdder nullSlots = new LongAdder();
+
+    void record(int length, long nanos) {
+      histogram.record(nanos);
+      this.nanos.add(nanos);
+      if (length > 0) {
+        chars.add(length);
+      }
+    }
+
+    void reset() {
+      histogram.reset();
+      nanos.reset();
+      chars.reset();
+      nullSlots.reset();
+    }
+  }
+
+  /**
+   * 按 2 的幂分桶的耗时分布.<br>
+   * 第 b 个桶记录二进制位数为 b 的耗时，即 [2^(b-1), 2^b - 1]，第 0 个桶记录 0.
+   */
+  private static final class Histogram {
+    /**
+     * 各桶的记录次数.
+     */
+    private final LongAdder[] buckets = new LongAdder[Long.SIZE];
+
+    Histogram() {
+      for (int b = 0; b < buckets.length; ++b) {
+        buckets[b] = new LongAdder();
+      }
+    }
+
+    void record(long nanos) {
+      int b = Long.SIZE - Long.numberOfLeadingZeros(Math.max(0L, nanos));
+      buckets[Math.min(b, buckets.length - 1)].increment();
+    }
+
+    long count() {
+      long count = 0L;
+      for (LongAdder bucket : buckets) {
+        count += bucket.sum();
+      }
+      return count;
+    }
+
+    /**
+     * 计算分位数.
+     * @param percentile 分位，取值 (0, 1].
+     * @return 分位数所在桶的上界，没有记录时返回 0.
+     */
+    long percentile(double percentile) {
+      long[] counts = new long[buckets.length];
+      long count = 0L;
+      for (int b = 0; b < buckets.length; ++b) {
+        counts[b] = buckets[b].sum();
+        count += counts[b];
+      }
+      if (count == 0L) {
+        return 0L;
+      }
+      long rank = Math.max(1L, (long) Math.ceil(count * percentile));
+      long seen = 0L;
+      for (int b = 0; b < counts.length; ++b) {
+        seen += counts[b];
+        if (seen >= rank) {
+          return b == 0 ? 0L : (1L << b) - 1;
+        }
+      }
+      return Long.MAX_VALUE;
+    }
+
+    void reset() {
+      for (LongAdder bucket : buckets) {
+        bucket.reset();
+      }
+    }
+  }
+}
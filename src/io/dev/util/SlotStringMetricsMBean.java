@@ -0,0 +1,73 @@
+package io.dev.util;
+
+/**
+ * 格式化器运行统计的 JMX 管理接口.<br>
+ * <br>
+ * 耗时的分位数按 2 的幂分桶统计，返回所在桶的上界，精度为 2 倍以内.
+ *
+ * @see SlotStringMetrics
+ */
+public interface SlotStringMetricsMBean {
+
+  /**
+   * @return 编译次数.
+   */
+  long getCompileCount();
+
+  /**
+   * @return 编译总耗时（纳秒）.
+   */
+  long getCompileNanos();
+
+  /**
+   * @return 格式化次数.
+   */
+  long getRenderCount();
+
+  /**
+   * @return 格式化总耗时（纳秒）.
+   */
+  long getRenderNanos();
+
+  /**
+   * @return 输出的总字符数，不包括直接写入输出目标的格式化.
+   */
+  long getOutputChars();
+
+  /**
+   * @return 被替换为 {@code null} 值的转换结果的占位符数量.
+   */
+  long getNullSlotCount();
+
+  /**
+   * @return 格式化耗时的 50 分位数（纳秒）.
+   */
+  long getRenderP50Nanos();
+
+  /**
+   * @return 格式化耗时的 99 分位数（纳秒）.
+   */
+  long getRenderP99Nanos();
+
+  /**
+   * @return 格式化耗时的 99.9 分位数（纳秒）.
+   */
+  long getRenderP999Nanos();
+
+  /**
+   * @return 单独统计的模板字符串数量.
+   */
+  int getTemplateCount();
+
+  /**
+   * 按格式化次数从多到少列出单独统计的模板字符串.
+   * @param limit 最多列出的数量.
+   * @return 每行一个模板字符串的统计摘要.
+   */
+  String[] topTemplates(int limit);
+
+  /**
+   * 清空全部统计.
+   */
+  void reset();
+}
@@ -0,0 +1,508 @@
+package io.dev.util;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * 按名称管理的编译的模板字符串.<br>
+ * <br>
+ * 可并行编译一个目录下的全部模板文件，也可将编译结果写入二进制快照文件，下次启动时通过内存映射直接读取编译结果，不再解析模板字符串.<br>
+ * 快照文件记录每个模板的名称、模板字符串、编译的字符串片段和不同键名及其出现次数，文本按 UTF-16 存放.<br>
+ * {@link #loadOrCompile(Path, Path, String)} 按模板文件的名称、大小和修改时间判断快照文件是否过期，
+ * {@link #load(Path)} 不检查，模板文件修改后需要由调用者删除或重新写入快照文件.<br>
+ * 创建后不可修改，线程安全.
+ */
+public class SlotStringRegistry {
+
+  /**
+   * 快照文件的标识.
+   */
+  private static final int SNAPSHOT_MAGIC = 0x534C5453;
+  /**
+   * 快照文件的格式版本.
+   */
+  private static final int SNAPSHOT_VERSION = 2;
+  /**
+   * 每个并行编译任务最多编译的文件数量.
+   */
+  private static final int FILES_PER_TASK = 8;
+
+  /**
+   * 按名称排序的格式化器.
+   */
+  private final Map<String, SlotString> slots;
+
+  SlotStringRegistry(Map<String, SlotString> slots) {
+    this.slots = Collections.unmodifiableMap(slots);
+  }
+
+  /**
+   * 使用公共的 {@code ForkJoinPool} 并行编译目录及其子目录下指定后缀的全部模板文件.
+   * @param dir 模板文件目录.
+   * @param suffix 模板文件的后缀，如 {@code ".sql"}，为 {@code null} 时编译全部文件.
+   * @return 以相对于 {@code dir} 的路径（使用 / 分隔）为名称的模板.
+   * @throws IOException 读取模板文件失败.
+   */
+  public static SlotStringRegistry compile(Path dir, String suffix) throws IOException {
+    return compile(dir, suffix, ForkJoinPool.commonPool());
+  }
+
+  /**
+   * 使用指定的 {@code ForkJoinPool} 并行编译目录及其子目录下指定后缀的全部模板文件.<br>
+   * 模板文件按 UTF-8 读取.
+   * @param dir 模板文件目录.
+   * @param suffix 模板文件的后缀，如 {@code ".sql"}，为 {@code null} 时编译全部文件.
+   * @param pool 执行编译的线程池.
+   * @return 以相对于 {@code dir} 的路径（使用 / 分隔）为名称的模板.
+   * @throws IOException 读取模板文件失败.
+   */
+  public static SlotStringRegistry compile(Path dir, String suffix, ForkJoinPool pool) throws IOException {
+    List<Path> files = files(dir, suffix);
+    String[] names = new String[files.size()];
+    SlotString[] compiled = new SlotString[files.size()];
+    try {
+      pool.invoke(new CompileTask(dir, files, names, compiled, 0, files.size()));
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+    TreeMap<String, SlotString> slots = new TreeMap<>();
+    for (int i = 0; i < names.length; ++i) {
+      slots.put(names[i], compiled[i]);
+    }
+    return new SlotStringRegistry(slots);
+  }
+
+  /**
+   * 查找目录及其子目录下指定后缀的全部模板文件.
+   * @param dir 模板文件目录.
+   * @param suffix 模板文件的后缀，为 {@code null} 时查找全部文件.
+   * @return 模板文件.
+   * @throws IOException 遍历目录失败.
+   */
+  private static List<Path> files(Path dir, String suffix) throws IOException {
+    try (Stream<Path> walk = Files.walk(dir)) {
+      return walk.filter(Files::isRegularFile)
+          .filter(file -> suffix == null || file.getFileName().toString().endsWith(suffix))
+          .collect(Collectors.toList());
+    }
+  }
+
+  /**
+   * 计算目录下模板文件的指纹，由各模板文件的名称、大小和修改时间按名称顺序组合而成.<br>
+   * 增加、删除、重命名或修改模板文件后指纹随之改变，不读取文件内容.
+   * @param dir 模板文件目录.
+   * @param suffix 模板文件的后缀，为 {@code null} 时包括全部文件.
+   * @return 指纹，不为 0.
+   * @throws IOException 遍历目录或读取文件属性失败.
+   */
+  private static long fingerprint(Path dir, String suffix) throws IOException {
+    TreeMap<String, BasicFileAttributes> sources = new TreeMap<>();
+    // 遍历目录时直接使用读取到的文件属性，不再逐个读取
+    Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+
+      @Override
+      public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+        // 与编译时一致，符号链接按其指向的文件处理
+        BasicFileAttributes target = attrs.isSymbolicLink()
+            ? Files.readAttributes(file, BasicFileAttributes.class) : attrs;
+        if (target.isRegularFile() && (suffix == null || file.getFileName().toString().endsWith(suffix))) {
+          sources.put(name(dir, file), target);
+        }
+        return FileVisitResult.CONTINUE;
+      }
+
+    });
+    long hash = SNAPSHOT_MAGIC;
+    for (Map.Entry<String, BasicFileAttributes> source : sources.entrySet()) {
+      hash = hash * 1000003L + source.getKey().hashCode();
+      hash = hash * 1000003L + source.getValue().size();
+      hash = hash * 1000003L + source.getValue().lastModifiedTime().toMillis();
+    }
+    return hash == 0L ? 1L : hash;
+  }
+
+  /**
+   * 获取模板文件的名称.
+   * @param dir 模板文件目录.
+   * @param file 模板文件.
+   * @return 相对于 {@code dir} 的路径（使用 / 分隔）.
+   */
+  static String name(Path dir, Path file) {
+    ArrayList<String> elements = new ArrayList<>();
+    for (Path element : dir.relativize(file)) {
+      elements.add(element.toString());
+    }
+    return String.join("/", elements);
+  }
+
+  /**
+   * @return 按名称排序的全部格式化器，不可修改.
+   */
+  Map<String, SlotString> slots() {
+    return slots;
+  }
+
+  /**
+   * 快照文件未过期时从快照文件读取编译结果，否则使用公共的 {@code ForkJoinPool} 并行编译模板文件并重新写入快照文件.<br>
+   * 快照文件中记录了写入时模板文件的指纹（各模板文件的名称、大小和修改时间），
+   * 与当前模板文件的指纹不同、快照文件不存在或无效时视为过期.
+   * @param snapshot 快照文件.
+   * @param dir 模板文件目录.
+   * @param suffix 模板文件的后缀，如 {@code ".sql"}，为 {@code null} 时编译全部文件.
+   * @return 以相对于 {@code dir} 的路径（使用 / 分隔）为名称的模板.
+   * @throws IOException 读取模板文件或写入快照文件失败.
+   */
+  public static SlotStringRegistry loadOrCompile(Path snapshot, Path dir, String suffix) throws IOException {
+    // 先计算指纹再编译，编译期间被修改的模板文件在下次启动时仍视为过期
+    long fingerprint = fingerprint(dir, suffix);
+    if (Files.isRegularFile(snapshot)) {
+      try {
+        MappedByteBuffer buffer = map(snapshot);
+        if (buffer.getLong(8) == fingerprint) {
+          return load(snapshot, buffer);
+        }
+      } catch (IOException | RuntimeException e) {
+        // 无效的快照文件按过期处理
+      }
+    }
+    SlotStringRegistry registry = compile(dir, suffix);
+    registry.writeSnapshot(snapshot, fingerprint);
+    return registry;
+  }
+
+  /**
+   * 从快照文件读取编译结果.<br>
+   * 快照文件通过内存映射读取，全部文本和片段表各一次性批量复制，不解析模板字符串，
+   * 不同键名及其出现次数直接从快照文件读取，不再重新统计，快照文件中位置相同的文本共用同一个 {@code String} 对象.<br>
+   * 不检查模板文件是否已修改，需要检查时使用 {@link #loadOrCompile(Path, Path, String)}.
+   * @param snapshot 快照文件.
+   * @return 快照文件中的模板.
+   * @throws IOException 读取快照文件失败或文件不是有效的快照文件.
+   */
+  public static SlotStringRegistry load(Path snapshot) throws IOException {
+    return load(snapshot, map(snapshot));
+  }
+
+  /**
+   * 以只读方式内存映射快照文件.
+   * @param snapshot 快照文件.
+   * @return 映射的快照文件内容.
+   * @throws IOException 读取快照文件失败.
+   */
+  private static MappedByteBuffer map(Path snapshot) throws IOException {
+    try (FileChannel channel = FileChannel.open(snapshot, StandardOpenOption.READ)) {
+      return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+  }
+
+  /**
+   * 从映射的快照文件内容读取编译结果.
+   * @param snapshot 快照文件.
+   * @param buffer 映射的快照文件内容.
+   * @return 快照文件中的模板.
+   * @throws IOException 文件不是有效的快照文件.
+   */
+  private static SlotStringRegistry load(Path snapshot, MappedByteBuffer buffer) throws IOException {
+    try {
+      if (buffer.remaining() < 4 || buffer.getInt() != SNAPSHOT_MAGIC) {
+        throw new IOException("Not a SlotString snapshot: " + snapshot);
+      }
+      int version = buffer.getInt();
+      if (version != SNAPSHOT_VERSION) {
+        throw new IOException("Unsupported SlotString snapshot version " + version + ": " + snapshot);
+      }
+      // 跳过模板文件的指纹
+      buffer.getLong();
+      int count = buffer.getInt();
+      char[] text = new char[buffer.getInt()];
+      buffer.asCharBuffer().get(text);
+      buffer.position(buffer.position() + text.length * 2);
+      int[] table = new int[buffer.getInt()];
+      buffer.asIntBuffer().get(table);
+      HashMap<Long, String> strings = new HashMap<>();
+      TreeMap<String, SlotString> slots = new TreeMap<>();
+      for (int n = 0, p = 0; n < count; ++n) {
+        String name = readString(text, table, p, strings);
+        String pattern = readString(text, table, p + 2, strings);
+        int size = table[p + 4];
+        String[] keys = new String[table[p + 5]];
+        int literalLength = table[p + 6];
+        int slotCount = table[p + 7];
+        p += 8;
+        for (int k = 0; k < keys.length; ++k, p += 2) {
+          keys[k] = readString(text, table, p, strings);
+        }
+        int[] counts = Arrays.copyOfRange(table, p, p + keys.length);
+        p += keys.length;
+        String[] parts = new String[size];
+        int[] types = new int[size];
+        int[] positions = new int[size];
+        for (int i = 0; i < size; ++i) {
+          int slot = table[p++];
+          positions[i] = slot;
+          if (slot < 0) {
+            types[i] = SlotString.TEXT_TYPE;
+            parts[i] = readString(text, table, p, strings);
+            p += 2;
+          } else {
+            types[i] = SlotString.KEY_TYPE;
+            parts[i] = keys[slot];
+          }
+        }
+        slots.put(name, new SlotString(new SlotString.Template(pattern, parts, types, positions, keys, counts,
+            literalLength, slotCount)));
+      }
+      return new SlotStringRegistry(slots);
+    } catch (RuntimeException e) {
+      throw new IOException("Corrupted SlotString snapshot: " + snapshot, e);
+    }
+  }
+
+  /**
+   * 按片段表中记录的偏移和长度从全部文本中读取文本.
+   * @param text 全部文本.
+   * @param table 片段表.
+   * @param index 偏移在片段表中的下标，长度紧随其后.
+   * @param strings 已读取的文本.
+   * @return 文本，长度为 -1 时返回 {@code null}.
+   */
+  private static String readString(char[] text, int[] table, int index, HashMap<Long, String> strings) {
+    int offset = table[index];
+    int length = table[index + 1];
+    if (length < 0) {
+      return null;
+    }
+    Long position = ((long) offset << 32) | length;
+    String value = strings.get(position);
+    if (value == null) {
+      value = new String(text, offset, length);
+      strings.put(position, value);
+    }
+    return value;
+  }
+
+  /**
+   * 将全部编译结果写入快照文件，已存在的文件会被覆盖.<br>
+   * 快照文件依次为标识、版本、模板文件的指纹、模板数量、全部文本（UTF-16）和片段表，片段表中的文本以在全部文本中的偏移和长度表示，
+   * 每个模板依次为名称、模板字符串（长度为 -1 表示 {@code null}）、片段数量、不同键名数量、文本总长度、键名片段数量、
+   * 各键名的偏移和长度、各键名的出现次数和各片段的键名位置（文本片段为 -1，其后为文本的偏移和长度）.<br>
+   * 内容相同的文本在全部文本中只写入一次.<br>
+   * 写入的快照文件不记录模板文件的指纹，{@link #loadOrCompile(Path, Path, String)} 总是视其为过期.
+   * @param snapshot 快照文件.
+   * @throws IOException 写入快照文件失败.
+   */
+  public void writeSnapshot(Path snapshot) throws IOException {
+    writeSnapshot(snapshot, 0L);
+  }
+
+  /**
+   * 将全部编译结果和模板文件的指纹写入快照文件，已存在的文件会被覆盖.
+   * @param snapshot 快照文件.
+   * @param fingerprint 模板文件的指纹，0 表示未知.
+   * @throws IOException 写入快照文件失败.
+   */
+  private void writeSnapshot(Path snapshot, long fingerprint) throws IOException {
+    StringBuilder text = new StringBuilder();
+    HashMap<String, Integer> offsets = new HashMap<>();
+    int[] table = new int[64];
+    int length = 0;
+    StringBuilder part = new StringBuilder();
+    for (Map.Entry<String, SlotString> entry : slots.entrySet()) {
+      SlotString.Template template = entry.getValue().template();
+      table = ensureCapacity(table, length + 8 + template.keys.length * 3 + template.size() * 3);
+      length = appendText(text, offsets, table, length, entry.getKey());
+      length = appendText(text, offsets, table, length, template.pattern);
+      table[length++] = template.size();
+      table[length++] = template.keys.length;
+      table[length++] = template.literalLength;
+      table[length++] = template.slotCount;
+      for (String key : template.keys) {
+        length = appendText(text, offsets, table, length, key);
+      }
+      System.arraycopy(template.counts, 0, table, length, template.counts.length);
+      length += template.counts.length;
+      for (int i = 0; i < template.size(); ++i) {
+        int slot = template.slot(i);
+        table[length++] = slot;
+        if (slot < 0) {
+          part.setLength(0);
+          template.appendText(part, i);
+          length = appendText(text, offsets, table, length, part.toString());
+        }
+      }
+    }
+    ByteBuffer buffer = ByteBuffer.allocate(28 + text.length() * 2 + length * 4);
+    buffer.putInt(SNAPSHOT_MAGIC).putInt(SNAPSHOT_VERSION).putLong(fingerprint).putInt(slots.size())
+        .putInt(text.length());
+    buffer.asCharBuffer().put(text.toString());
+    buffer.position(buffer.position() + text.length() * 2);
+    buffer.putInt(length);
+    buffer.asIntBuffer().put(table, 0, length);
+    buffer.position(0);
+    try (FileChannel channel = FileChannel.open(snapshot, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+        StandardOpenOption.TRUNCATE_EXISTING)) {
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+    }
+  }
+
+  /**
+   * 将文本追加到全部文本，并在片段表中记录其偏移和长度，内容相同的文本复用已写入的位置.
+   * @param text 全部文本.
+   * @param offsets 已写入的文本的偏移.
+   * @param table 片段表.
+   * @param length 片段表的已用长度.
+   * @param value 追加的文本，为 {@code null} 时长度记为 -1.
+   * @return 片段表的新长度.
+   */
+  private static int appendText(StringBuilder text, HashMap<String, Integer> offsets, int[] table, int length,
+      String value) {
+    if (value == null) {
+      table[length++] = 0;
+      table[length++] = -1;
+      return length;
+    }
+    Integer offset = offsets.get(value);
+    if (offset == null) {
+      offset = text.length();
+      offsets.put(value, offset);
+      text.append(value);
+    }
+    table[length++] = offset;
+    table[length++] = value.length();
+    return length;
+  }
+
+  /**
+   * 确保片段表的容量.
+   * @param table 片段表.
+   * @param capacity 需要的容量.
+   * @return 容量足够的片段表.
+   */
+  private static int[] ensureCapacity(int[] table, int capacity) {
+    if (capacity <= table.length) {
+      return table;
+    }
+    return Arrays.copyOf(table, Math.max(capacity, table.length * 2));
+  }
+
+  /**
+   * 获取指定名称的格式化器.
+   * @param name 模板名称.
+   * @return 格式化器，不存在时返回 {@code null}.
+   */
+  public SlotString get(String name) {
+    return slots.get(name);
+  }
+
+  /**
+   * 获取指定名称的编译的模板.
+   * @param name 模板名称.
+   * @return 编译的模板，不存在时返回 {@code null}.
+   */
+  public CompiledTemplate template(String name) {
+    SlotString slot = slots.get(name);
+    return slot == null ? null : slot.compiled();
+  }
+
+  /**
+   * @return 按名称排序的全部模板名称.
+   */
+  public Set<String> names() {
+    return slots.keySet();
+  }
+
+  /**
+   * @return 模板数量.
+   */
+  public int size() {
+    return slots.size();
+  }
+
+  /**
+   * 并行读取和编译模板文件的任务.<br>
+   * 文件数量超过 {@code FILES_PER_TASK} 时二分为两个子任务.
+   */
+  private static final class CompileTask extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 模板文件目录.
+     */
+    private final Path dir;
+    /**
+     * 全部模板文件.
+     */
+    private final List<Path> files;
+    /**
+     * 按文件下标写入的模板名称.
+     */
+    private final String[] names;
+    /**
+     * 按文件下标写入的格式化器.
+     */
+    private final SlotString[] compiled;
+    /**
+     * 本任务编译的第一个文件的下标.
+     */
+    private final int from;
+    /**
+     * 本任务编译的最后一个文件之后的下标.
+     */
+    private final int to;
+
+    CompileTask(Path dir, List<Path> files, String[] names, SlotString[] compiled, int from, int to) {
+      this.dir = dir;
+      this.files = files;
+      this.names = names;
+      this.compiled = compiled;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected void compute() {
+      if (to - from > FILES_PER_TASK) {
+        int mid = (from + to) >>> 1;
+        invokeAll(new CompileTask(dir, files, names, compiled, from, mid),
+            new CompileTask(dir, files, names, compiled, mid, to));
+        return;
+      }
+      for (int i = from; i < to; ++i) {
+        Path file = files.get(i);
+        String pattern;
+        try {
+          pattern = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+        names[i] = name(dir, file);
+        compiled[i] = new SlotString(pattern);
+      }
+    }
+  }
+}
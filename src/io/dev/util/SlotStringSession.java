@@ -0,0 +1,199 @@
+package io.dev.util;
+
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * 编译的模板字符串的增量格式化会话.<br>
+ * <br>
+ * 通过 {@code SlotString.session} 方法创建，记录上次格式化时各键名的值、转换结果和各字符串片段在输出字符串中的位置.<br>
+ * 再次格式化时按创建时指定的规则检测各键名的值是否变化：按引用检测时只有替换为另一个对象才算变化，
+ * 按 {@code equals} 方法检测时内容相同的新对象不算变化；检测为变化的值会重新转换，转换结果与上次相同时仍视为未变化.<br>
+ * 没有键名变化时直接返回上次的输出字符串；否则只写入变化的键名，其余文本和占位符从上次的输出字符串整段复制.<br>
+ * 原地修改的可变对象（如 {@code Date}）无法被检测，修改后需调用 {@link #invalidate()}.<br>
+ * 会话不是线程安全的.
+ */
+public final class SlotStringSession {
+
+  /**
+   * 创建会话的格式化器，用于转换值.
+   */
+  private final SlotString slot;
+  /**
+   * 编译结果.
+   */
+  private final SlotString.Template template;
+  /**
+   * 是否按引用检测值变化.
+   */
+  private final boolean identity;
+  /**
+   * 按位置排列的上次格式化时各键名的值.
+   */
+  private final Object[] values;
+  /**
+   * 按位置排列的上次格式化时各键名的转换结果.
+   */
+  private final String[] texts;
+  /**
+   * 各字符串片段在上次输出字符串中的起始位置.
+   */
+  private final int[] offsets;
+  /**
+   * 上次的输出字符串，未格式化或已失效时为 {@code null}.
+   */
+  private String output;
+  /**
+   * 上次格式化时转换结果变化的键名数量.
+   */
+  private int changedKeys;
+
+  SlotStringSession(SlotString slot, SlotString.Template template, boolean identity) {
+    this.slot = slot;
+    this.template = template;
+    this.identity = identity;
+    this.values = new Object[template.keys.length];
+    this.texts = new String[template.keys.length];
+    this.offsets = new int[template.size()];
+  }
+
+  /**
+   * 按替换表增量格式化.
+   * @param dest 占位符替换表.
+   * @return 输出字符串，与 {@code SlotString.format} 方法的结果相同.
+   */
+  public String render(Map<String, Object> dest) {
+    return render(SlotResolvers.map(dest));
+  }
+
+  /**
+   * 按值来源增量格式化.
+   * @param resolver 占位符的值来源，为 {@code null} 时全部按 {@code null} 值处理.
+   * @return 输出字符串，与 {@code SlotString.format} 方法的结果相同.
+   */
+  public String render(SlotResolver resolver) {
+    SlotStringListener l = SlotString.getListener();
+    long start = l != null ? System.nanoTime() : 0L;
+    Object[] current = SlotString.resolve(template, resolver);
+    String res = output == null ? renderAll(current, l) : renderChanged(current, l);
+    if (l != null) {
+      l.onRender(template.pattern, res.length(), System.nanoTime() - start);
+    }
+    return res;
+  }
+
+  /**
+   * 转换全部键名的值并完整格式化.
+   * @param current 按位置排列的各键名的值.
+   * @param l 全局监听器.
+   * @return 输出字符串.
+   */
+  private String renderAll(Object[] current, SlotStringListener l) {
+    int length = template.literalLength;
+    for (int k = 0; k < current.length; ++k) {
+      values[k] = current[k];
+      texts[k] = convert(k, current[k], l);
+      length += texts[k].length() * template.counts[k];
+    }
+    StringBuilder res = new StringBuilder(length);
+    for (int i = 0, size = template.size(); i < size; ++i) {
+      offsets[i] = res.length();
+      int slot = template.slot(i);
+      if (slot < 0) {
+        template.appendText(res, i);
+      } else {
+        res.append(texts[slot]);
+      }
+    }
+    changedKeys = current.length;
+    output = res.toString();
+    return output;
+  }
+
+  /**
+   * 只转换值变化的键名，其余部分从上次的输出字符串复制.
+   * @param current 按位置排列的各键名的值.
+   * @param l 全局监听器.
+   * @return 输出字符串.
+   */
+  private String renderChanged(Object[] current, SlotStringListener l) {
+    String[] changed = null;
+    int length = output.length();
+    int count = 0;
+    for (int k = 0; k < current.length; ++k) {
+      Object val = current[k];
+      if (identity ? val == values[k] : Objects.equals(val, values[k])) {
+        if (val == null && l != null) {
+          l.onNullSlot(template.pattern, template.keys[k], template.counts[k]);
+        }
+        continue;
+      }
+      values[k] = val;
+      String text = convert(k, val, l);
+      if (!text.equals(texts[k])) {
+        if (changed == null) {
+          changed = new String[current.length];
+        }
+        changed[k] = text;
+        length += (text.length() - texts[k].length()) * template.counts[k];
+        ++count;
+      }
+    }
+    changedKeys = count;
+    if (changed == null) {
+      return output;
+    }
+    StringBuilder res = new StringBuilder(length);
+    // 上次输出字符串中尚未复制的未变化部分的起始位置
+    int from = 0;
+    for (int i = 0, size = template.size(); i < size; ++i) {
+      int slot = template.slot(i);
+      if (slot < 0 || changed[slot] == null) {
+        offsets[i] = res.length() + offsets[i] - from;
+        continue;
+      }
+      int old = offsets[i];
+      res.append(output, from, old);
+      offsets[i] = res.length();
+      res.append(changed[slot]);
+      from = old + texts[slot].length();
+    }
+    res.append(output, from, output.length());
+    for (int k = 0; k < changed.length; ++k) {
+      if (changed[k] != null) {
+        texts[k] = changed[k];
+      }
+    }
+    output = res.toString();
+    return output;
+  }
+
+  /**
+   * 转换并按转义方式转义一个键名的值，值为 {@code null} 时通知全局监听器.
+   * @param k 键名的位置.
+   * @param val 键名的值.
+   * @param l 全局监听器.
+   * @return 转换结果.
+   */
+  private String convert(int k, Object val, SlotStringListener l) {
+    if (val == null && l != null) {
+      l.onNullSlot(template.pattern, template.keys[k], template.counts[k]);
+    }
+    return slot.slotText(k, val);
+  }
+
+  /**
+   * 使上次的格式化结果失效，下次格式化时重新转换全部键名的值.<br>
+   * 原地修改了替换表中的可变对象后需调用该方法.
+   */
+  public void invalidate() {
+    output = null;
+  }
+
+  /**
+   * @return 上次格式化时转换结果变化的键名数量，首次格式化或失效后的格式化为全部键名数量.
+   */
+  public int changedKeys() {
+    return changedKeys;
+  }
+}
@@ -1,25 +1,64 @@
 package io.dev.util;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.lang.management.ManagementFactory;
 import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
 import java.text.SimpleDateFormat;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Random;
 import java.util.StringJoiner;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
 
 final class SlotStringTest {
   
   private static final int PARALLEL_THREAD_NUMBER = 32;
   
-  private static final int PERFORMANCE_TEST_LOOP_TIMES = 500000;
+  // 只在 -Dslotstring.performance=true 时测量耗时，默认只检查输出；调优以 benchmark 模块的 JMH 结果为准
+  private static final boolean PERFORMANCE_TIMING = Boolean.getBoolean("slotstring.performance");
+  
+  private static final int PERFORMANCE_TEST_LOOP_TIMES = PERFORMANCE_TIMING ? 500000 : 100;
+  
+  private static final long STREAM_TEST_CHARS = 16L * 1024 * 1024;
 
   private List<TestCase> testCases;
 
@@ -33,8 +72,27 @@ final class SlotStringTest {
     
     genTestCases();
     testQformat();
+    testPooledQformat();
     testCompileFormat();
     testMixedFormat();
+    testCachedQformat();
+    testFormatTo();
+    testFormatSlots();
+    testGeneratedFormat();
+    testConverters();
+    testBind();
+    testMetrics();
+    testArena();
+    testRegistry();
+    testResolvers();
+    testAsync();
+    testParallel();
+    testSession();
+    testExporter();
+    testEscape();
+    testCompiledTemplate();
+    testWatcher();
+    testStream();
     testOverrideAsStringFormat();
     testPerformance();
     
@@ -109,6 +167,11 @@ final class SlotStringTest {
     testCases.add(new TestCase("E3", "[#{a}]", "[\\#\\{a}]", dest));
     // WRONG UNEXPECTED BEHAVIOR: No closed slot
     testCases.add(new TestCase("E4", "[", "[#{a]", dest));
+    // repeated prefix symbols, only the last one before open curly starts a slot
+    testCases.add(new TestCase("C14", "[#0v0] [$0v0] [{}]", "[##{a}] [$${a}] [\\{\\}]", dest));
+    // WRONG UNEXPECTED BEHAVIOR: Dangling prefix symbol or escape at the end
+    testCases.add(new TestCase("E5", "[0v0]", "[{a}]#", dest));
+    testCases.add(new TestCase("E6", "[0v0]", "[{a}]\\", dest));
     
     logi("genTestCases", "Test Case Generated");
   }
@@ -122,9 +185,44 @@ final class SlotStringTest {
     testDiscreteBufferQformat();
     logi(tag, "Discrete Buffer Qformat Test On Multi Thread Passed");
     
+    testCanonicalKeyQformat();
+    logi(tag, "Canonical Key Qformat Test Passed");
+    
     logi(tag, "All Qformat Test Passed");
   }
   
+  private void testCanonicalKeyQformat() {
+    final List<Object> lookups = new ArrayList<>();
+    Map<String, Object> dest = new HashMap<String, Object>() {
+
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      public Object get(Object key) {
+        lookups.add(key);
+        return super.get(key);
+      }
+      
+    };
+    dest.put("YEAR", 2023);
+    SlotString target = new SlotString(false);
+    assertEquals("CK1", "2023 2023", target.qformat("{YEAR} ${YEAR}", dest));
+    assertEquals("CK2", "2023", target.qformat("#{YEAR}", dest));
+    assertEquals("CK3", "true", String.valueOf(lookups.get(0) == lookups.get(1) && lookups.get(1) == lookups.get(2)));
+    
+    // keys beyond the table limit are still resolved, just not shared
+    StringBuilder pattern = new StringBuilder();
+    StringBuilder expected = new StringBuilder();
+    for (int i = 0; i < 300; ++i) {
+      dest.put("K" + i, i);
+      pattern.append("{K").append(i).append('}');
+      expected.append(i);
+    }
+    for (int round = 0; round < 2; ++round) {
+      assertEquals("CK4", expected.toString(), target.qformat(pattern.toString(), dest));
+    }
+  }
+  
   private void testSharedBufferQformat() {
     SlotString target = new SlotString(false);
     runQformatTest(target);
@@ -143,6 +241,28 @@ final class SlotStringTest {
     }
   }
 
+  private void testPooledQformat() {
+    String tag = "testPooledQformat";
+    
+    final SlotString target = new SlotString(new SlotStringBufferPool());
+    runOnMultiThread(() -> {
+      runQformatTest(target);
+      runQformatTest(target);
+    });
+    logi(tag, "Pooled Buffer Qformat Test On Multi Thread Passed");
+    
+    SlotStringBufferPool pool = new SlotStringBufferPool(1, 16);
+    SlotString.Buffers buffers = pool.acquire();
+    pool.release(buffers);
+    assertEquals("PB1", "true", String.valueOf(buffers == pool.acquire()));
+    buffers.res.append("/* LONGER THAN 16 CHARS */");
+    pool.release(buffers);
+    assertEquals("PB2", "false", String.valueOf(buffers == pool.acquire()));
+    logi(tag, "Buffer Capacity Limit Test Passed");
+    
+    logi(tag, "All Pooled Qformat Test Passed");
+  }
+
   private void testCompileFormat() {
     String tag = "testCompileFormat";
     
@@ -187,6 +307,1266 @@ final class SlotStringTest {
     logi("testMixedFormat", "Mixed Format Test Passed");
   }
   
+  private void testCachedQformat() {
+    String tag = "testCachedQformat";
+    
+    SlotStringCache cache = new SlotStringCache(testCases.size() * 2);
+    runQformatTest(new SlotString(false, cache));
+    runQformatTest(new SlotString(false, cache));
+    logi(tag, "Shared Buffer Cached Qformat Test Passed");
+    
+    final SlotString target = new SlotString(true, cache);
+    runOnMultiThread(() -> runQformatTest(target));
+    logi(tag, "Discrete Buffer Cached Qformat Test On Multi Thread Passed");
+    
+    testCacheCounters();
+    logi(tag, "Cache Counters Test Passed");
+    
+    logi(tag, "All Cached Qformat Test Passed");
+  }
+  
+  private void testCacheCounters() {
+    SlotStringCache cache = new SlotStringCache(2, 1);
+    SlotString target = new SlotString(false, cache);
+    Map<String, Object> dest = new HashMap<>();
+    dest.put("a", "A");
+    
+    // 第二次出现时才放入缓存
+    assertEquals("CC1", "1A", target.qformat("1{a}", dest));
+    assertEquals("CC2", "1A", target.qformat("1{a}", dest));
+    assertEquals("CC3", "2A", target.qformat("2{a}", dest));
+    assertEquals("CC4", "2A", target.qformat("2{a}", dest));
+    assertEquals("CC5", "3A", target.qformat("3{a}", dest));
+    assertEquals("CC6", "3A", target.qformat("3{a}", dest));
+    assertEquals("CC7", "1A", target.qformat("1{a}", dest));
+    
+    assertEquals("CC8", "0", String.valueOf(cache.hitCount()));
+    assertEquals("CC9", "7", String.valueOf(cache.missCount()));
+    assertEquals("CC10", "4", String.valueOf(cache.rejectionCount()));
+    assertEquals("CC11", "1", String.valueOf(cache.evictionCount()));
+    assertEquals("CC12", "2", String.valueOf(cache.size()));
+    assertEquals("CC13", "3A", target.qformat("3{a}", dest));
+    assertEquals("CC14", "1", String.valueOf(cache.hitCount()));
+    
+    // 大量只出现一次的模板字符串不会淘汰反复出现的模板字符串
+    cache = new SlotStringCache(2, 1);
+    target = new SlotString(false, cache);
+    for (int i = 0; i < 2; ++i) {
+      assertEquals("CC15", "HOT1A", target.qformat("HOT1{a}", dest));
+      assertEquals("CC15", "HOT2A", target.qformat("HOT2{a}", dest));
+    }
+    for (int i = 0; i < 1000; ++i) {
+      assertEquals("CC16", "ONCE" + i + "A", target.qformat("ONCE" + i + "{a}", dest));
+      if (i % 100 == 0) {
+        assertEquals("CC17", "HOT1A", target.qformat("HOT1{a}", dest));
+        assertEquals("CC17", "HOT2A", target.qformat("HOT2{a}", dest));
+      }
+    }
+    assertEquals("CC18", "0", String.valueOf(cache.evictionCount()));
+    assertEquals("CC19", "20", String.valueOf(cache.hitCount()));
+    assertEquals("CC20", "2", String.valueOf(cache.size()));
+  }
+
+  private void testFormatTo() {
+    String tag = "testFormatTo";
+    
+    SlotString shared = new SlotString(false);
+    SlotString cached = new SlotString(false, new SlotStringCache(testCases.size()));
+    try {
+      for (TestCase testCase : testCases) {
+        String expected = testCase.expected == null ? "" : testCase.expected;
+        
+        StringWriter writer = new StringWriter();
+        shared.qformatTo(writer, testCase.pattern, testCase.dest);
+        assertEquals(testCase.id, expected, writer.toString());
+        
+        StringBuilder builder = new StringBuilder();
+        cached.qformatTo(builder, testCase.pattern, testCase.dest);
+        assertEquals(testCase.id, expected, builder.toString());
+        
+        writer = new StringWriter();
+        new SlotString(testCase.pattern).formatTo(writer, testCase.dest);
+        assertEquals(testCase.id, expected, writer.toString());
+      }
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    logi(tag, "Qformat And Compile+Format To Appendable Test Passed");
+    
+    final SlotString target = new SlotString(true);
+    runOnMultiThread(() -> {
+      for (TestCase testCase : testCases) {
+        StringBuilder builder = new StringBuilder();
+        try {
+          target.qformatTo(builder, testCase.pattern, testCase.dest);
+        } catch (IOException e) {
+          throw new RuntimeException(e);
+        }
+        assertEquals(testCase.id, testCase.expected == null ? "" : testCase.expected, builder.toString());
+      }
+    });
+    logi(tag, "Discrete Buffer Qformat To Appendable Test On Multi Thread Passed");
+    
+    logi(tag, "All Format To Appendable Test Passed");
+  }
+
+  private void testFormatSlots() {
+    String tag = "testFormatSlots";
+    
+    for (TestCase testCase : testCases) {
+      SlotString target = new SlotString(testCase.pattern);
+      String[] keys = target.slotKeys();
+      Object[] values = null;
+      if (keys != null && testCase.dest != null) {
+        values = new Object[keys.length];
+        for (int i = 0; i < keys.length; ++i) {
+          values[i] = testCase.dest.get(keys[i]);
+        }
+      }
+      assertEquals(testCase.id, testCase.expected, target.formatSlots(values));
+    }
+    logi(tag, "Format Slots Test Passed");
+    
+    SlotString target = new SlotString("[{b}] [${a}] [#{b}] [{c}]");
+    assertEquals("FS1", "{b=0, a=1, c=2}", target.slotIndexes().toString());
+    assertEquals("FS2", "[B] [A] [B] []", target.formatSlots(new Object[] { "B", "A" }));
+    logi(tag, "Slot Indexes Test Passed");
+    
+    logi(tag, "All Format Slots Test Passed");
+  }
+
+  private void testGeneratedFormat() {
+    String tag = "testGeneratedFormat";
+    
+    for (TestCase testCase : testCases) {
+      assertEquals(testCase.id, testCase.expected, new SlotString(testCase.pattern, true).format(testCase.dest));
+    }
+    logi(tag, "Different Pattern Generated Format Test Passed");
+    
+    StringBuilder pattern = new StringBuilder();
+    StringBuilder expected = new StringBuilder();
+    Map<String, Object> dest = new HashMap<>();
+    for (int i = 0; i < 1000; ++i) {
+      pattern.append('[').append(i).append("]{").append(i).append('}');
+      expected.append('[').append(i).append(']').append(i * 2);
+      dest.put(String.valueOf(i), i * 2);
+    }
+    assertEquals("GF1", expected.toString(), new SlotString(pattern.toString(), true).format(dest));
+    logi(tag, "Too Many Segments Fallback Test Passed");
+    
+    final SlotString target = new SlotString("MT [{RANDOM}] [{CUR_MS}] [{1}] vAL", true);
+    runOnMultiThread(() -> {
+      double rnd = Math.random();
+      long ms = System.currentTimeMillis();
+      Map<String, Object> mtDest = new HashMap<>();
+      mtDest.put("RANDOM", rnd);
+      mtDest.put("CUR_MS", ms);
+      assertEquals("GF2", "MT [" + rnd + "] [" + ms + "] [] vAL", target.format(mtDest));
+    });
+    logi(tag, "Same Pattern Different Destination Generated Format Test On Multi Thread Passed");
+    
+    logi(tag, "All Generated Format Test Passed");
+  }
+
+  private void testConverters() {
+    String tag = "testConverters";
+    
+    SlotConverters defaults = SlotConverters.defaults();
+    Random random = new Random(0);
+    for (int i = 0; i < 100000; ++i) {
+      BigInteger unscaled = BigInteger.valueOf(random.nextLong() >> random.nextInt(64));
+      if (i % 10 == 0) {
+        unscaled = unscaled.multiply(unscaled);
+      }
+      BigDecimal val = new BigDecimal(unscaled, random.nextInt(30) - 5);
+      assertEquals("CV1", val.toPlainString(), convert(defaults, val));
+    }
+    Object[] values = { Long.MIN_VALUE, Long.MAX_VALUE, 0L, -1L, Integer.MIN_VALUE, 999, (short) -10, (byte) 7,
+        true, false, 'c', "s", BigDecimal.ZERO, new BigDecimal("-0.05"), new BigDecimal("0.000") };
+    for (Object val : values) {
+      assertEquals("CV2", String.valueOf(val), convert(defaults, val));
+    }
+    logi(tag, "Built-in Converters Test Passed");
+    
+    final SlotConverters custom = new SlotConverters();
+    custom.register(Number.class, new SlotConverter() {
+
+      @Override
+      public int length(Object val) {
+        return String.valueOf(val).length() + 1;
+      }
+
+      @Override
+      public void append(StringBuilder res, Object val) {
+        res.append('#').append(val);
+      }
+    });
+    String pattern = "[{long}] [{double}] [{str}] [{null}]";
+    SlotString target = new SlotString(pattern) {
+
+      @Override
+      protected SlotConverters converters() {
+        return custom;
+      }
+      
+    };
+    Map<String, Object> dest = new HashMap<>();
+    dest.put("long", 1L);
+    dest.put("double", 1.5);
+    dest.put("str", "s");
+    String expected = "[#1] [#1.5] [s] []";
+    assertEquals("CV3", expected, target.format(dest));
+    assertEquals("CV4", expected, target.qformat(pattern, dest));
+    StringBuilder builder = new StringBuilder();
+    try {
+      target.formatTo(builder, dest);
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    assertEquals("CV5", expected, builder.toString());
+    
+    // 写入输出目标时与 format 方法相同，重复的键名只查找和转换一次
+    final int[] lookups = new int[1];
+    Map<String, Object> counted = new HashMap<String, Object>(dest) {
+
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      public Object get(Object key) {
+        ++lookups[0];
+        return super.get(key);
+      }
+      
+    };
+    SlotString repeated = new SlotString("{long}-{long}-{str}-{long}") {
+
+      @Override
+      protected SlotConverters converters() {
+        return custom;
+      }
+      
+    };
+    builder.setLength(0);
+    try {
+      repeated.formatTo(builder, counted);
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    assertEquals("CV6", repeated.format(dest), builder.toString());
+    assertEquals("CV7", "2", String.valueOf(lookups[0]));
+    
+    // 默认注册表不可修改，在其副本中注册的转换器只对使用副本的格式化器生效
+    String error = null;
+    try {
+      SlotConverters.defaults().register(Number.class, SlotConverters.defaults().lookup(1L));
+    } catch (UnsupportedOperationException e) {
+      error = e.getClass().getSimpleName();
+    }
+    assertEquals("CV8", "UnsupportedOperationException", error);
+    final SlotConverters extended = new SlotConverters(SlotConverters.defaults());
+    extended.register(Double.class, custom.lookup(1.5));
+    SlotString extendedTarget = new SlotString(pattern) {
+
+      @Override
+      protected SlotConverters converters() {
+        return extended;
+      }
+      
+    };
+    assertEquals("CV9", "[1] [#1.5] [s] []", extendedTarget.format(dest));
+    assertEquals("CV9", "[1] [1.5] [s] []", new SlotString(pattern).format(dest));
+    logi(tag, "Registered Converter Test Passed");
+    
+    logi(tag, "All Converters Test Passed");
+  }
+  
+  private static String convert(SlotConverters converters, Object val) {
+    SlotConverter converter = converters.lookup(val);
+    StringBuilder res = new StringBuilder();
+    converter.append(res, val);
+    assertEquals("CVL", String.valueOf(res.length()), String.valueOf(converter.length(val)));
+    return res.toString();
+  }
+
+  private void testBind() {
+    String tag = "testBind";
+    
+    TestCase testCase = genPerformanceTestCase();
+    Map<String, Object> constants = new HashMap<>();
+    constants.put("YEAR", testCase.dest.get("YEAR"));
+    constants.put("TIME", testCase.dest.get("TIME"));
+    constants.put("EMPTY_SPL", null);
+    for (boolean generate : new boolean[] { false, true }) {
+      SlotString bound = new SlotString(testCase.pattern, generate).bind(constants);
+      assertEquals("BD1", testCase.expected, bound.format(testCase.dest));
+      Map<String, Object> changed = new HashMap<>(testCase.dest);
+      changed.put("YEAR", 1999);
+      changed.put("TIME", "NEVER");
+      assertEquals("BD2", testCase.expected, bound.format(changed));
+      String keys = String.join(",", bound.slotKeys());
+      assertEquals("BD3", "USER1_ID,USER1_CODE,USER2_ID,USER2_CODE,START_CODE,END_CODE,DIM_NAME_PARAM", keys);
+    }
+    assertEquals("BD4", "null", String.valueOf(new SlotString().bind(constants)));
+    logi(tag, "Bind Constant Keys Test Passed");
+    
+    SlotString target = new SlotString("[{a}] [{b}]") {
+
+      @Override
+      protected String asString(Object val, boolean preventDefault) {
+        return "<" + super.asString(val, preventDefault) + ">";
+      }
+      
+    };
+    Map<String, Object> dest = new HashMap<>();
+    dest.put("a", 1);
+    SlotString bound = target.bind(dest);
+    dest.put("a", 2);
+    dest.put("b", 3);
+    assertEquals("BD5", "[<1>] [<3>]", bound.format(dest));
+    assertEquals("BD6", "[<2>] [<3>]", target.format(dest));
+    logi(tag, "Bind With Overriding AsString Test Passed");
+    
+    // 副本使用自己的缓冲区，在原格式化器的值来源中使用副本不会覆盖原格式化器的输出
+    SlotString single = new SlotString(false) {
+      {
+        compile("[{a}] [{b}]");
+      }
+    };
+    SlotString singleBound = single.bind(Collections.singletonMap("a", 1));
+    assertEquals("BD7", "A=[1] [x];B=[1] [y]",
+        single.qformat("A={x};B={y}", k -> singleBound.qformat("[1] [{v}]", v -> k)));
+    assertEquals("BD8", "A=[x] [];B=[y] []",
+        singleBound.qformat("A={x};B={y}", k -> single.qformat("[{v}] []", v -> k)));
+    logi(tag, "Bind Buffers Test Passed");
+    
+    logi(tag, "All Bind Test Passed");
+  }
+
+  private void testMetrics() {
+    String tag = "testMetrics";
+    
+    String pattern = "[{a}] [{b}] [{b}]";
+    Map<String, Object> dest = new HashMap<>();
+    dest.put("a", 1);
+    SlotStringMetrics metrics = new SlotStringMetrics(1);
+    SlotString.setListener(metrics);
+    try {
+      SlotString target = new SlotString(pattern);
+      assertEquals("MT1", "[1] [] []", target.format(dest));
+      assertEquals("MT2", "[1] [] []", target.formatSlots(new Object[] { 1 }));
+      assertEquals("MT3", "[1] [] []", new SlotString(pattern, true).format(dest));
+      assertEquals("MT4", "[1] [] []", new SlotString().qformat(pattern, dest));
+      assertEquals("MT5", "[1] [] []", new SlotString(false, new SlotStringCache(4)).qformat(pattern, dest));
+      assertEquals("MT6", "[1]", new SlotString().qformat("[{a}]", dest));
+    } finally {
+      SlotString.setListener(null);
+    }
+    // 缓存中首次出现的模板字符串直接解析，不编译
+    assertEquals("MC1", "2", String.valueOf(metrics.getCompileCount()));
+    assertEquals("MC2", "6", String.valueOf(metrics.getRenderCount()));
+    assertEquals("MC3", "48", String.valueOf(metrics.getOutputChars()));
+    assertEquals("MC4", "10", String.valueOf(metrics.getNullSlotCount()));
+    assertEquals("MC5", "5", String.valueOf(metrics.renderCount(pattern)));
+    assertEquals("MC6", "10", String.valueOf(metrics.nullSlotCount(pattern)));
+    assertEquals("MC7", "0", String.valueOf(metrics.renderCount("[{a}]")));
+    assertEquals("MC8", "1", String.valueOf(metrics.getTemplateCount()));
+    assertEquals("MC9", "true", String.valueOf(metrics.getRenderP50Nanos() <= metrics.getRenderP999Nanos()));
+    assertEquals("MC10", "true", String.valueOf(metrics.topTemplates(10)[0].endsWith("pattern=" + pattern)));
+    new SlotString(pattern).format(dest);
+    assertEquals("MC11", "2", String.valueOf(metrics.getCompileCount()));
+    logi(tag, "Listener Counters Test Passed");
+    
+    try {
+      ObjectName name = metrics.register();
+      try {
+        Object renders = ManagementFactory.getPlatformMBeanServer().getAttribute(name, "RenderCount");
+        assertEquals("MJ1", "6", String.valueOf(renders));
+        ManagementFactory.getPlatformMBeanServer().invoke(name, "reset", null, null);
+        assertEquals("MJ2", "0", String.valueOf(metrics.getRenderCount()));
+      } finally {
+        SlotStringMetrics.unregister();
+      }
+    } catch (JMException e) {
+      throw new IllegalStateException(e);
+    }
+    logi(tag, "JMX MBean Test Passed");
+    
+    logi(tag, "All Metrics Test Passed");
+  }
+
+  private void testArena() {
+    String tag = "testArena";
+    
+    for (int pageSize : new int[] { 8, 1 << 16 }) {
+      SlotStringArena arena = new SlotStringArena(pageSize);
+      for (int round = 0; round < 2; ++round) {
+        for (TestCase testCase : testCases) {
+          SlotString target = new SlotString(testCase.pattern, arena);
+          assertEquals(testCase.id, testCase.expected, target.format(testCase.dest));
+          StringWriter writer = new StringWriter();
+          try {
+            target.formatTo(writer, testCase.dest);
+          } catch (IOException e) {
+            throw new RuntimeException(e);
+          }
+          assertEquals(testCase.id, testCase.expected == null ? "" : testCase.expected, writer.toString());
+        }
+      }
+      assertEquals("AR1", "true", String.valueOf(arena.dedupCount() >= arena.segmentCount()));
+    }
+    logi(tag, "Arena Compile+Format Test Passed");
+    
+    SlotStringArena arena = new SlotStringArena(4);
+    SlotString first = new SlotString("SELECT {A} FROM T{YEAR} WHERE {A} > 0", arena);
+    SlotString second = new SlotString("SELECT {B} FROM T{YEAR} WHERE {B} > 0", arena);
+    assertEquals("AR2", "4", String.valueOf(arena.segmentCount()));
+    assertEquals("AR3", "4", String.valueOf(arena.dedupCount()));
+    assertEquals("AR4", "{B=0, YEAR=1}", second.slotIndexes().toString());
+    Map<String, Object> dest = new HashMap<>();
+    dest.put("A", 1);
+    dest.put("YEAR", 2023);
+    assertEquals("AR5", "SELECT 1 FROM T2023 WHERE 1 > 0", first.format(dest));
+    assertEquals("AR6", "SELECT 7 FROM T2023 WHERE 7 > 0", first.formatSlots(new Object[] { 7, 2023 }));
+    SlotString bound = first.bind(Collections.singletonMap("YEAR", 2024));
+    assertEquals("AR7", "SELECT 1 FROM T2024 WHERE 1 > 0", bound.format(dest));
+    assertEquals("AR8", "A", bound.slotKeys()[0]);
+    logi(tag, "Arena Dedup And Bind Test Passed");
+    
+    logi(tag, "All Arena Test Passed");
+  }
+
+  private void testRegistry() {
+    String tag = "testRegistry";
+    
+    try {
+      Path dir = Files.createTempDirectory("slotstring-registry");
+      Path snapshot = dir.resolveSibling(dir.getFileName() + ".snapshot");
+      try {
+        Files.createDirectories(dir.resolve("nested"));
+        int files = 0;
+        for (TestCase testCase : testCases) {
+          if (testCase.pattern != null) {
+            Path file = dir.resolve((files % 2 == 0 ? "" : "nested/") + testCase.id + ".tpl");
+            Files.write(file, testCase.pattern.getBytes(StandardCharsets.UTF_8));
+            ++files;
+          }
+        }
+        Files.write(dir.resolve("ignored.txt"), "{a}".getBytes(StandardCharsets.UTF_8));
+        
+        SlotStringRegistry compiled = SlotStringRegistry.compile(dir, ".tpl");
+        assertEquals("RG1", String.valueOf(files), String.valueOf(compiled.size()));
+        assertEquals("RG2", "null", String.valueOf(compiled.get("ignored.txt")));
+        checkRegistry(compiled);
+        logi(tag, "Parallel Compile Test Passed");
+        
+        compiled.writeSnapshot(snapshot);
+        SlotStringRegistry loaded = SlotStringRegistry.load(snapshot);
+        assertEquals("RG3", String.join(",", compiled.names()), String.join(",", loaded.names()));
+        checkRegistry(loaded);
+        logi(tag, "Snapshot Load Test Passed");
+        
+        Files.write(snapshot, "{a}{b}".getBytes(StandardCharsets.UTF_8));
+        String error = null;
+        try {
+          SlotStringRegistry.load(snapshot);
+        } catch (IOException e) {
+          error = e.getMessage();
+        }
+        assertEquals("RG4", "true", String.valueOf(error != null && error.startsWith("Not a SlotString snapshot")));
+        logi(tag, "Invalid Snapshot Test Passed");
+        
+        // 无效或未记录指纹的快照文件视为过期，重新编译并写入快照文件
+        SlotStringRegistry fresh = SlotStringRegistry.loadOrCompile(snapshot, dir, ".tpl");
+        checkRegistry(fresh);
+        // 模板文件未修改时直接读取快照文件，不重新写入
+        Files.setLastModifiedTime(snapshot, FileTime.fromMillis(1000000000000L));
+        checkRegistry(SlotStringRegistry.loadOrCompile(snapshot, dir, ".tpl"));
+        assertEquals("RG5", "1000000000000", String.valueOf(Files.getLastModifiedTime(snapshot).toMillis()));
+        // 大小相同的修改按修改时间判断
+        Path stale = dir.resolve("stale.tpl");
+        Files.write(stale, "{a}".getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(stale, FileTime.fromMillis(1000000000000L));
+        SlotStringRegistry.loadOrCompile(snapshot, dir, ".tpl");
+        Files.write(stale, "{b}".getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(stale, FileTime.fromMillis(1000000001000L));
+        assertEquals("RG6", "{b}",
+            SlotStringRegistry.loadOrCompile(snapshot, dir, ".tpl").template("stale.tpl").pattern());
+        assertEquals("RG6", "{b}", SlotStringRegistry.load(snapshot).template("stale.tpl").pattern());
+        Files.delete(stale);
+        assertEquals("RG7", "null",
+            String.valueOf(SlotStringRegistry.loadOrCompile(snapshot, dir, ".tpl").get("stale.tpl")));
+        logi(tag, "Snapshot Staleness Test Passed");
+      } finally {
+        deleteRecursively(dir);
+        Files.deleteIfExists(snapshot);
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    
+    logi(tag, "All Registry Test Passed");
+  }
+  
+  private void checkRegistry(SlotStringRegistry registry) {
+    int files = 0;
+    for (TestCase testCase : testCases) {
+      if (testCase.pattern != null) {
+        String name = (files % 2 == 0 ? "" : "nested/") + testCase.id + ".tpl";
+        assertEquals(testCase.id, testCase.expected == null ? "" : testCase.expected,
+            registry.get(name).format(testCase.dest));
+        assertEquals(testCase.id, testCase.expected == null ? "" : testCase.expected,
+            registry.template(name).format(testCase.dest));
+        assertEquals(testCase.id, testCase.pattern, registry.template(name).pattern());
+        ++files;
+      }
+    }
+  }
+  
+  private static void deleteRecursively(Path dir) throws IOException {
+    try (Stream<Path> walk = Files.walk(dir)) {
+      for (Path path : walk.sorted(Comparator.reverseOrder()).toArray(Path[]::new)) {
+        Files.deleteIfExists(path);
+      }
+    }
+  }
+
+  private void testResolvers() {
+    String tag = "testResolvers";
+    
+    SlotString cached = new SlotString(false, new SlotStringCache(64));
+    SlotString shared = new SlotString(false);
+    for (TestCase testCase : testCases) {
+      SlotResolver resolver = SlotResolvers.map(testCase.dest);
+      assertEquals(testCase.id, testCase.expected, shared.qformat(testCase.pattern, resolver));
+      assertEquals(testCase.id, testCase.expected, cached.qformat(testCase.pattern, resolver));
+      if (testCase.pattern != null) {
+        SlotString target = new SlotString(testCase.pattern);
+        assertEquals(testCase.id, testCase.expected, target.format(resolver));
+        String[] keys = target.slotKeys();
+        Object[] values = new Object[keys.length];
+        for (int i = 0; i < keys.length; ++i) {
+          values[i] = testCase.dest == null ? null : testCase.dest.get(keys[i]);
+        }
+        assertEquals(testCase.id, testCase.expected, target.format(SlotResolvers.array(keys, values)));
+      }
+    }
+    // 重复的键名取第一个位置的值，超出值数组长度的键名为 null，值数组按引用读取
+    Object[] arrayValues = { 1, 2, 3 };
+    SlotResolver array = SlotResolvers.array(new String[] { "a", "b", "a", "c" }, arrayValues);
+    arrayValues[1] = 4;
+    assertEquals("RA1", "[1] [4] []", new SlotString("[{a}] [{b}] [{c}]").format(array));
+    logi(tag, "Map And Array Resolvers Test Passed");
+    
+    String pattern = "[{year}] [{active}] [{code}] [{name}] [{URL}] [{missing}] [{year}]";
+    String expected = "[2023] [true] [V01] [voucher] [http://a] [] [2023]";
+    SlotString target = new SlotString(pattern);
+    Voucher voucher = new Voucher();
+    assertEquals("RB1", expected, target.format(SlotResolvers.bean(voucher)));
+    assertEquals("RB2", expected, shared.qformat(pattern, SlotResolvers.bean(voucher)));
+    assertEquals("RB3", "[] [] [] [] [] [] []", target.format(SlotResolvers.bean(null)));
+    assertEquals("RB4", "[7] [] [] [] [] [] [7]", target.format(SlotResolvers.bean(new Year(7))));
+    assertEquals("RB5", expected, target.format(SlotResolvers.bean(voucher)));
+    assertEquals("RB6", "[] [] [] [] [] [] []", target.format((SlotResolver) null));
+    // 没有同名字段的公共方法不能作为键名调用
+    assertEquals("RB7", "[] []",
+        new SlotString("[{incrementCounter}] [{toString}]").format(SlotResolvers.bean(voucher)));
+    assertEquals("RB8", "0", String.valueOf(voucher.counter));
+    assertEquals("RB9", "[]", new SlotString("[{incrementAndGet}]").format(SlotResolvers.bean(new AtomicInteger())));
+    // 读取方法按类型缓存，同一类型交替格式化多个编译结果，缓存表的每个位置被覆盖后仍按键名数组查找正确的方法
+    SlotString[] reversed = new SlotString[200];
+    for (int i = 0; i < reversed.length; ++i) {
+      reversed[i] = new SlotString("[{code}] [{year}] " + i);
+    }
+    for (int round = 0; round < 2; ++round) {
+      for (int i = 0; i < reversed.length; ++i) {
+        assertEquals("RB10", "[V01] [2023] " + i, reversed[i].format(SlotResolvers.bean(voucher)));
+        assertEquals("RB11", expected, target.format(SlotResolvers.bean(voucher)));
+      }
+    }
+    logi(tag, "Bean Resolver Test Passed");
+    
+    logi(tag, "All Resolvers Test Passed");
+  }
+  
+  private void testAsync() {
+    String tag = "testAsync";
+    
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      for (TestCase testCase : testCases) {
+        if (testCase.pattern != null) {
+          SlotString target = new SlotString(testCase.pattern);
+          SlotResolver resolver = SlotResolvers.map(testCase.dest);
+          assertEquals(testCase.id, testCase.expected, target.formatAsync(resolver).join());
+          assertEquals(testCase.id, testCase.expected, target.formatAsync(resolver, executor).join());
+        }
+      }
+      assertEquals("AS1", null, new SlotString().formatAsync(SlotResolvers.map(null)).join());
+      assertEquals("AS2", "[] []", new SlotString("[{a}] [{b}]").formatAsync(null).join());
+      logi(tag, "Async Format Test Passed");
+      
+      // 4 个不同的键名都在等待其余键名开始查找后才返回，只有全部查找同时进行时才能完成
+      SlotString target = new SlotString("{a}-{b}-{c}-{d}-{a}");
+      CyclicBarrier[] barrier = { new CyclicBarrier(4) };
+      SlotResolver overlapping = key -> {
+        try {
+          barrier[0].await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException | BrokenBarrierException | TimeoutException e) {
+          throw new IllegalStateException("lookups did not overlap", e);
+        }
+        return key.toUpperCase();
+      };
+      assertEquals("AS3", "A-B-C-D-A", target.formatAsync(overlapping, executor).join());
+      barrier[0] = new CyclicBarrier(4);
+      assertEquals("AS4", "A-B-C-D-A", target.formatAsync(overlapping).join());
+      
+      CompletableFuture<String> failed = target.formatAsync(key -> {
+        throw new IllegalStateException(key);
+      }, executor);
+      String cause = null;
+      try {
+        failed.join();
+      } catch (CompletionException e) {
+        cause = e.getCause().getClass().getSimpleName();
+      }
+      assertEquals("AS5", "IllegalStateException", cause);
+      logi(tag, "Concurrent Lookup Test Passed");
+    } finally {
+      executor.shutdown();
+    }
+    
+    logi(tag, "All Async Test Passed");
+  }
+  
+  private void testParallel() {
+    String tag = "testParallel";
+    
+    ForkJoinPool pool = new ForkJoinPool(4);
+    try {
+      for (TestCase testCase : testCases) {
+        if (testCase.pattern != null) {
+          SlotString target = new SlotString(testCase.pattern);
+          assertEquals(testCase.id, testCase.expected, target.formatParallel(testCase.dest));
+          assertEquals(testCase.id, testCase.expected,
+              target.formatParallel(SlotResolvers.map(testCase.dest), pool, 0));
+        }
+      }
+      assertEquals("PR1", null, new SlotString().formatParallel(null));
+      logi(tag, "Small Template Parallel Format Test Passed");
+      
+      String pattern = buildScriptPattern(5000);
+      Map<String, Object> dest = new HashMap<>();
+      dest.put("YEAR", 2023);
+      dest.put("ORG", "总部");
+      dest.put("AMOUNT", new BigDecimal("1E+3"));
+      dest.put("ACTIVE", true);
+      SlotString target = new SlotString(pattern);
+      String expected = target.format(dest);
+      assertEquals("PR2", expected, target.formatParallel(SlotResolvers.map(dest), pool, 0));
+      assertEquals("PR3", expected, target.formatParallel(SlotResolvers.map(dest), pool, Integer.MAX_VALUE));
+      assertEquals("PR4", expected, target.formatParallel(dest));
+      SlotString arena = new SlotString(pattern, new SlotStringArena(4096));
+      assertEquals("PR5", expected, arena.formatParallel(SlotResolvers.map(dest), pool, 0));
+      assertEquals("PR6", target.format((Map<String, Object>) null),
+          target.formatParallel(null, pool, 0));
+      logi(tag, "Large Template Parallel Format Test Passed");
+    } finally {
+      pool.shutdown();
+    }
+    
+    logi(tag, "All Parallel Test Passed");
+  }
+  
+  private void testSession() {
+    String tag = "testSession";
+    
+    for (TestCase testCase : testCases) {
+      if (testCase.pattern != null) {
+        SlotString target = new SlotString(testCase.pattern);
+        SlotStringSession session = target.session();
+        assertEquals(testCase.id, testCase.expected, session.render(testCase.dest));
+        assertEquals(testCase.id, testCase.expected, session.render(testCase.dest));
+        assertEquals(testCase.id, "0", String.valueOf(session.changedKeys()));
+        Map<String, Object> changed = testCase.dest == null ? new HashMap<>() : new HashMap<>(testCase.dest);
+        for (String key : target.slotKeys()) {
+          changed.put(key, "<" + key + ">");
+          assertEquals(testCase.id, target.format(changed), session.render(changed));
+        }
+        assertEquals(testCase.id, testCase.expected, session.render(testCase.dest));
+      }
+    }
+    logi(tag, "Session Render Test Passed");
+    
+    SlotString target = new SlotString("{A}-{B}-{A}-{C}-{B}.{A}");
+    Map<String, Object> dest = new HashMap<>();
+    dest.put("A", "a");
+    dest.put("B", new BigDecimal("1E+3"));
+    dest.put("C", null);
+    SlotStringSession session = target.session(true);
+    String first = session.render(dest);
+    assertEquals("SS1", "a-1000-a--1000.a", first);
+    assertEquals("SS2", "3", String.valueOf(session.changedKeys()));
+    dest.put("A", new String("a"));
+    assertEquals("SS3", "true", String.valueOf(first == session.render(dest)));
+    assertEquals("SS4", "0", String.valueOf(session.changedKeys()));
+    dest.put("A", "longer");
+    assertEquals("SS5", "longer-1000-longer--1000.longer", session.render(dest));
+    assertEquals("SS6", "1", String.valueOf(session.changedKeys()));
+    dest.put("B", 7);
+    dest.put("C", "c");
+    assertEquals("SS7", "longer-7-longer-c-7.longer", session.render(dest));
+    assertEquals("SS8", "2", String.valueOf(session.changedKeys()));
+    dest.put("A", "");
+    assertEquals("SS9", "-7--c-7.", session.render(dest));
+    StringBuilder mutable = new StringBuilder("m");
+    dest.put("C", mutable);
+    assertEquals("SS10", "-7--m-7.", session.render(dest));
+    mutable.append("n");
+    assertEquals("SS11", "-7--m-7.", session.render(dest));
+    session.invalidate();
+    assertEquals("SS12", "-7--mn-7.", session.render(dest));
+    assertEquals("SS13", "-7--mn-7.", new SlotString("{A}-{B}-{A}-{C}-{B}.{A}", new SlotStringArena())
+        .session().render(dest));
+    assertEquals("SS14", "null", String.valueOf(new SlotString().session()));
+    logi(tag, "Change Detection Test Passed");
+    
+    logi(tag, "All Session Test Passed");
+  }
+  
+  private void testExporter() {
+    String tag = "testExporter";
+    
+    try {
+      Path file = Files.createTempFile("slotstring", ".sql");
+      try {
+        for (TestCase testCase : testCases) {
+          if (testCase.pattern != null) {
+            SlotString target = new SlotString(testCase.pattern);
+            checkExport(testCase.id, target, Collections.singletonList(SlotResolvers.map(testCase.dest)),
+                testCase.expected, file);
+          }
+        }
+        logi(tag, "Single Row Export Test Passed");
+        
+        String pattern = "INSERT INTO VOUCHER{YEAR} VALUES ({ID}, '{ORG}', {AMOUNT}, '{ORG}');\n";
+        SlotString target = new SlotString(pattern);
+        List<SlotResolver> rows = new ArrayList<>();
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 1000; ++i) {
+          Map<String, Object> dest = new HashMap<>();
+          dest.put("YEAR", 2023);
+          dest.put("ID", i);
+          dest.put("ORG", i % 3 == 0 ? "总部\uD83D\uDE00" + i : i % 3 == 1 ? null : "ORG" + i);
+          dest.put("AMOUNT", new BigDecimal(i).movePointLeft(2));
+          rows.add(i % 100 == 99 ? null : SlotResolvers.map(dest));
+          expected.append(target.format(i % 100 == 99 ? null : dest));
+        }
+        checkExport("EX1", target, rows, expected.toString(), file);
+        assertEquals("EX2", expected.toString(), exportToString(new SlotStringExporter(target,
+            StandardCharsets.UTF_16LE, 16), rows.stream(), file, StandardCharsets.UTF_16LE));
+        checkExport("EX3", new SlotString(pattern, new SlotStringArena()), rows, expected.toString(), file);
+        String error = null;
+        try {
+          new SlotStringExporter(new SlotString(), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+          error = e.getMessage();
+        }
+        assertEquals("EX4", "SlotString is not compiled", error);
+        logi(tag, "Multi Row Export Test Passed");
+        
+        // 带字节序标记或移位状态的字符集与整体编码的结果相同
+        List<SlotResolver> few = rows.subList(0, 7);
+        checkExportBytes("EX5", target, few, file, StandardCharsets.UTF_16);
+        if (Charset.isSupported("ISO-2022-JP")) {
+          checkExportBytes("EX6", new SlotString("伝票{YEAR}：{ORG}／{ID}\n"), few, file,
+              Charset.forName("ISO-2022-JP"));
+        }
+        logi(tag, "Stateful Charset Export Test Passed");
+      } finally {
+        Files.delete(file);
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    
+    logi(tag, "All Exporter Test Passed");
+  }
+  
+  private static void checkExport(String message, SlotString target, List<SlotResolver> rows, String expected,
+      Path file) throws IOException {
+    assertEquals(message, expected, exportToString(new SlotStringExporter(target, StandardCharsets.UTF_8),
+        rows.stream(), file, StandardCharsets.UTF_8));
+    assertEquals(message, expected, exportToString(new SlotStringExporter(target, StandardCharsets.UTF_8, 16),
+        rows.stream(), file, StandardCharsets.UTF_8));
+  }
+  
+  private static void checkExportBytes(String message, SlotString target, List<SlotResolver> rows, Path file,
+      Charset charset) throws IOException {
+    StringBuilder expected = new StringBuilder();
+    for (SlotResolver row : rows) {
+      expected.append(target.format(row));
+    }
+    String bytes = new String(expected.toString().getBytes(charset), StandardCharsets.ISO_8859_1);
+    exportToString(new SlotStringExporter(target, charset), rows.stream(), file, charset);
+    assertEquals(message, bytes, new String(Files.readAllBytes(file), StandardCharsets.ISO_8859_1));
+    exportToString(new SlotStringExporter(target, charset, 16), rows.stream(), file, charset);
+    assertEquals(message, bytes, new String(Files.readAllBytes(file), StandardCharsets.ISO_8859_1));
+  }
+  
+  private static String exportToString(SlotStringExporter exporter, Stream<SlotResolver> rows, Path file,
+      Charset charset) throws IOException {
+    long written;
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE,
+        StandardOpenOption.TRUNCATE_EXISTING)) {
+      written = exporter.export(rows, channel);
+    }
+    byte[] bytes = Files.readAllBytes(file);
+    assertEquals("written", String.valueOf(bytes.length), String.valueOf(written));
+    return new String(bytes, charset);
+  }
+  
+  private void testEscape() {
+    String tag = "testEscape";
+    
+    assertEquals("ES1", "O''Brien''s", SlotEscape.SQL.escape("O'Brien's"));
+    assertEquals("ES2", "plain", SlotEscape.SQL.escape("plain"));
+    assertEquals("ES3", "\\\"a\\\\b\\n\\t\\u0001\\\"", SlotEscape.JSON.escape("\"a\\b\n\t\u0001\""));
+    assertEquals("ES4", "&lt;a href=&quot;x&quot;&gt;&amp;&#39;&lt;/a&gt;", SlotEscape.HTML.escape("<a href=\"x\">&'</a>"));
+    assertEquals("ES5", "中文''", SlotEscape.SQL.escape("中文'"));
+    logi(tag, "Escape Modes Test Passed");
+    
+    String pattern = "SELECT '{NAME}', {ID}, '{NAME}' FROM T WHERE DOC = '[\"{MEMO}\"]'";
+    Map<String, Object> dest = new HashMap<>();
+    dest.put("NAME", "O'Brien");
+    dest.put("ID", 42);
+    dest.put("MEMO", "say \"hi\"\n");
+    String sql = "SELECT 'O''Brien', 42, 'O''Brien' FROM T WHERE DOC = '[\"say \"hi\"\n\"]'";
+    String mixed = "SELECT 'O''Brien', 42, 'O''Brien' FROM T WHERE DOC = '[\"say \\\"hi\\\"\\n\"]'";
+    SlotString plain = new SlotString(pattern, true);
+    SlotString escaped = plain.withEscape(SlotEscape.SQL);
+    SlotString perKey = escaped.withEscape("MEMO", SlotEscape.JSON);
+    assertEquals("ES6", pattern.replace("{NAME}", "O'Brien").replace("{ID}", "42")
+        .replace("{MEMO}", "say \"hi\"\n"), plain.format(dest));
+    assertEquals("ES7", sql, escaped.format(dest));
+    assertEquals("ES8", mixed, perKey.format(dest));
+    assertEquals("ES9", mixed, perKey.format(SlotResolvers.map(dest)));
+    assertEquals("ES10", mixed, perKey.formatSlots(new Object[] {"O'Brien", 42, "say \"hi\"\n"}));
+    assertEquals("ES11", mixed, perKey.formatParallel(SlotResolvers.map(dest), ForkJoinPool.commonPool(), 0));
+    assertEquals("ES12", mixed, perKey.formatAsync(SlotResolvers.map(dest)).join());
+    assertEquals("ES13", mixed, perKey.session().render(dest));
+    assertEquals("ES14", mixed, perKey.qformat(pattern, dest));
+    assertEquals("ES15", mixed, new SlotString(false, new SlotStringCache(8)).withEscape(SlotEscape.SQL)
+        .withEscape("MEMO", SlotEscape.JSON).qformat(pattern, dest));
+    assertEquals("ES16", sql.replace("O''Brien", "O'Brien"), escaped.withEscape("NAME", null).format(dest));
+    assertEquals("ES17", mixed, new SlotString(pattern, new SlotStringArena()).withEscape(SlotEscape.SQL)
+        .withEscape("MEMO", SlotEscape.JSON).format(dest));
+    try {
+      StringWriter writer = new StringWriter();
+      perKey.formatTo(writer, dest);
+      assertEquals("ES18", mixed, writer.toString());
+      writer = new StringWriter();
+      perKey.qformatTo(writer, pattern, dest);
+      assertEquals("ES19", mixed, writer.toString());
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    SlotString bound = perKey.bind(Collections.singletonMap("NAME", "O'Brien"));
+    assertEquals("ES20", mixed, bound.format(dest));
+    assertEquals("ES21", "[1''2]", new SlotString("[{a}]").withEscape(SlotEscape.SQL)
+        .format(SlotResolvers.map(Collections.singletonMap("a", new StringBuilder("1'2")))));
+    logi(tag, "Template And Key Escape Test Passed");
+    
+    // 转义的副本使用自己的缓冲区，与原格式化器互相嵌套使用
+    SlotString original = new SlotString();
+    SlotString sqlCopy = original.withEscape(SlotEscape.SQL);
+    assertEquals("ES22", "A='O''Brien';B='O''Brien'",
+        original.qformat("A={x};B={y}", k -> sqlCopy.qformat("'{v}'", x -> "O'Brien")));
+    assertEquals("ES23", "A=''O''Brien'';B=''O''Brien''",
+        sqlCopy.qformat("A={x};B={y}", k -> original.qformat("'{v}'", x -> "O'Brien")));
+    logi(tag, "Nested Escape Copy Test Passed");
+    
+    logi(tag, "All Escape Test Passed");
+  }
+  
+  private void testCompiledTemplate() {
+    String tag = "testCompiledTemplate";
+    
+    for (TestCase testCase : testCases) {
+      if (testCase.pattern != null) {
+        CompiledTemplate template = CompiledTemplate.compile(testCase.pattern);
+        assertEquals(testCase.id, testCase.expected, template.format(testCase.dest));
+        assertEquals(testCase.id, testCase.expected, template.format(SlotResolvers.map(testCase.dest)));
+        assertEquals(testCase.id, testCase.expected, new SlotString(template).format(testCase.dest));
+        assertEquals(testCase.id, testCase.expected, CompiledTemplate.compile(testCase.pattern,
+            new SlotStringArena()).format(testCase.dest));
+        try {
+          StringWriter writer = new StringWriter();
+          template.formatTo(writer, testCase.dest);
+          assertEquals(testCase.id, testCase.expected, writer.toString());
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      }
+    }
+    logi(tag, "Compiled Template Format Test Passed");
+    
+    CompiledTemplate template = new SlotString("SELECT * FROM VOUCHER{YEAR} WHERE NAME = '{NAME}'").compiled();
+    assertEquals("CT1", "SELECT * FROM VOUCHER{YEAR} WHERE NAME = '{NAME}'", template.pattern());
+    assertEquals("CT2", "[YEAR, NAME]", Arrays.toString(template.keys()));
+    assertEquals("CT3", "5", String.valueOf(template.size()));
+    assertEquals("CT4", "SELECT * FROM VOUCHER2023 WHERE NAME = 'x'", template.formatSlots(new Object[] {2023, "x"}));
+    CompiledTemplate bound = template.bind(Collections.singletonMap("YEAR", 2023));
+    assertEquals("CT5", "[NAME]", Arrays.toString(bound.keys()));
+    assertEquals("CT6", "SELECT * FROM VOUCHER2023 WHERE NAME = 'O'Brien'",
+        bound.format(Collections.singletonMap("NAME", "O'Brien")));
+    assertEquals("CT7", "SELECT * FROM VOUCHER2023 WHERE NAME = 'O''Brien'",
+        new SlotString(bound).withEscape(SlotEscape.SQL).format(Collections.singletonMap("NAME", "O'Brien")));
+    assertEquals("CT8", "null", String.valueOf(new SlotString().compiled()));
+    String error = null;
+    try {
+      CompiledTemplate.compile(null);
+    } catch (NullPointerException e) {
+      error = e.getMessage();
+    }
+    assertEquals("CT9", "pattern", error);
+    logi(tag, "Compiled Template Bind Test Passed");
+    
+    // 多个线程共用同一个编译的模板，不需要格式化器
+    CompiledTemplate shared = CompiledTemplate.compile("MT [{RANDOM}] [{CUR_MS}] [{1}] vAL");
+    runOnMultiThread(() -> {
+      double rnd = Math.random();
+      long ms = System.currentTimeMillis();
+      Map<String, Object> dest = new HashMap<>();
+      dest.put("RANDOM", rnd);
+      dest.put("CUR_MS", ms);
+      dest.put("1", rnd);
+      assertEquals("CT10", "MT [" + rnd + "] [" + ms + "] [" + rnd + "] vAL", shared.format(dest));
+    });
+    logi(tag, "Compiled Template Multi-Thread Test Passed");
+    
+    logi(tag, "All Compiled Template Test Passed");
+  }
+  
+  private void testWatcher() {
+    String tag = "testWatcher";
+    
+    try {
+      Path dir = Files.createTempDirectory("slotstring-watcher");
+      try {
+        Files.createDirectories(dir.resolve("nested"));
+        Files.write(dir.resolve("a.tpl"), "A{X}".getBytes(StandardCharsets.UTF_8));
+        Files.write(dir.resolve("nested/b.tpl"), "B{X}".getBytes(StandardCharsets.UTF_8));
+        Map<String, Object> dest = Collections.singletonMap("X", "x");
+        try (SlotStringWatcher watcher = new SlotStringWatcher(dir, ".tpl")) {
+          assertEquals("WT1", "a.tpl,nested/b.tpl", String.join(",", watcher.registry().names()));
+          assertEquals("WT2", "Ax", watcher.get("a.tpl").format(dest));
+          assertEquals("WT3", "Bx", watcher.template("nested/b.tpl").format(dest));
+          
+          // 重新编译期间读取的始终是某个完整的版本
+          AtomicReference<String> unexpected = new AtomicReference<>();
+          CountDownLatch stop = new CountDownLatch(1);
+          Thread reader = new Thread(() -> {
+            while (stop.getCount() > 0) {
+              SlotString slot = watcher.get("a.tpl");
+              String result = slot == null ? null : slot.format(dest);
+              if (!"Ax".equals(result) && !"A2x".equals(result)) {
+                unexpected.set(result);
+              }
+            }
+          });
+          reader.start();
+          Files.write(dir.resolve("a.tpl"), "A2{X}".getBytes(StandardCharsets.UTF_8));
+          assertEquals("WT4", "A2x", awaitReload(() -> watcher.get("a.tpl").format(dest), "A2x"));
+          stop.countDown();
+          reader.join();
+          assertEquals("WT5", "null", String.valueOf(unexpected.get()));
+          logi(tag, "Modify Reload Test Passed");
+          
+          Files.write(dir.resolve("c.tpl"), "C{X}".getBytes(StandardCharsets.UTF_8));
+          Files.write(dir.resolve("c.txt"), "{X}".getBytes(StandardCharsets.UTF_8));
+          Files.createDirectories(dir.resolve("added"));
+          Files.write(dir.resolve("added/d.tpl"), "D{X}".getBytes(StandardCharsets.UTF_8));
+          assertEquals("WT6", "a.tpl,added/d.tpl,c.tpl,nested/b.tpl", awaitReload(
+              () -> String.join(",", watcher.registry().names()), "a.tpl,added/d.tpl,c.tpl,nested/b.tpl"));
+          assertEquals("WT7", "Dx", watcher.get("added/d.tpl").format(dest));
+          logi(tag, "Create Reload Test Passed");
+          
+          Files.delete(dir.resolve("c.tpl"));
+          deleteRecursively(dir.resolve("nested"));
+          assertEquals("WT8", "a.tpl,added/d.tpl", awaitReload(
+              () -> String.join(",", watcher.registry().names()), "a.tpl,added/d.tpl"));
+          logi(tag, "Delete Reload Test Passed");
+          
+          // 不是有效的 UTF-8 文本时保留上一个版本
+          long reloads = watcher.reloadCount();
+          Files.write(dir.resolve("a.tpl"), new byte[] {'A', (byte) 0xE4, (byte) 0xB8});
+          assertEquals("WT9", "1", awaitReload(() -> String.valueOf(watcher.failureCount()), "1"));
+          assertEquals("WT10", "A2x", watcher.get("a.tpl").format(dest));
+          assertEquals("WT11", String.valueOf(reloads), String.valueOf(watcher.reloadCount()));
+          assertEquals("WT12", "true", String.valueOf(watcher.lastFailure() != null));
+          logi(tag, "Compile Failure Test Passed");
+          
+          // 编译时抛出异常后监视线程继续处理后续变更
+          SlotStringListener previous = SlotString.getListener();
+          SlotString.setListener(new SlotStringListener() {
+            
+            @Override
+            public void onCompile(String pattern, int segments, long nanos) {
+              throw new IllegalStateException("listener failure");
+            }
+          });
+          try {
+            Files.write(dir.resolve("a.tpl"), "A3{X}".getBytes(StandardCharsets.UTF_8));
+            assertEquals("WT13", "true", awaitReload(() -> String.valueOf(watcher.failureCount() >= 2), "true"));
+          } finally {
+            SlotString.setListener(previous);
+          }
+          assertEquals("WT14", "A2x", watcher.get("a.tpl").format(dest));
+          assertEquals("WT15", "listener failure", watcher.lastFailure().getMessage());
+          Files.write(dir.resolve("a.tpl"), "A4{X}".getBytes(StandardCharsets.UTF_8));
+          assertEquals("WT16", "A4x", awaitReload(() -> watcher.get("a.tpl").format(dest), "A4x"));
+          logi(tag, "Runtime Failure Test Passed");
+        }
+      } finally {
+        deleteRecursively(dir);
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    } catch (InterruptedException e) {
+      throw new RuntimeException(e);
+    }
+    
+    logi(tag, "All Watcher Test Passed");
+  }
+  
+  private void testStream() {
+    String tag = "testStream";
+    
+    SlotString slot = new SlotString();
+    for (TestCase testCase : testCases) {
+      if (testCase.pattern != null) {
+        String expected = testCase.expected == null ? "" : testCase.expected;
+        // 每次只读取少量字符，使各状态跨越分块边界
+        for (int step = 1; step <= 3; ++step) {
+          assertEquals(testCase.id, expected, streamToString(slot, new StepReader(testCase.pattern, step),
+              SlotResolvers.map(testCase.dest)));
+        }
+        assertEquals(testCase.id, expected, streamToString(slot, new StringReader(testCase.pattern),
+            SlotResolvers.map(testCase.dest)));
+      }
+    }
+    assertEquals("ST1", "a", streamToString(slot, new StringReader("a#"), null));
+    assertEquals("ST2", "a", streamToString(slot, new StringReader("a\\"), null));
+    assertEquals("ST3", "a", streamToString(slot, new StringReader("a{b\\}"), null));
+    logi(tag, "Reader Stream Test Passed");
+    
+    // 流式格式化时超过最大长度的键名按原文输出，未闭合的 { 不会使键名缓冲区无限增长；模板字符串不限制键名长度
+    char[] filler = new char[SlotString.MAX_KEY_LENGTH + 1];
+    Arrays.fill(filler, 'x');
+    String longKey = new String(filler);
+    Map<String, Object> keyDest = new HashMap<>();
+    keyDest.put("a", "A");
+    keyDest.put("}" + longKey, "L");
+    assertEquals("ST8", "LA", slot.qformat("#{\\}" + longKey + "}{a}", keyDest));
+    assertEquals("ST9", "#{\\}" + longKey + "}A",
+        streamToString(slot, new StepReader("#{\\}" + longKey + "}{a}", 4093), SlotResolvers.map(keyDest)));
+    assertEquals("ST10", longKey + ",a", String.join(",", new SlotString("{" + longKey + "}{a}").slotKeys()));
+    Reader unclosed = new Reader() {
+      
+      private long remaining = STREAM_TEST_CHARS;
+      
+      @Override
+      public int read(char[] cbuf, int off, int len) {
+        if (remaining == 0) {
+          return -1;
+        }
+        int n = (int) Math.min(len, remaining);
+        Arrays.fill(cbuf, off, off + n, 'x');
+        if (remaining == STREAM_TEST_CHARS) {
+          cbuf[off] = '{';
+        }
+        remaining -= n;
+        return n;
+      }
+      
+      @Override
+      public void close() {
+      }
+    };
+    long[] written = new long[1];
+    try {
+      slot.qformatTo(new Appendable() {
+        
+        @Override
+        public Appendable append(CharSequence csq) {
+          written[0] += csq.length();
+          return this;
+        }
+        
+        @Override
+        public Appendable append(CharSequence csq, int start, int end) {
+          written[0] += end - start;
+          return this;
+        }
+        
+        @Override
+        public Appendable append(char c) {
+          ++written[0];
+          return this;
+        }
+      }, unclosed, null);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    assertEquals("ST11", String.valueOf(STREAM_TEST_CHARS), String.valueOf(written[0]));
+    logi(tag, "Key Length Limit Test Passed");
+    
+    // 多字节字符和占位符跨越解码分块
+    String pattern = buildScriptPattern(2000).replace("VALUES", "VALUES /* 甲\\{乙} */");
+    Map<String, Object> dest = new HashMap<>();
+    dest.put("YEAR", 2023);
+    dest.put("ORG", "总部");
+    dest.put("AMOUNT", new BigDecimal("12345.67"));
+    dest.put("ACTIVE", true);
+    dest.put("MEMO", "迁移");
+    String expected = slot.qformat(pattern, dest);
+    assertEquals("ST4", expected, streamToString(slot, new StepReader(pattern, 4093), SlotResolvers.map(dest)));
+    try {
+      Path file = Files.createTempFile("slotstring", ".sql");
+      Path result = Files.createTempFile("slotstring", ".out");
+      try {
+        Files.write(file, pattern.getBytes(StandardCharsets.UTF_8));
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+          StringBuilder out = new StringBuilder();
+          slot.qformatTo(out, channel, StandardCharsets.UTF_8, SlotResolvers.map(dest));
+          assertEquals("ST5", expected, out.toString());
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+            Writer writer = Channels.newWriter(FileChannel.open(result, StandardOpenOption.WRITE),
+                StandardCharsets.UTF_8.name())) {
+          slot.qformatTo(writer, channel, StandardCharsets.UTF_8, SlotResolvers.map(dest));
+        }
+        assertEquals("ST6", expected, new String(Files.readAllBytes(result), StandardCharsets.UTF_8));
+        
+        Files.write(file, new byte[0]);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+          StringBuilder out = new StringBuilder();
+          slot.qformatTo(out, channel, StandardCharsets.UTF_8, null);
+          assertEquals("ST7", "", out.toString());
+        }
+      } finally {
+        Files.delete(file);
+        Files.delete(result);
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    logi(tag, "Mapped File Stream Test Passed");
+    
+    logi(tag, "All Stream Test Passed");
+  }
+  
+  private static String streamToString(SlotString slot, Reader pattern, SlotResolver resolver) {
+    try {
+      StringWriter writer = new StringWriter();
+      slot.qformatTo(writer, pattern, resolver);
+      return writer.toString();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+  
+  private static final class StepReader extends Reader {
+    
+    private final String text;
+    
+    private final int step;
+    
+    private int position;
+    
+    StepReader(String text, int step) {
+      this.text = text;
+      this.step = step;
+    }
+    
+    @Override
+    public int read(char[] cbuf, int off, int len) {
+      if (position == text.length()) {
+        return -1;
+      }
+      int n = Math.min(Math.min(len, step), text.length() - position);
+      text.getChars(position, position + n, cbuf, off);
+      position += n;
+      return n;
+    }
+    
+    @Override
+    public void close() {
+    }
+  }
+  
+  private static String awaitReload(Supplier<String> actual, String expected) throws InterruptedException {
+    // 文件系统事件异步到达，最多等待 10 秒
+    long deadline = System.currentTimeMillis() + 10000L;
+    String result = actual.get();
+    while (!expected.equals(result) && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10L);
+      result = actual.get();
+    }
+    return result;
+  }
+  
+  private static String buildScriptPattern(int statements) {
+    StringBuilder pattern = new StringBuilder();
+    for (int i = 0; i < statements; ++i) {
+      pattern.append("INSERT INTO VOUCHER{YEAR} (ID, ORG, AMOUNT, ACTIVE, MEMO) VALUES (").append(i)
+          .append(", '{ORG}', {AMOUNT}, {ACTIVE}, '{MEMO}');\n");
+    }
+    return pattern.toString();
+  }
+  
+  private static class Voucher {
+    
+    public final String code = "V01";
+    
+    private final String name = "voucher";
+    
+    private int counter;
+    
+    public int getYear() {
+      return 2023;
+    }
+    
+    public boolean isActive() {
+      return true;
+    }
+    
+    public String name() {
+      return name;
+    }
+    
+    public String getURL() {
+      return "http://a";
+    }
+    
+    public int incrementCounter() {
+      return ++counter;
+    }
+  }
+  
+  private static class Year {
+    
+    private final int year;
+    
+    Year(int year) {
+      this.year = year;
+    }
+    
+    public int year() {
+      return year;
+    }
+  }
+
   private void testOverrideAsStringFormat() {
     String tag = "testOverrideAsStringFormat";
     
@@ -234,6 +1614,17 @@ final class SlotStringTest {
     assertEquals("OC2", expected, target.format(dest));
     logi(tag, "Compile+Format With Overriding AsString Test Passed");
     
+    SlotString generated = new SlotString(pattern, true) {
+
+      @Override
+      protected String asString(Object val, boolean preventDefault) {
+        return target.asString(val, preventDefault);
+      }
+      
+    };
+    assertEquals("OC3", expected, generated.format(dest));
+    logi(tag, "Generated Format With Overriding AsString Test Passed");
+    
     logi(tag, "All Format With Overriding AsString Test Passed");
   }
 
@@ -248,22 +1639,55 @@ final class SlotStringTest {
     logi(tag, "Starting Performance Test (Loop Times: " + PERFORMANCE_TEST_LOOP_TIMES + ")");
     
     long ss = testQformatPerformance(false, testCase, false);
-    logi(samePatternTag, "Elapsed time of shared buffer qformat (ms): " + ss);
+    logt(samePatternTag, "Elapsed time of shared buffer qformat (ms): " + ss);
+    if (PERFORMANCE_TIMING) {
+      logi(samePatternTag, "Allocated bytes per shared buffer qformat: " + testQformatAllocation(testCase));
+    }
     
     long sd = testQformatPerformance(true, testCase, false);
-    logi(samePatternTag, "Elapsed time of discrete buffer qformat (ms): " + sd);
+    logt(samePatternTag, "Elapsed time of discrete buffer qformat (ms): " + sd);
+    
+    long sp = testPooledQformatPerformance(testCase);
+    logt(samePatternTag, "Elapsed time of pooled buffer qformat (ms): " + sp);
     
     long sc = testCompileFormatPerformance(testCase, false);
-    logi(samePatternTag, "Elapsed time of compile+format (ms): " + sc);
+    logt(samePatternTag, "Elapsed time of compile+format (ms): " + sc);
+    
+    long sg = testGeneratedFormatPerformance(testCase);
+    logt(samePatternTag, "Elapsed time of compile+generated format (ms): " + sg);
     
     long ds = testQformatPerformance(false, testCase, true);
-    logi(diffPatternTag, "Elapsed time of shared buffer qformat (ms): " + ds);
+    logt(diffPatternTag, "Elapsed time of shared buffer qformat (ms): " + ds);
     
     long dd = testQformatPerformance(true, testCase, true);
-    logi(diffPatternTag, "Elapsed time of discrete buffer qformat (ms): " + dd);
+    logt(diffPatternTag, "Elapsed time of discrete buffer qformat (ms): " + dd);
     
     long dc = testCompileFormatPerformance(testCase, true);
-    logi(diffPatternTag, "Elapsed time of compile+format (ms): " + dc);
+    logt(diffPatternTag, "Elapsed time of compile+format (ms): " + dc);
+    
+    long sq = testCachedQformatPerformance(testCase, false);
+    logt(samePatternTag, "Elapsed time of cached qformat (ms): " + sq);
+    
+    long dq = testCachedQformatPerformance(testCase, true);
+    logt(diffPatternTag, "Elapsed time of cached qformat (ms): " + dq);
+    
+    testDedupFormatPerformance(testCase);
+    
+    testResolverPerformance();
+    
+    testArenaFootprint(testCase);
+    
+    testRegistryStartupPerformance(testCase);
+    
+    testParallelPerformance();
+    
+    testSessionPerformance();
+    
+    testExporterPerformance();
+    
+    testEscapePerformance();
+    
+    testStreamPerformance();
     
     long smax = Math.max(Math.max(ss, sd), sc);
     double rss = (double) ss / smax;
@@ -275,7 +1699,7 @@ final class SlotStringTest {
     double rdd = (double) dd / dmax;
     double rdc = (double) dc / dmax;
 
-    logi(ratioTag, "Elapsed time ratio for Shared-Buffer qformat, Discrete-Buffer qformat and compile+format:"
+    logt(ratioTag, "Elapsed time ratio for Shared-Buffer qformat, Discrete-Buffer qformat and compile+format:"
         + "\n  Same Pattern: " + rss + ", " + rsd + ", " + rsc
         + "\n  Diff Pattern: " + rds + ", " + rdd + ", " + rdc);
     
@@ -394,6 +1818,37 @@ final class SlotStringTest {
     }
   }
 
+  private long testQformatAllocation(TestCase performanceTestCase) {
+    java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+      return -1;
+    }
+    com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+    long id = Thread.currentThread().getId();
+    SlotString target = new SlotString(false);
+    final int loops = 10000;
+    for (int i = 0; i < loops; ++i) {
+      target.qformat(performanceTestCase.pattern, performanceTestCase.dest);
+    }
+    long before = threads.getThreadAllocatedBytes(id);
+    for (int i = 0; i < loops; ++i) {
+      target.qformat(performanceTestCase.pattern, performanceTestCase.dest);
+    }
+    return (threads.getThreadAllocatedBytes(id) - before) / loops;
+  }
+
+  private long testPooledQformatPerformance(TestCase performanceTestCase) {
+    final String tag = "PQPS";
+    long t = System.currentTimeMillis();
+    SlotString target = new SlotString(new SlotStringBufferPool());
+    for (int i = 0; i < PERFORMANCE_TEST_LOOP_TIMES; ++i) {
+      String expected = performanceTestCase.expected;
+      String actual = target.qformat(performanceTestCase.pattern, performanceTestCase.dest);
+      assertEquals(tag, expected, actual);
+    }
+    return System.currentTimeMillis() - t;
+  }
+
   private long testCompileFormatPerformance(TestCase performanceTestCase, boolean diffPattern) {
     final String tag = "PC" + (diffPattern ? "D" : "S");
     if (diffPattern) {
@@ -419,6 +1874,248 @@ final class SlotStringTest {
     }
   }
   
+  private long testCachedQformatPerformance(TestCase performanceTestCase, boolean diffPattern) {
+    final String tag = "PK" + (diffPattern ? "D" : "S");
+    SlotString target = new SlotString(true, new SlotStringCache(256));
+    long t = System.currentTimeMillis();
+    for (int i = 0; i < PERFORMANCE_TEST_LOOP_TIMES; ++i) {
+      String pattern = performanceTestCase.pattern;
+      String expected = performanceTestCase.expected;
+      if (diffPattern) {
+        String seq = "/* SEQ = " + Math.random() + " */";
+        pattern = seq + pattern;
+        expected = seq + expected;
+      }
+      String actual = target.qformat(pattern, performanceTestCase.dest);
+      assertEquals(tag, expected, actual);
+    }
+    return System.currentTimeMillis() - t;
+  }
+  
+  private void testDedupFormatPerformance(TestCase performanceTestCase) {
+    String tag = "testPerformance:dedup";
+    final long[] conversions = new long[1];
+    
+    // the generated formatter converts every occurrence, compiled format converts every distinct key once
+    SlotString dedup = new SlotString(performanceTestCase.pattern) {
+
+      @Override
+      protected String asString(Object val, boolean preventDefault) {
+        ++conversions[0];
+        return super.asString(val, preventDefault);
+      }
+      
+    };
+    SlotString perOccurrence = new SlotString(performanceTestCase.pattern, true) {
+
+      @Override
+      protected String asString(Object val, boolean preventDefault) {
+        ++conversions[0];
+        return super.asString(val, preventDefault);
+      }
+      
+    };
+    
+    conversions[0] = 0;
+    long t = System.currentTimeMillis();
+    for (int i = 0; i < PERFORMANCE_TEST_LOOP_TIMES; ++i) {
+      assertEquals("PDS", performanceTestCase.expected, perOccurrence.format(performanceTestCase.dest));
+    }
+    long po = System.currentTimeMillis() - t;
+    logt(tag, "Elapsed time of per-occurrence conversion format (ms): " + po
+        + ", conversions per render: " + conversions[0] / PERFORMANCE_TEST_LOOP_TIMES);
+    
+    conversions[0] = 0;
+    t = System.currentTimeMillis();
+    for (int i = 0; i < PERFORMANCE_TEST_LOOP_TIMES; ++i) {
+      assertEquals("PDD", performanceTestCase.expected, dedup.format(performanceTestCase.dest));
+    }
+    long dd = System.currentTimeMillis() - t;
+    logt(tag, "Elapsed time of per-key conversion format (ms): " + dd
+        + ", conversions per render: " + conversions[0] / PERFORMANCE_TEST_LOOP_TIMES);
+  }
+
+  private void testResolverPerformance() {
+    SlotString target = new SlotString("SELECT * FROM VOUCHER{year} WHERE CODE = '{code}' AND NAME = '{name}'"
+        + " AND ACTIVE = {active} AND URL = '{URL}'");
+    String expected = "SELECT * FROM VOUCHER2023 WHERE CODE = 'V01' AND NAME = 'voucher'"
+        + " AND ACTIVE = true AND URL = 'http://a'";
+    Voucher voucher = new Voucher();
+    
+    Map<String, Object> dest = new HashMap<>();
+    dest.put("year", voucher.getYear());
+    dest.put("code", voucher.code);
+    dest.put("name", voucher.name());
+    dest.put("active", voucher.isActive());
+    dest.put("URL", voucher.getURL());
+    assertEquals("PRM", expected, target.format(dest));
+    assertEquals("PRB", expected, target.format(SlotResolvers.bean(voucher)));
+  }
+
+  private void testParallelPerformance() {
+    SlotString target = new SlotString(buildScriptPattern(5000));
+    Map<String, Object> dest = new HashMap<>();
+    dest.put("YEAR", 2023);
+    dest.put("ORG", "总部");
+    dest.put("AMOUNT", new BigDecimal("12345.67"));
+    dest.put("ACTIVE", true);
+    dest.put("MEMO", "migrated");
+    assertEquals("PPP", target.format(dest), target.formatParallel(dest));
+  }
+  
+  private void testSessionPerformance() {
+    StringBuilder pattern = new StringBuilder();
+    Map<String, Object> dest = new HashMap<>();
+    for (int k = 0; k < 12; ++k) {
+      pattern.append("SELECT * FROM VOUCHER{YEAR} WHERE ORG = '{ORG").append(k)
+          .append("}' AND AMOUNT > {AMOUNT").append(k).append("} AND MADE_AT < '{DATE}';\n");
+      dest.put("ORG" + k, "ORG" + k);
+      dest.put("AMOUNT" + k, new BigDecimal("12345.67").add(BigDecimal.valueOf(k)));
+    }
+    dest.put("DATE", LocalDateTime.of(2023, 1, 1, 0, 0));
+    SlotString target = new SlotString(pattern.toString());
+    SlotStringSession session = target.session();
+    
+    for (int i = 0; i < 32; ++i) {
+      dest.put("YEAR", 2000 + (i & 15));
+      assertEquals("PSS", target.format(dest), session.render(dest));
+    }
+  }
+  
+  private void testExporterPerformance() {
+    SlotString target = new SlotString("INSERT INTO VOUCHER{YEAR} (ID, ORG, AMOUNT, MEMO) VALUES ({ID}, '{ORG}', {AMOUNT},"
+        + " 'imported from legacy ledger {YEAR}');\n");
+    List<SlotResolver> rows = new ArrayList<>();
+    StringBuilder expected = new StringBuilder();
+    for (int i = 0; i < 300; ++i) {
+      Map<String, Object> dest = new HashMap<>();
+      dest.put("YEAR", 2023);
+      dest.put("ID", i);
+      dest.put("ORG", "ORG" + (i & 255));
+      dest.put("AMOUNT", new BigDecimal(i).movePointLeft(2));
+      rows.add(SlotResolvers.map(dest));
+      expected.append(target.format(dest));
+    }
+    try {
+      Path file = Files.createTempFile("slotstring", ".sql");
+      try {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+          new SlotStringExporter(target, StandardCharsets.UTF_8).export(rows.iterator(), channel);
+        }
+        assertEquals("PEX", expected.toString(), new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+      } finally {
+        Files.delete(file);
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+  
+  private void testEscapePerformance() {
+    SlotString target = new SlotString("INSERT INTO VOUCHER (ORG, NAME, MEMO) VALUES ('{ORG}', '{NAME}', '{MEMO}')");
+    SlotString escaped = target.withEscape(SlotEscape.SQL);
+    Map<String, Object> dest = new HashMap<>();
+    String org = "Headquarters of the group";
+    String name = "O'Brien";
+    String memo = "imported from the legacy ledger, checked by the finance department";
+    String expected = "INSERT INTO VOUCHER (ORG, NAME, MEMO) VALUES ('" + org + "', 'O''Brien', '" + memo + "')";
+    
+    dest.put("ORG", org.replace("'", "''"));
+    dest.put("NAME", name.replace("'", "''"));
+    dest.put("MEMO", memo.replace("'", "''"));
+    assertEquals("PES", expected, target.format(dest));
+    
+    dest.put("ORG", org);
+    dest.put("NAME", name);
+    dest.put("MEMO", memo);
+    assertEquals("PES", expected, escaped.format(dest));
+  }
+  
+  private void testStreamPerformance() {
+    String pattern = buildScriptPattern(5000);
+    Map<String, Object> dest = new HashMap<>();
+    dest.put("YEAR", 2023);
+    dest.put("ORG", "总部");
+    dest.put("AMOUNT", new BigDecimal("12345.67"));
+    dest.put("ACTIVE", true);
+    dest.put("MEMO", "migrated");
+    SlotString slot = new SlotString();
+    try {
+      Path file = Files.createTempFile("slotstring", ".sql");
+      try {
+        Files.write(file, pattern.getBytes(StandardCharsets.UTF_8));
+        StringWriter writer = new StringWriter();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+          slot.qformatTo(writer, channel, StandardCharsets.UTF_8, SlotResolvers.map(dest));
+        }
+        assertEquals("PST", slot.qformat(pattern, dest), writer.toString());
+      } finally {
+        Files.delete(file);
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+  
+  private void testArenaFootprint(TestCase performanceTestCase) {
+    final int templates = 200;
+    final int tenants = 100;
+    
+    // every tenant owns a handful of templates that share most of their literal text
+    SlotString plain = new SlotString("/* tenant " + (templates - 1) % tenants + " */\n" + performanceTestCase.pattern);
+    String actual = plain.format(performanceTestCase.dest);
+    assertEquals("PFP", performanceTestCase.expected, actual.substring(actual.indexOf('\n') + 1));
+    
+    SlotStringArena arena = new SlotStringArena();
+    SlotString[] compact = new SlotString[templates];
+    for (int i = 0; i < templates; ++i) {
+      compact[i] = new SlotString("/* tenant " + i % tenants + " */\n" + performanceTestCase.pattern, arena);
+    }
+    actual = compact[templates - 1].format(performanceTestCase.dest);
+    assertEquals("PFA", performanceTestCase.expected, actual.substring(actual.indexOf('\n') + 1));
+    assertEquals("PFD", "true", String.valueOf(arena.dedupCount() > 0));
+  }
+  
+  private void testRegistryStartupPerformance(TestCase performanceTestCase) {
+    final int templates = 20;
+    
+    try {
+      Path dir = Files.createTempDirectory("slotstring-startup");
+      Path snapshot = dir.resolveSibling(dir.getFileName() + ".snapshot");
+      try {
+        for (int i = 0; i < templates; ++i) {
+          Files.write(dir.resolve("T" + i + ".sql"),
+              ("-- " + i + "\n" + performanceTestCase.pattern).getBytes(StandardCharsets.UTF_8));
+        }
+        SlotStringRegistry compiled = SlotStringRegistry.compile(dir, ".sql");
+        compiled.writeSnapshot(snapshot);
+        SlotStringRegistry loaded = SlotStringRegistry.load(snapshot);
+        
+        String expected = "-- " + (templates - 1) + "\n" + performanceTestCase.expected;
+        String name = "T" + (templates - 1) + ".sql";
+        assertEquals("PRC", expected, compiled.get(name).format(performanceTestCase.dest));
+        assertEquals("PRL", expected, loaded.get(name).format(performanceTestCase.dest));
+      } finally {
+        deleteRecursively(dir);
+        Files.deleteIfExists(snapshot);
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private long testGeneratedFormatPerformance(TestCase performanceTestCase) {
+    final String tag = "PGS";
+    long t = System.currentTimeMillis();
+    SlotString target = new SlotString(performanceTestCase.pattern, true);
+    for (int i = 0; i < PERFORMANCE_TEST_LOOP_TIMES; ++i) {
+      String expected = performanceTestCase.expected;
+      String actual = target.format(performanceTestCase.dest);
+      assertEquals(tag, expected, actual);
+    }
+    return System.currentTimeMillis() - t;
+  }
+  
   private static void runOnMultiThread(Runnable target) {
     ExecutorService executorService = Executors.newFixedThreadPool(PARALLEL_THREAD_NUMBER);
     CountDownLatch countDownLatch = new CountDownLatch(PARALLEL_THREAD_NUMBER);
@@ -453,6 +2150,12 @@ final class SlotStringTest {
     System.out.println("[I][" + tag + "] " + str);
   }
 
+  private static void logt(String tag, String str) {
+    if (PERFORMANCE_TIMING) {
+      logi(tag, str);
+    }
+  }
+
   private static class TestCase {
     public String id;
     public String expected;
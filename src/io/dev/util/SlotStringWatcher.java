@@ -0,0 +1,314 @@
+package io.dev.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * 可热加载的模板目录.<br>
+ * <br>
+ * 监视目录及其子目录下指定后缀的模板文件，由后台守护线程重新编译新建、修改的文件，移除已删除的文件，
+ * 每批变更编译完成后复制一份新的 {@code SlotStringRegistry} 整体替换当前版本.<br>
+ * 读取模板时只读取一次 {@code volatile} 字段，不加锁也不会等待编译，看到的始终是某个完整的版本.<br>
+ * 模板文件读取失败、不是有效的 UTF-8 文本（例如写入了一半）或编译时抛出异常时保留该模板的上一个版本，并记录失败次数，
+ * 监视线程继续处理后续变更.<br>
+ * 线程安全.
+ */
+public class SlotStringWatcher implements Closeable {
+
+  /**
+   * 收到变更后等待同一批后续变更的时间（毫秒），编辑器保存文件时通常会连续产生多个事件.
+   */
+  private static final long SETTLE_MILLIS = 50L;
+
+  /**
+   * 模板文件目录.
+   */
+  private final Path dir;
+  /**
+   * 模板文件的后缀，为 {@code null} 时包括全部文件.
+   */
+  private final String suffix;
+  /**
+   * 目录监视服务.
+   */
+  private final WatchService watchService;
+  /**
+   * 已注册的监视键对应的目录，只由构造方法和监视线程访问.
+   */
+  private final Map<WatchKey, Path> dirs = new HashMap<>();
+  /**
+   * 监视线程.
+   */
+  private final Thread thread;
+  /**
+   * 当前版本的模板.
+   */
+  private volatile SlotStringRegistry registry;
+  /**
+   * 发布新版本的次数.
+   */
+  private final LongAdder reloads = new LongAdder();
+  /**
+   * 编译失败的次数.
+   */
+  private final LongAdder failures = new LongAdder();
+  /**
+   * 最近一次编译失败的原因.
+   */
+  private volatile Exception lastFailure;
+
+  /**
+   * 编译目录下的全部模板文件并开始监视.
+   * @param dir 模板文件目录.
+   * @param suffix 模板文件的后缀，如 {@code ".sql"}，为 {@code null} 时包括全部文件.
+   * @throws IOException 注册监视或读取模板文件失败.
+   */
+  public SlotStringWatcher(Path dir, String suffix) throws IOException {
+    this.dir = dir;
+    this.suffix = suffix;
+    watchService = dir.getFileSystem().newWatchService();
+    try {
+      // 先注册监视再编译，编译期间的变更会在监视线程启动后重新编译
+      register(dir);
+      registry = SlotStringRegistry.compile(dir, suffix);
+    } catch (IOException | RuntimeException e) {
+      watchService.close();
+      throw e;
+    }
+    thread = new Thread(this::watch, "SlotStringWatcher-" + dir.getFileName());
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /**
+   * 获取当前版本的全部模板.<br>
+   * 返回的对象不会再改变，需要一致地读取多个模板时应先获取一次当前版本.
+   * @return 当前版本的模板.
+   */
+  public SlotStringRegistry registry() {
+    return registry;
+  }
+
+  /**
+   * 获取当前版本中指定名称的格式化器.
+   * @param name 模板名称.
+   * @return 格式化器，不存在时返回 {@code null}.
+   */
+  public SlotString get(String name) {
+    return registry.get(name);
+  }
+
+  /**
+   * 获取当前版本中指定名称的编译的模板.
+   * @param name 模板名称.
+   * @return 编译的模板，不存在时返回 {@code null}.
+   */
+  public CompiledTemplate template(String name) {
+    return registry.template(name);
+  }
+
+  /**
+   * 获取发布新版本的次数.
+   * @return 发布次数，不包括创建时的首次编译.
+   */
+  public long reloadCount() {
+    return reloads.sum();
+  }
+
+  /**
+   * 获取编译失败的次数.
+   * @return 失败次数.
+   */
+  public long failureCount() {
+    return failures.sum();
+  }
+
+  /**
+   * 获取最近一次编译失败的原因.
+   * @return 失败原因，未失败过时返回 {@code null}.
+   */
+  public Exception lastFailure() {
+    return lastFailure;
+  }
+
+  /**
+   * 停止监视，当前版本的模板仍可继续读取.
+   * @throws IOException 关闭监视服务失败.
+   */
+  @Override
+  public void close() throws IOException {
+    watchService.close();
+  }
+
+  /**
+   * 注册目录及其子目录.
+   * @param root 目录.
+   * @throws IOException 注册监视失败.
+   */
+  private void register(Path root) throws IOException {
+    try (Stream<Path> walk = Files.walk(root)) {
+      for (Path path : (Iterable<Path>) walk.filter(Files::isDirectory)::iterator) {
+        WatchKey key = path.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+            StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+        dirs.put(key, path);
+      }
+    }
+  }
+
+  /**
+   * 监视线程的主循环，每次等待一批变更并发布一个新版本，监视服务关闭后退出.
+   */
+  private void watch() {
+    try {
+      while (true) {
+        WatchKey key = watchService.take();
+        try {
+          Set<Path> changed = new LinkedHashSet<>();
+          boolean overflow = false;
+          do {
+            overflow |= collect(key, changed);
+            key = watchService.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS);
+          } while (key != null);
+          if (overflow) {
+            // 丢失了部分事件，重新检查全部模板
+            for (String name : registry.names()) {
+              changed.add(dir.resolve(name));
+            }
+            addFiles(dir, changed);
+          }
+          reload(changed);
+        } catch (ClosedWatchServiceException e) {
+          throw e;
+        } catch (IOException | RuntimeException e) {
+          // 放弃本批变更，保留当前版本并继续监视
+          fail(e);
+        }
+      }
+    } catch (InterruptedException | ClosedWatchServiceException e) {
+      // 已停止监视
+    }
+  }
+
+  /**
+   * 收集一个监视键上的变更.
+   * @param key 监视键.
+   * @param changed 变更的文件或目录.
+   * @return 是否丢失了事件.
+   */
+  private boolean collect(WatchKey key, Set<Path> changed) {
+    Path parent = dirs.get(key);
+    boolean overflow = false;
+    for (WatchEvent<?> event : key.pollEvents()) {
+      if (event.kind() == StandardWatchEventKinds.OVERFLOW || parent == null) {
+        overflow = true;
+        continue;
+      }
+      Path path = parent.resolve((Path) event.context());
+      if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(path)) {
+        // 新目录中可能已有文件，注册后逐个编译
+        try {
+          register(path);
+          addFiles(path, changed);
+        } catch (IOException | RuntimeException e) {
+          // 目录可能已被删除，按丢失事件重新检查
+          fail(e);
+          overflow = true;
+        }
+      } else {
+        changed.add(path);
+      }
+    }
+    if (!key.reset()) {
+      dirs.remove(key);
+    }
+    return overflow;
+  }
+
+  /**
+   * 添加目录下的全部文件.
+   * @param root 目录.
+   * @param changed 变更的文件或目录.
+   * @throws IOException 遍历目录失败.
+   */
+  private static void addFiles(Path root, Set<Path> changed) throws IOException {
+    try (Stream<Path> walk = Files.walk(root)) {
+      walk.filter(Files::isRegularFile).forEach(changed::add);
+    }
+  }
+
+  /**
+   * 编译变更的文件，在当前版本的副本上替换或移除对应的模板，然后发布副本.
+   * @param changed 变更的文件或目录.
+   */
+  private void reload(Set<Path> changed) {
+    TreeMap<String, SlotString> slots = new TreeMap<>(registry.slots());
+    boolean modified = false;
+    for (Path path : changed) {
+      String name = SlotStringRegistry.name(dir, path);
+      if (Files.isRegularFile(path)) {
+        if (suffix != null && !path.getFileName().toString().endsWith(suffix)) {
+          continue;
+        }
+        try {
+          slots.put(name, compile(path));
+          modified = true;
+        } catch (IOException | RuntimeException e) {
+          // 保留上一个版本
+          fail(e);
+        }
+      } else if (Files.notExists(path)) {
+        // 删除的可能是文件也可能是目录，'0' 是 '/' 的下一个字符
+        modified |= slots.remove(name) != null;
+        Map<String, SlotString> nested = slots.subMap(name + "/", name + "0");
+        modified |= !nested.isEmpty();
+        nested.clear();
+      }
+    }
+    if (modified) {
+      registry = new SlotStringRegistry(slots);
+      reloads.increment();
+    }
+  }
+
+  /**
+   * 读取并编译一个模板文件，不是有效的 UTF-8 文本时视为失败.
+   * @param file 模板文件.
+   * @return 格式化器.
+   * @throws IOException 读取模板文件失败或不是有效的 UTF-8 文本.
+   */
+  private static SlotString compile(Path file) throws IOException {
+    String pattern = StandardCharsets.UTF_8.newDecoder()
+        .onMalformedInput(CodingErrorAction.REPORT)
+        .onUnmappableCharacter(CodingErrorAction.REPORT)
+        .decode(ByteBuffer.wrap(Files.readAllBytes(file)))
+        .toString();
+    return new SlotString(pattern);
+  }
+
+  /**
+   * 记录编译失败.
+   * @param e 失败原因.
+   */
+  private void fail(Exception e) {
+    lastFailure = e;
+    failures.increment();
+  }
+}